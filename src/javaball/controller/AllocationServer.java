@@ -0,0 +1,552 @@
+package javaball.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.enums.RefQualification;
+import javaball.model.AllocationStatistics;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.Season;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Headless HTTP service offering the model to other programs as JSON, on the
+ * JDK's built-in HTTP server. Every request is served by a thread of its own
+ * (a virtual thread if the JDK has them) directly on the shared model, so
+ * lookups of different requests run in parallel while changes are ordered by
+ * the model's lock. Input is passed as query or form parameters and checked
+ * as strictly as by the GUI's frames.
+ * <p>
+ * The resources are /referees/{id} (GET, PUT, DELETE), /referees?first=&amp;
+ * last= (GET), /referees (POST), /matches (GET, POST), /matches/{week} (GET)
+ * /chart (GET, the allocations shown by the chart frame) and /statistics
+ * (GET, the allocation statistics, kept by the model so that they can be
+ * polled often, e.g. by a dashboard).
+ * <p>
+ * Responses wait for the client to acknowledge their headers unless the JDK's
+ * server is launched with -Dsun.net.httpserver.nodelay=true, as the headless
+ * service is.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class AllocationServer {
+
+	/** Default port */
+	public static final int PORT = 8080;
+
+	/** Connections waiting to be accepted */
+	private static final int BACKLOG = 1024;
+
+	/** Valid names, qualifications and travel preferences (as the GUI's) */
+	private static final Pattern NAME = Pattern.compile("[A-Za-z-]+");
+	private static final Pattern QUALIFICATION = Pattern
+			.compile("(NJB|IJB)[1-" + RefQualification.MAXIMUM + "]");
+	private static final Pattern TRAVEL = Pattern.compile("[YN]{3}");
+
+	/** The model */
+	private final ConcurrentModel model;
+
+	/** Autosave told about changes (or null) */
+	private final Autosave autosave;
+
+	/** The HTTP server and the threads serving its requests */
+	private final HttpServer server;
+	private final ExecutorService requests;
+
+	/**
+	 * Constructor for a server of a model, listening once started
+	 * @param model the model
+	 * @param autosave the autosave to be told about changes (or null)
+	 * @param address the address to listen at
+	 * @throws IOException if the address cannot be bound
+	 */
+	public AllocationServer(ConcurrentModel model, Autosave autosave,
+			InetSocketAddress address) throws IOException {
+		this.model = model;
+		this.autosave = autosave;
+		this.server = HttpServer.create(address, BACKLOG);
+		this.requests = newRequestExecutor();
+		server.setExecutor(requests);
+		server.createContext("/referees", new Handler() {
+			@Override
+			Response handle(String method, String path,
+					HashMap<String, String> params) {
+				return referees(method, path, params);
+			}
+		});
+		server.createContext("/matches", new Handler() {
+			@Override
+			Response handle(String method, String path,
+					HashMap<String, String> params) {
+				return matches(method, path, params);
+			}
+		});
+		server.createContext("/chart", new Handler() {
+			@Override
+			Response handle(String method, String path,
+					HashMap<String, String> params) {
+				return chart(method);
+			}
+		});
+		server.createContext("/statistics", new Handler() {
+			@Override
+			Response handle(String method, String path,
+					HashMap<String, String> params) {
+				return statistics(method);
+			}
+		});
+	}
+
+	/**
+	 * Starts serving requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Returns the address the server listens at
+	 * @return the address (with the port bound if 0 was given)
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops serving requests, waiting up to a given time for requests being
+	 * served
+	 * @param delay the time (s) to wait
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		requests.shutdown();
+		try {
+			requests.awaitTermination(delay, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Serves the referee resources
+	 */
+	private Response referees(String method, String path,
+			HashMap<String, String> params) {
+		// The collection: search by name or add a referee
+		if (path.isEmpty()) {
+			if (method.equals("GET")) {
+				Referee ref = model.getReferee(param(params, "first"),
+						param(params, "last"));
+				return ref == null ? Response.notFound()
+						: new Response(200, json(ref));
+			} else if (method.equals("POST")) {
+				String first = name(params, "first");
+				String last = name(params, "last");
+				String qual = match(params, "qualification", QUALIFICATION);
+				int allocations = Integer.parseInt(param(params,
+						"allocations"));
+				if (allocations < 0)
+					throw new IllegalArgumentException("Invalid allocations");
+				Referee ref = model.addReferee(first, last,
+						RefQualification.valueOf(qual.substring(0, 3)),
+						qual.charAt(3) - '0', allocations,
+						location(params, "home"),
+						match(params, "travel", TRAVEL));
+				if (ref == null)
+					return Response.error(409,
+							"No more referees can be added.");
+				changed();
+				return new Response(201, json(ref));
+			}
+			return Response.notAllowed();
+		}
+
+		// A single referee by ID
+		Referee ref = model.getReferee(path);
+		if (ref == null)
+			return Response.notFound();
+		if (method.equals("GET"))
+			return new Response(200, json(ref));
+		else if (method.equals("PUT")) {
+			String qual = match(params, "qualification", QUALIFICATION);
+			if (!model.editReferee(ref,
+					RefQualification.valueOf(qual.substring(0, 3)),
+					qual.charAt(3) - '0', location(params, "home"),
+					match(params, "travel", TRAVEL)))
+				return Response.notFound();
+			changed();
+			return new Response(200, json(ref));
+		} else if (method.equals("DELETE")) {
+			if (!model.removeReferee(ref))
+				return Response.notFound();
+			changed();
+			return new Response(204, null);
+		}
+		return Response.notAllowed();
+	}
+
+	/**
+	 * Serves the match resources
+	 */
+	private Response matches(String method, String path,
+			HashMap<String, String> params) {
+		// The collection: list the matches or allocate one
+		if (path.isEmpty()) {
+			if (method.equals("GET")) {
+				StringBuilder json = new StringBuilder("[");
+				for (Match match : model.getMatches()) {
+					if (json.length() > 1)
+						json.append(',');
+					json(json, match);
+				}
+				return new Response(200, json.append(']').toString());
+			} else if (method.equals("POST")) {
+				int week = week(param(params, "week"));
+				ArrayList<Referee> referees = model.allocateReferees(week,
+						MatchLevel.valueOf(param(params, "level")
+								.toUpperCase()), location(params, "area"));
+				if (referees == null)
+					return Response.error(409, "Week already hosts a match.");
+				if (referees.size() < 2)
+					return Response.error(422,
+							"Not enough suitable referees available.");
+				changed();
+				return new Response(201, json(new StringBuilder(),
+						model.getMatch(week)).toString());
+			}
+			return Response.notAllowed();
+		}
+
+		// A single match by week
+		if (!method.equals("GET"))
+			return Response.notAllowed();
+		Match match = model.getMatch(week(path));
+		return match == null ? Response.notFound()
+				: new Response(200, json(new StringBuilder(), match)
+						.toString());
+	}
+
+	/**
+	 * Serves the chart data: the allocations of all referees by ID
+	 */
+	private Response chart(String method) {
+		if (!method.equals("GET"))
+			return Response.notAllowed();
+		int max = 0;
+		StringBuilder json = new StringBuilder("{\"referees\":[");
+		for (Referee ref : model.getReferees()) {
+			int allocations = ref.getAllocations();
+			max = Math.max(max, allocations);
+			if (json.charAt(json.length() - 1) != '[')
+				json.append(',');
+			json.append("{\"id\":");
+			string(json, ref.getID());
+			json.append(",\"allocations\":").append(allocations).append('}');
+		}
+		json.append("],\"maxAllocations\":").append(max).append('}');
+		return new Response(200, json.toString());
+	}
+
+	/**
+	 * Serves the allocation statistics: the number of referees, the least,
+	 * highest and mean number of allocations, their variance and the number
+	 * of referees per number of allocations any referee has
+	 */
+	private Response statistics(String method) {
+		if (!method.equals("GET"))
+			return Response.notAllowed();
+		AllocationStatistics statistics = model.getStatistics();
+		StringBuilder json = new StringBuilder("{\"referees\":");
+		json.append(statistics.getReferees());
+		json.append(",\"minAllocations\":").append(statistics.getMin());
+		json.append(",\"maxAllocations\":").append(statistics.getMax());
+		json.append(",\"meanAllocations\":").append(statistics.getMean());
+		json.append(",\"variance\":").append(statistics.getVariance());
+		json.append(",\"histogram\":{");
+		boolean first = true;
+		for (Map.Entry<Integer, Integer> count
+				: statistics.getHistogram().entrySet()) {
+			if (!first)
+				json.append(',');
+			first = false;
+			json.append('"').append(count.getKey()).append("\":")
+				.append(count.getValue());
+		}
+		return new Response(200, json.append("}}").toString());
+	}
+
+	/**
+	 * Tells the autosave about a change
+	 */
+	private void changed() {
+		if (autosave != null)
+			autosave.changed();
+	}
+
+	/**
+	 * Returns a required parameter
+	 */
+	private static String param(HashMap<String, String> params, String name) {
+		String value = params.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing " + name);
+		return value.trim();
+	}
+
+	/**
+	 * Returns a required parameter matching a pattern
+	 */
+	private static String match(HashMap<String, String> params, String name,
+			Pattern pattern) {
+		String value = param(params, name).toUpperCase();
+		if (!pattern.matcher(value).matches())
+			throw new IllegalArgumentException("Invalid " + name);
+		return value;
+	}
+
+	/**
+	 * Returns a required name parameter (letters and hyphens only)
+	 */
+	private static String name(HashMap<String, String> params, String name) {
+		String value = param(params, name);
+		if (!NAME.matcher(value).matches())
+			throw new IllegalArgumentException("Invalid " + name);
+		return value;
+	}
+
+	/**
+	 * Returns a required location parameter (e.g. North)
+	 */
+	private static Location location(HashMap<String, String> params,
+			String name) {
+		return Location.valueOf(param(params, name).toUpperCase());
+	}
+
+	/**
+	 * Parses a week number within the season
+	 */
+	private static int week(String week) {
+		int number = Integer.parseInt(week);
+		if (number < Season.MIN_WEEK || number > Season.MAX_WEEK)
+			throw new IllegalArgumentException("Week number must be between "
+					+ Season.MIN_WEEK + " and " + Season.MAX_WEEK + ".");
+		return number;
+	}
+
+	/**
+	 * Returns the JSON object of a referee
+	 */
+	private static String json(Referee ref) {
+		StringBuilder json = new StringBuilder("{\"id\":");
+		string(json, ref.getID());
+		json.append(",\"firstName\":");
+		string(json, ref.getFirstName());
+		json.append(",\"lastName\":");
+		string(json, ref.getLastName());
+		json.append(",\"qualification\":\"").append(ref.getQualification())
+				.append(ref.getQualificationLevel());
+		json.append("\",\"allocations\":").append(ref.getAllocations());
+		json.append(",\"home\":\"").append(ref.getHomeLocation());
+		json.append("\",\"travel\":\"").append(ref.getTravelLocations());
+		return json.append("\"}").toString();
+	}
+
+	/**
+	 * Appends the JSON object of a match
+	 */
+	private static StringBuilder json(StringBuilder json, Match match) {
+		json.append("{\"week\":").append(match.getWeek());
+		json.append(",\"level\":\"").append(match.getLevel());
+		json.append("\",\"area\":\"").append(match.getArea());
+		json.append("\",\"referees\":[");
+		Referee[] referees = match.getReferees();
+		for (int i = 0; i < referees.length; i++) {
+			if (i > 0)
+				json.append(',');
+			string(json, referees[i] == null ? "" : referees[i].getID());
+		}
+		return json.append("]}");
+	}
+
+	/**
+	 * Appends a JSON string
+	 */
+	private static void string(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < ' ')
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Creates the executor serving requests: a virtual thread per request if
+	 * the JDK has them, otherwise a cached pool of daemon threads
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "Request");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Reads the query and form parameters of a request
+	 */
+	private static HashMap<String, String> params(HttpExchange exchange)
+			throws IOException {
+		HashMap<String, String> params = new HashMap<String, String>();
+		parse(exchange.getRequestURI().getRawQuery(), params);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		InputStream in = exchange.getRequestBody();
+		byte[] buffer = new byte[1024];
+		for (int n; (n = in.read(buffer)) > 0;)
+			body.write(buffer, 0, n);
+		parse(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+		return params;
+	}
+
+	/**
+	 * Parses URL encoded parameters
+	 */
+	private static void parse(String encoded, HashMap<String, String> params)
+			throws UnsupportedEncodingException {
+		if (encoded == null || encoded.isEmpty())
+			return;
+		for (String param : encoded.split("&")) {
+			int equals = param.indexOf('=');
+			if (equals > 0)
+				params.put(URLDecoder.decode(param.substring(0, equals),
+						"UTF-8"), URLDecoder.decode(param
+						.substring(equals + 1), "UTF-8"));
+		}
+	}
+
+	/**
+	 * Status and JSON body of a response
+	 */
+	private static final class Response {
+
+		private final int status;
+		private final String json;
+
+		private Response(int status, String json) {
+			this.status = status;
+			this.json = json;
+		}
+
+		private static Response error(int status, String message) {
+			StringBuilder json = new StringBuilder("{\"error\":");
+			string(json, message);
+			return new Response(status, json.append('}').toString());
+		}
+
+		private static Response notFound() {
+			return error(404, "Not found.");
+		}
+
+		private static Response notAllowed() {
+			return error(405, "Method not allowed.");
+		}
+	}
+
+	/**
+	 * Handler of a context, answering invalid input with 400 Bad Request
+	 */
+	private abstract static class Handler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			Response response;
+			try {
+				String path = exchange.getRequestURI().getPath().substring(
+						exchange.getHttpContext().getPath().length());
+				response = handle(exchange.getRequestMethod(),
+						path.startsWith("/") ? path.substring(1) : path,
+						params(exchange));
+			} catch (IllegalArgumentException e) {
+				// Includes invalid numbers and enum constants
+				response = Response.error(400, e.getMessage() == null
+						? "Invalid request." : e.getMessage());
+			} catch (RuntimeException e) {
+				response = Response.error(500, "Internal error.");
+			}
+
+			try {
+				if (response.json == null)
+					exchange.sendResponseHeaders(response.status, -1);
+				else {
+					byte[] body = response.json
+							.getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type",
+							"application/json; charset=utf-8");
+					exchange.sendResponseHeaders(response.status,
+							body.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/**
+		 * Handles a request
+		 * @param method the HTTP method
+		 * @param path the path within the context (without a leading /)
+		 * @param params the query and form parameters
+		 * @return the response
+		 */
+		abstract Response handle(String method, String path,
+				HashMap<String, String> params);
+	}
+}
@@ -0,0 +1,209 @@
+package javaball.controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javaball.model.ConcurrentModel;
+import javaball.model.ModelJournal;
+import javaball.model.ModelSnapshot;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Background autosave writing a snapshot of the model (a checkpoint) some
+ * time after it has changed, so that the journal is replayed from a recent
+ * snapshot after a crash and does not keep growing. Changes arriving
+ * together are saved in one checkpoint: it is taken once no change has been
+ * made for the quiet time, but no later than the interval after the first
+ * unsaved change.
+ * <p>
+ * The autosave thread captures the snapshot under the model's read lock,
+ * which only copies the referee store's columns and the matches, then writes
+ * it without holding the lock and drops the records included in it from the
+ * journal. A failed checkpoint is tried again after the interval.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class Autosave {
+
+	/** Default time (ms) from the first unsaved change to the checkpoint */
+	public static final long INTERVAL = 60000;
+
+	/** Default time (ms) without changes after which a checkpoint is taken */
+	public static final long QUIET = 5000;
+
+	/** The model */
+	private final ConcurrentModel model;
+
+	/** The snapshot file */
+	private final Path file;
+
+	/** Interval and quiet time in nanoseconds */
+	private final long interval, quiet;
+
+	/** Runs the checks and writes the snapshots */
+	private final ScheduledThreadPoolExecutor executor;
+
+	/** Whether there are unsaved changes, and when they were made */
+	private boolean changed;
+	private long firstChange, lastChange;
+
+	/** Whether a check is scheduled */
+	private boolean scheduled;
+
+	/** Number of checkpoints written */
+	private int checkpoints;
+
+	/** Whether the autosave has been closed */
+	private boolean closed;
+
+	/** Checks whether a checkpoint is due */
+	private final Runnable check = new Runnable() {
+		@Override
+		public void run() {
+			check();
+		}
+	};
+
+	/**
+	 * Constructor for an autosave of a model
+	 * @param model the model (with the journal of its changes)
+	 * @param file the snapshot file
+	 * @param interval the maximum time (ms) from the first unsaved change to
+	 * the checkpoint
+	 * @param quiet the time (ms) without changes after which a checkpoint is
+	 * taken
+	 */
+	public Autosave(ConcurrentModel model, Path file, long interval,
+			long quiet) {
+		this.model = model;
+		this.file = file;
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.quiet = TimeUnit.MILLISECONDS.toNanos(Math.min(quiet, interval));
+		this.executor = new ScheduledThreadPoolExecutor(1,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "Autosave");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// Checks not yet due are dropped on closing
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Notes a change of the model
+	 */
+	public synchronized void changed() {
+		long now = System.nanoTime();
+		if (!changed) {
+			changed = true;
+			firstChange = now;
+		}
+		lastChange = now;
+		if (!scheduled && !closed) {
+			scheduled = true;
+			executor.schedule(check, quiet, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Returns the number of checkpoints written so far
+	 * @return the number of checkpoints
+	 */
+	public synchronized int getCheckpoints() {
+		return checkpoints;
+	}
+
+	/**
+	 * Stops taking checkpoints, waiting for one being written; not to be
+	 * followed by changed() any more
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Called on the autosave thread when a checkpoint could not be written
+	 * (it is tried again later)
+	 * @param e the cause
+	 */
+	protected void failed(IOException e) {
+	}
+
+	/**
+	 * Takes a checkpoint if it is due, and otherwise checks again when it
+	 * will be
+	 */
+	private void check() {
+		synchronized (this) {
+			if (closed)
+				return;
+			long now = System.nanoTime();
+			long due = Math.min(lastChange + quiet, firstChange + interval);
+			if (due - now > 0) {
+				executor.schedule(check, due - now, TimeUnit.NANOSECONDS);
+				return;
+			}
+
+			// Later changes schedule the next checkpoint
+			changed = false;
+			scheduled = false;
+		}
+
+		try {
+			ModelSnapshot snapshot = model.capture();
+			snapshot.write(file);
+			ModelJournal journal = model.getJournal();
+			if (journal != null)
+				journal.compact(snapshot.getJournalPosition());
+			synchronized (this) {
+				checkpoints++;
+			}
+		} catch (IOException e) {
+			retry();
+			failed(e);
+		}
+	}
+
+	/**
+	 * Marks the changes of a failed checkpoint as unsaved, to be tried again
+	 * after the interval
+	 */
+	private synchronized void retry() {
+		long now = System.nanoTime();
+		if (!changed) {
+			changed = true;
+			firstChange = now;
+			lastChange = now - quiet;
+		}
+		if (!scheduled && !closed) {
+			scheduled = true;
+			executor.schedule(check, interval, TimeUnit.NANOSECONDS);
+		}
+	}
+}
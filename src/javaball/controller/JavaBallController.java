@@ -5,20 +5,23 @@ import javaball.model.*;
 import javaball.enums.*;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 
-import java.io.FileWriter;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
-import javax.swing.DefaultRowSorter;
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.RowSorter;
 import javax.swing.SortOrder;
-import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.TableModel;
 
 /**
  * Team Foxtrot
@@ -39,20 +42,33 @@ import javax.swing.table.TableModel;
  * @since 14-02-2015
  */
 public class JavaBallController {
-	/** References to model components */
-	private final RefereeList refList;
-    private final Season season;
+	/** Interval (ms) of refreshing the allocation statistics of the chart */
+	private static final int STATISTICS_DELAY = 500;
+
+	/** Journal of the changes not yet saved (null if not journaled) */
+	private final ModelJournal journal;
+
+	/** The model shared with other threads, through which it is changed */
+	private final ConcurrentModel model;
+
+	/** Whether the user has been told that journaling failed */
+	private boolean journalFailureShown;
+
+	/** Background autosave of the model (null if not started) */
+	private Autosave autosave;
+
+	/** Whether the user has been told that autosaving failed */
+	private boolean autosaveFailureShown;
 
     /** References to view components */
     private ChartFrame chart;
 	private JavaBallGUI view;
     
-	/** File names for text output files */
-    private final String REFEREE_FILE = "RefereesOut.txt";
-    private final String MATCH_FILE   = "MatchAllocs.txt";
-    
-	/** JTable as interface between referee storage and display */
+	/** JTable of the view as interface between referee storage and display */
     private JTable table;
+
+	/** Table model of the table, kept up to date by the model's events */
+	private RefereeTableModel tableModel;
 	
     /**
      * Constructor for the JavaBallController storing references to the model
@@ -60,11 +76,30 @@ public class JavaBallController {
      * @param refList the referee list to store referees
      */
     public JavaBallController(Season season, RefereeList refList) {
-    	this.refList = refList;
-    	this.season = season;
-    	
-    	// Populate table with referees
-    	this.table = new JTable(refereeTableModel());
+		this(season, refList, null);
+	}
+
+	/**
+	 * Constructor for a JavaBallController recording every change to the
+	 * model in a journal
+	 * @param season the season to store matches
+	 * @param refList the referee list to store referees
+	 * @param journal the journal to record changes in (or null)
+	 */
+	public JavaBallController(Season season, RefereeList refList,
+			ModelJournal journal) {
+		this.journal = journal;
+		this.model = new ConcurrentModel(refList, season, journal) {
+			@Override
+			protected void journalFailed(IOException e) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JavaBallController.this.journalFailed();
+					}
+				});
+			}
+		};
     }
 
     /**
@@ -72,11 +107,35 @@ public class JavaBallController {
      */
 	public void openChart() {
 		// Check if referees are existent
-		if (refList.size() > 0) {
-			// Open chart frame
-			chart = new ChartFrame(refList);
+		if (model.size() > 0) {
+			// Open chart frame, listening before reading the referees so that
+			// no change is missed
+			final ChartFrame chart = new ChartFrame(new ArrayList<Referee>());
+			model.addRefereeListener(chart);
+			chart.showReferees(model.getReferees());
 			chart.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+			// Poll the allocation statistics kept by the model
+			final Timer statistics = new Timer(STATISTICS_DELAY,
+					new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					chart.showStatistics(model.getStatistics());
+				}
+			});
+			statistics.setInitialDelay(0);
+			statistics.start();
+
+			// Stop listening and polling once the chart is closed
+			chart.addWindowListener(new WindowAdapter() {
+				@Override
+				public void windowClosed(WindowEvent e) {
+					model.removeRefereeListener(chart);
+					statistics.stop();
+				}
+			});
 			chart.setVisible(true);
+			this.chart = chart;
 		} else
 			// Otherwise show error message
 			JOptionPane.showMessageDialog(null, "There are no "
@@ -94,13 +153,34 @@ public class JavaBallController {
     	
     	// Check how many splits have been created
     	if (query.length == 1) // One split: search by referee ID
-            return refList.getReferee(query[0]);
+            return model.getReferee(query[0]);
     	else if (query.length == 2) // Two splits: search by referee full name
-    		return refList.getReferee(query[0], query[1]);
+    		return model.getReferee(query[0], query[1]);
     	else // More than two splits: invalid search
     		return null;
     }
     
+    /**
+     * Returns the referees whose full names are most similar to a search
+     * input, e.g. a misspelt name, to be suggested when no referee matches it
+     * @param search the user input for searching a referee
+     * @param max the maximum number of referees to be returned
+     * @return the referees found, most similar first
+     */
+    public ArrayList<Referee> findSimilarReferees(String search, int max) {
+    	return model.search(search, max);
+    }
+    
+    /**
+     * Returns the referees whose ID or names start with a search input
+     * @param prefix the beginning of an ID, a name or a full name
+     * @param max the maximum number of referees to be returned
+     * @return the referees found, ID matches first
+     */
+    public ArrayList<Referee> findReferees(String prefix, int max) {
+    	return model.findReferees(prefix, max);
+    }
+    
     /**
      * Creates an unique ID given a full name
      * @param firstName the first name of a referee
@@ -108,7 +188,7 @@ public class JavaBallController {
      * @return a unique ID for the given referee
      */
 	public String createID(String firstName, String lastName) {
-		return refList.createID(firstName, lastName);
+		return model.createID(firstName, lastName);
 	}
     
     /**
@@ -135,11 +215,12 @@ public class JavaBallController {
 	public boolean addReferee(String firstName, String lastName,
 			RefQualification qualType, int qualLevel, int allocations,
 			Location home, String travel) {
-		// Call upon the RefereeList's add method to add a referee with all
-		// details given as parameters
-		return refList.add(new Referee(refList.createID(firstName, lastName),
-				firstName, lastName, qualType.name() + qualLevel, allocations,
-				home.toString(), travel));
+		// Add a referee with all details given as parameters under a new ID
+		if (model.addReferee(firstName, lastName, qualType, qualLevel,
+				allocations, home, travel) == null)
+			return false;
+		autosaveLater();
+		return true;
 	}
 
     /**
@@ -152,11 +233,9 @@ public class JavaBallController {
      */
 	public void editReferee(Referee referee, RefQualification qualType,
 			int qualLevel, Location home, String travel) {
-		// Call upon setter methods for changing the referee details
-		referee.setQualification(qualType);
-		referee.setQualificationLevel(qualLevel);
-		referee.setHomeLocation(home);
-		referee.setTravelLocation(travel);
+		// Change the referee details
+		if (model.editReferee(referee, qualType, qualLevel, home, travel))
+			autosaveLater();
 	}
 
     /**
@@ -164,53 +243,127 @@ public class JavaBallController {
      * @param referee the referee to be removed
      */
 	public void removeReferee(Referee referee) {
-		refList.remove(referee);
+		if (model.removeReferee(referee))
+			autosaveLater();
 	}
 
 	/**
-	 * Retrieve a list of suitable referees for a given match and allocate the
-	 * two most suitable referees to said match; Return suitability list for
-	 * display within the referee table
+	 * Retrieve the two most suitable referees for a given match and allocate
+	 * them to said match
 	 * @param week the week in which the match shall take place
 	 * @param level the match's level (Junior or Senior)
 	 * @param location the match's location
-	 * @return a list of referees ordered by suitability for the given match
+	 * @return the most suitable referees (allocated if there are two of them)
 	 */
     public ArrayList<Referee> allocateReferees(int week, MatchLevel level,
                     Location location) {
-        // Create new match without referees
-        Match match = new Match(week, level, location);
-        
-        // Check if match ID is already in use
-        if (season.getMatch(week) == null) {
-            // Retrieve all suitable Referees for that match
-			ArrayList<Referee> availableReferees = refList
-					.getSuitableReferees(match);
-
-            // Select the two most suitable referees and pass them to the match
-			if (availableReferees.size() > 1) {
-				// Retrieve the two most suitable referees
-				Referee[] suitableReferees = {availableReferees.get(0),
-						availableReferees.get(1)};
-				
-				// Allocate these referees to the match and add the fully
-				// filled in match to the current season
-				match.setReferees(suitableReferees);
-				season.addMatch(match);
-
-				// Pass reference of that match to the allocated referees
-				availableReferees.get(0).addMatch(match);
-				availableReferees.get(1).addMatch(match);
+		// Reserve the two most suitable referees for a new match in that
+		// week and allocate them if there are enough of them
+		ArrayList<Referee> suitableReferees = model.allocateReferees(week,
+				level, location);
+		if (suitableReferees != null && suitableReferees.size() > 1)
+			autosaveLater();
+
+		// Return the most suitable referees (null if the week is in use)
+		return suitableReferees;
+	}
+
+	/**
+	 * Allocate two referees to each match of a whole list of fixtures at once,
+	 * minimising the total travel and allocation imbalance over all matches;
+	 * fixtures in weeks which already host a match are skipped
+	 * @param fixtures the matches to be allocated
+	 * @return the matches which have been allocated and added to the season
+	 */
+	public ArrayList<Match> allocateReferees(ArrayList<Match> fixtures) {
+		// Allocate all matches together and add them to the season
+		ArrayList<Match> allocated = model.allocateReferees(fixtures);
+		if (!allocated.isEmpty())
+			autosaveLater();
+		return allocated;
+	}
+
+	/**
+	 * Allocate the two most suitable referees to each match of a list of
+	 * fixtures in turn, with the same result as allocating them one by one;
+	 * areas not sharing any referees are planned in parallel where that pays
+	 * off. Fixtures in
+	 * weeks which already host a match are skipped.
+	 * @param fixtures the matches to be allocated in order
+	 * @return the matches which have been allocated and added to the season
+	 */
+	public ArrayList<Match> allocateInOrder(ArrayList<Match> fixtures) {
+		ArrayList<Match> allocated = model.allocateInOrder(fixtures);
+		if (!allocated.isEmpty())
+			autosaveLater();
+		return allocated;
+	}
+
+	/**
+	 * Tells the user (once) that a change could not be journaled
+	 */
+	private void journalFailed() {
+		if (journalFailureShown)
+			return;
+		journalFailureShown = true;
+		JOptionPane.showMessageDialog(null, "Error writing to "
+				+ ModelJournal.FILE + ", changes will only be saved on exit.",
+				"Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Starts saving the model in the background some time after it has been
+	 * changed (see Autosave)
+	 * @param interval the maximum time (ms) from the first unsaved change to
+	 * the checkpoint
+	 * @param quiet the time (ms) without changes after which a checkpoint is
+	 * taken
+	 */
+	public void startAutosave(long interval, long quiet) {
+		autosave = new Autosave(model, Paths.get(ModelSnapshot.FILE),
+				interval, quiet) {
+			@Override
+			protected void failed(IOException e) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						autosaveFailed();
+					}
+				});
 			}
-            
-            // Return the list of referees ordered by suitability
-            return availableReferees;
-        }
-        else {
-        	// Otherwise return error (week already in use)
-            return null;
-        }
-    }
+		};
+	}
+
+	/**
+	 * Schedules a checkpoint after a change, if autosaving
+	 */
+	private void autosaveLater() {
+		if (autosave != null)
+			autosave.changed();
+	}
+
+	/**
+	 * Tells the user (once) that the model could not be saved in the
+	 * background
+	 */
+	private void autosaveFailed() {
+		if (autosaveFailureShown)
+			return;
+		autosaveFailureShown = true;
+		JOptionPane.showMessageDialog(null, "Error writing "
+				+ ModelSnapshot.FILE + ", changes will only be saved on exit.",
+				"Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Retrieve the full list of referees suitable for the match of a given
+	 * week, ordered by suitability with the allocated referees first
+	 * @param week the week of the match
+	 * @return a list of referees ordered by suitability (empty if no match)
+	 */
+	public ArrayList<Referee> getSuitableReferees(int week) {
+		return model.getSuitableReferees(week);
+	}
     
     /**
      * Sets the table header in the main GUI to a specified text
@@ -221,49 +374,87 @@ public class JavaBallController {
 	}
 	
     /**
-     * Stores a reference to the view within the JavaBallController
+     * Stores a reference to the view within the JavaBallController and
+     * populates its table with the referees
      * @param view the main GUI
      */
     public void setView(JavaBallGUI view) {
 		this.view = view;
+		this.table = view.getTable();
+
+		// Listen before reading the referees, so that no change is missed
+		tableModel = new RefereeTableModel(new ArrayList<Referee>());
+		model.addRefereeListener(tableModel);
+		tableModel.showAll(model.getReferees());
+		table.setModel(tableModel);
+		table.setRowSorter(new RefereeRowSorter(tableModel));
+
+		// Align the Allocations Column of the Table to the left
+		DefaultTableCellRenderer leftRender = new DefaultTableCellRenderer();
+		leftRender.setHorizontalAlignment(JLabel.LEFT);
+		table.getColumnModel().getColumn(4).setCellRenderer(leftRender);
+		updateTable();
 	}
     
     /**
      * Writes output file and quits the programme
      */
     public void saveExit() {
+		// Stop autosaving, which would write the same snapshot file
+		if (autosave != null) {
+			autosave.close();
+			autosave = null;
+		}
+
     	// Exit programme if data has been successfully saved
-        if (writeOutputFile())
+        if (writeOutputFile() && writeSnapshot()) {
+        	closeJournal();
         	System.exit(0);
+        }
     }
+
+	/**
+	 * Closes the journal and deletes it, as its changes are part of the
+	 * snapshot now (a journal left over would only be replayed from the
+	 * snapshot's journal position, i.e. its end, anyway). Without a journal
+	 * (e.g. it could not be replayed) the file is left alone.
+	 */
+	private void closeJournal() {
+		if (journal == null)
+			return;
+		try {
+			journal.close();
+			ModelJournal.delete(Paths.get(ModelJournal.FILE));
+		} catch (IOException ex) {
+			// Nothing is lost: the snapshot holds all changes
+		}
+	}
+
+	/**
+	 * Writes the binary snapshot of the model, to be restored on next start
+	 * @return whether or not the snapshot was written
+	 */
+	private boolean writeSnapshot() {
+		try {
+			model.capture().write(Paths.get(ModelSnapshot.FILE));
+			return true;
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(null,
+					"Error writing " + ModelSnapshot.FILE + ".", "Error",
+					JOptionPane.ERROR_MESSAGE);
+			return false;
+		}
+	}
     
 	/**
 	 * Writes the match and referee output files
 	 * @return whether or not the saving (output writing) was successful
 	 */
 	private boolean writeOutputFile() {
-		// Try creating the two output files
-		try (FileWriter matchFile = new FileWriter(MATCH_FILE);
-				FileWriter refereeFile = new FileWriter(REFEREE_FILE)) {
-
-			// Write headline for match output file
-			String headRow = String.format("%-5s %-7s %-8s %-17s %-17s%n",
-					"Week", "Level", "Area", "Referee 1", "Referee 2");
-			matchFile.write(headRow);
-			
-			// Write separating line below headRow
-			for (int i = 0; i < headRow.length(); i++)
-				matchFile.write("-");
-			matchFile.write(String.format("%n"));
-
-			// Report on all matches in the match file
-			for (Match match : season)
-				matchFile.write(match.toString());
-
-			// report on all referees in the referee file, ensure order by ID
-			refList.sort();
-			for (Referee ref : refList)
-				refereeFile.write(ref.toString());
+		// Try writing the two output files
+		try {
+			model.writeReports(Paths.get(ReportWriter.MATCH_FILE),
+					Paths.get(ReportWriter.REFEREE_FILE));
 
 			// Return indication of success if no exceptions have been thrown
 			return true;
@@ -279,180 +470,37 @@ public class JavaBallController {
 		}
 	}
     
-    /**
-     * Returns the referee table
-     * @return table with referees
-     */
-    public JTable getTable() {        
-        return table;
-    }
-    
-    /**
-     * Creates and returns TableModel derived from referee list
-     * @return the TableModel with the referees
-     */
-    public TableModel refereeTableModel() {
-        return new RefereeTableModel(refList.getReferees());
-    }
-    
 	/**
 	 * Overwrites the current table with a table with referees suitable for a
 	 * specific match and ordered by suitability
 	 * @param allocatedReferees list of suitable referees ordered by ID
 	 */
     public void allocatedTableData(ArrayList<Referee> allocatedReferees) {
-        table.setModel(new RefereeTableModel(allocatedReferees)); 
+        tableModel.showReferees(allocatedReferees);
+
+        // Keep the order by suitability
+        table.getRowSorter().setSortKeys(null);
     }
     
     /**
-     * Sets the TableModel to the current full list of Referees and
+     * Shows the current full list of Referees in the table and
      * order that list by ID.
      */
     public void updateTable() {
-    	// Reset the table model
-        table.setModel(refereeTableModel());
-        
-        // Instantiate a new CellRenderer to align a cell to the left.
-        DefaultTableCellRenderer leftRender = new DefaultTableCellRenderer();
-        leftRender.setHorizontalAlignment( JLabel.LEFT );
-        
-        // Apply this renderer to the Allocations Column of the Table
-        table.getColumnModel().getColumn(4).setCellRenderer(leftRender);
-        
-        // Instantiate RowSorter object, assign it the Sorter object of table. 
-        DefaultRowSorter sorter = ((DefaultRowSorter)table.getRowSorter()); 
+    	// Only reload the referees if a list of suitable referees is shown;
+    	// the full list is kept up to date by the table model itself
+    	if (!tableModel.isShowingAll())
+    		tableModel.showAll(model.getReferees());
         
         // Create empty list to filled with data in the table
-        ArrayList list = new ArrayList();
+        ArrayList<RowSorter.SortKey> list = new ArrayList<RowSorter.SortKey>();
         
 		// Implement RowSorter against the list, with ascending sort on first
         // column; pass this to the RowSorter Object and sort table
         list.add(new RowSorter.SortKey(0, SortOrder.ASCENDING));
-        sorter.setSortKeys(list);
-        sorter.sort();
+        table.getRowSorter().setSortKeys(list);
         
         // reset the table's description
         view.resetTableHeader();
     }
-    
-    /** TODO
-     * Nested Class to construct and a TableModel to populate the main display 
-     * JTable based on a given ArrayList of Referees.
-     * 
-     * It defines columns and populates the rows with Referee data specific to 
-     * the ArrayList passed to it, either Allocations or Full List
-     */
-    private static class RefereeTableModel extends AbstractTableModel {
-    	// Integer value for each Column Heading with useful name
-		private final static int COLUMN_ID = 0;
-		private final static int COLUMN_FNAME = 1;
-		private final static int COLUMN_LNAME = 2;
-		private final static int COLUMN_QUAL = 3;
-		private final static int COLUMN_ALLOC = 4;
-		private final static int COLUMN_HOME = 5;
-		private final static int COLUMN_TRAVEL = 6;
-
-		// Array Containing values of Column Headers to be displayed
-        private final String[] columnNames = {"ID", "First Name", "Last Name", 
-                "Qualification", "Allocations", "Home", "Travel Areas"};
-
-        // The data to be populated on the table.
-        private final ArrayList<Referee> listReferees;
-
-        // Constructor for RefereeTableModel
-        // Assign the TableModel data to the ArrayList passed in.
-        public RefereeTableModel(ArrayList<Referee> referees) {
-            this.listReferees = referees;     
-        }
-
-        // Find out amount of rows to create in Model based on size of ArrayList
-        @Override
-        public int getRowCount() {
-            return listReferees.size();
-        }
-
-        // Return number of columns, being amount of headings in columnNames.
-        @Override
-        public int getColumnCount() {
-            return columnNames.length;
-        }
-
-        // Return the Column heading for Column in a given index
-        @Override
-        public String getColumnName(int columnIndex) {
-            return columnNames[columnIndex];
-        }
-
-        // Return the Column type for Column in a given index
-        @Override
-        public Class<?> getColumnClass(int columnIndex) {
-            if (listReferees.isEmpty()) {
-                return Object.class;
-            }
-            
-            // Return only if referees are available
-            return getValueAt(0, columnIndex).getClass();
-        }
-
-        // Stop user from being able to edit the TableData
-        @Override
-        public boolean isCellEditable(int rowIndex, int columnIndex) {
-            return false;
-        }
-
-        /**
-         * Method to return a value in the table at a given row and column.
-         * The return type is kept as type Object to allow for multiple data 
-         * types in a table
-         * @param rowIndex - The row of data we're interested in (a referee)
-         * @param columnIndex - The column we want (information about a referee)
-         * @return The found result.
-         */
-        @Override
-        public Object getValueAt(int rowIndex, int columnIndex) {
-        	// Get specific referee 
-        	Referee referee = listReferees.get(rowIndex);
-            
-        	// Instantiate return value
-        	Object returnValue = null;
-		
-                // Check for invalid rowIndex being passed
-        	if (referee != null) {
-        		// get appropriate referee information based on 
-                // column index that's passed
-        		switch (columnIndex) {
-				case COLUMN_ID:
-					returnValue = referee.getID();
-					break;
-				case COLUMN_FNAME:
-					returnValue = referee.getFirstName();
-					break;
-				case COLUMN_LNAME:
-					returnValue = referee.getLastName();
-					break;
-				case COLUMN_QUAL:
-					returnValue = referee.getQualification().name()
-							+ referee.getQualificationLevel();
-					break;
-				case COLUMN_ALLOC:
-					returnValue = referee.getAllocations();
-					break;
-				case COLUMN_HOME:
-					returnValue = referee.getHomeLocation();
-					break;
-				case COLUMN_TRAVEL:
-					returnValue = referee.getTravelLocations();
-					break;
-				default:
-					throw new IllegalArgumentException("Invalid column index");
-				}
-        		
-        		// return found result
-				return returnValue;
-			}
-        	
-        	// if referee wasn't found, return null
-			return returnValue;
-		}
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,283 @@
+package javaball.controller;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * RowSorter of the referee table sorting by one column through a permutation
+ * of the rows: the sort key and the row of each row are packed into a long
+ * and the longs sorted as primitives, so no object is created per row, ties
+ * keep the order of the rows and the permutation doubles as the index from
+ * view to model. The permutations of the last few columns sorted by are kept,
+ * so that sorting by them again takes no time. The full list sorted by ID
+ * needs no permutation at all, as it is in ID order already.
+ * <p>
+ * A referee changed only moves his/her own row within the permutation; rows
+ * inserted or deleted renumber the rows and so sort the table again.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class RefereeRowSorter extends RowSorter<RefereeTableModel> {
+
+	/** Number of permutations kept */
+	private static final int MAX_PERMUTATIONS = 4;
+
+	/** Mask of the row in a packed key and row */
+	private static final long ROW_MASK = 0xFFFFFFFFL;
+
+	/** The table model sorted */
+	private final RefereeTableModel model;
+
+	/** The sort key (null if the rows are in model order) */
+	private SortKey sortKey;
+
+	/** Packed keys and rows of the current sort key in view order (null if
+	 * the rows need no sorting, e.g. by ID) */
+	private long[] sorted;
+
+	/** View row of each model row (null until needed) */
+	private int[] modelToView;
+
+	/** Sorted rows by sort key, least recently used first */
+	private final LinkedHashMap<SortKey, long[]> permutations =
+			new LinkedHashMap<SortKey, long[]>(MAX_PERMUTATIONS * 2, 0.75f,
+					true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SortKey, long[]> e) {
+			return size() > MAX_PERMUTATIONS;
+		}
+	};
+
+	/**
+	 * Constructor for a sorter of the referee table, initially unsorted
+	 * @param model the table model
+	 */
+	RefereeRowSorter(RefereeTableModel model) {
+		this.model = model;
+	}
+
+	@Override
+	public RefereeTableModel getModel() {
+		return model;
+	}
+
+	@Override
+	public void toggleSortOrder(int column) {
+		SortOrder order = SortOrder.ASCENDING;
+		if (sortKey != null && sortKey.getColumn() == column
+				&& sortKey.getSortOrder() == SortOrder.ASCENDING)
+			order = SortOrder.DESCENDING;
+		setSortKeys(Collections.singletonList(new SortKey(column, order)));
+	}
+
+	/**
+	 * Sets the sort key; only the first one is used, ties keeping the order
+	 * of the rows (ID order for the full list)
+	 * @param keys the sort keys (null or empty for model order)
+	 */
+	@Override
+	public void setSortKeys(List<? extends SortKey> keys) {
+		SortKey key = keys == null || keys.isEmpty()
+				|| keys.get(0).getSortOrder() == SortOrder.UNSORTED ? null
+				: keys.get(0);
+		if (key == null ? sortKey == null : key.equals(sortKey))
+			return;
+		int[] lastViewToModel = viewToModel();
+		sortKey = key;
+		fireSortOrderChanged();
+		sort();
+		fireRowSorterChanged(lastViewToModel);
+	}
+
+	@Override
+	public List<? extends SortKey> getSortKeys() {
+		return sortKey == null ? Collections.<SortKey>emptyList()
+				: Collections.singletonList(sortKey);
+	}
+
+	@Override
+	public int convertRowIndexToModel(int index) {
+		if (index < 0 || index >= getViewRowCount())
+			throw new IndexOutOfBoundsException("Invalid index");
+		if (sorted != null)
+			return (int) (sorted[index] & ROW_MASK);
+		if (isDescending())
+			return getModelRowCount() - 1 - index;
+		return index;
+	}
+
+	@Override
+	public int convertRowIndexToView(int index) {
+		if (index < 0 || index >= getModelRowCount())
+			throw new IndexOutOfBoundsException("Invalid index");
+		if (sorted != null) {
+			if (modelToView == null) {
+				modelToView = new int[sorted.length];
+				for (int view = 0; view < sorted.length; view++)
+					modelToView[(int) (sorted[view] & ROW_MASK)] = view;
+			}
+			return modelToView[index];
+		}
+		if (isDescending())
+			return getModelRowCount() - 1 - index;
+		return index;
+	}
+
+	@Override
+	public int getViewRowCount() {
+		return getModelRowCount();
+	}
+
+	@Override
+	public int getModelRowCount() {
+		return model.getRowCount();
+	}
+
+	@Override
+	public void modelStructureChanged() {
+		allRowsChanged();
+	}
+
+	@Override
+	public void allRowsChanged() {
+		permutations.clear();
+		sort();
+	}
+
+	@Override
+	public void rowsInserted(int firstRow, int endRow) {
+		allRowsChanged();
+		fireRowSorterChanged(null);
+	}
+
+	@Override
+	public void rowsDeleted(int firstRow, int endRow) {
+		allRowsChanged();
+		fireRowSorterChanged(null);
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow) {
+		// Only permutations of changing columns are affected
+		Iterator<SortKey> keys = permutations.keySet().iterator();
+		while (keys.hasNext()) {
+			SortKey key = keys.next();
+			if (!key.equals(sortKey) && model.isChanging(key.getColumn()))
+				keys.remove();
+		}
+		if (sorted == null || !model.isChanging(sortKey.getColumn()))
+			return;
+		if (endRow - firstRow > 10) {
+			allRowsChanged();
+			fireRowSorterChanged(null);
+			return;
+		}
+		boolean moved = false;
+		for (int row = firstRow; row <= endRow; row++)
+			moved |= move(row);
+		if (moved) {
+			modelToView = null;
+			fireRowSorterChanged(null);
+		}
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow, int column) {
+		rowsUpdated(firstRow, endRow);
+	}
+
+	/**
+	 * Moves a row updated to its place in the current permutation
+	 * @param row the row
+	 * @return whether the row has moved
+	 */
+	private boolean move(int row) {
+		// Find the row's current place
+		int from = 0;
+		while ((int) (sorted[from] & ROW_MASK) != row)
+			from++;
+
+		// And its new place among the other rows
+		long packed = pack(model.sortKey(row, sortKey.getColumn()), row);
+		if (packed == sorted[from])
+			return false;
+		System.arraycopy(sorted, from + 1, sorted, from,
+				sorted.length - from - 1);
+		int to = Arrays.binarySearch(sorted, 0, sorted.length - 1, packed);
+		to = -to - 1;
+		System.arraycopy(sorted, to, sorted, to + 1, sorted.length - to - 1);
+		sorted[to] = packed;
+		return from != to;
+	}
+
+	/**
+	 * Sorts the rows by the current sort key, reusing a kept permutation
+	 */
+	private void sort() {
+		modelToView = null;
+		sorted = null;
+		if (sortKey == null || model.isInOrder(sortKey.getColumn()))
+			return;
+		sorted = permutations.get(sortKey);
+		if (sorted != null && sorted.length == getModelRowCount())
+			return;
+
+		// Pack the keys (inverted for descending order) and rows
+		int[] keys = model.sortKeys(sortKey.getColumn());
+		sorted = new long[keys.length];
+		for (int row = 0; row < keys.length; row++)
+			sorted[row] = pack(keys[row], row);
+		Arrays.sort(sorted);
+		permutations.put(sortKey, sorted);
+	}
+
+	/**
+	 * Packs a key and a row into a long, ordered by key, then row
+	 */
+	private long pack(int key, int row) {
+		if (isDescending())
+			key = Integer.MAX_VALUE - key;
+		return (long) key << 32 | row;
+	}
+
+	/**
+	 * Returns whether the rows are sorted in descending order
+	 */
+	private boolean isDescending() {
+		return sortKey != null
+				&& sortKey.getSortOrder() == SortOrder.DESCENDING;
+	}
+
+	/**
+	 * Returns the model row of each view row (null if in model order), for
+	 * the table to keep its selection when sorting again
+	 */
+	private int[] viewToModel() {
+		if (sortKey == null || sorted == null && !isDescending())
+			return null;
+		int[] viewToModel = new int[getViewRowCount()];
+		for (int view = 0; view < viewToModel.length; view++)
+			viewToModel[view] = convertRowIndexToModel(view);
+		return viewToModel;
+	}
+}
@@ -0,0 +1,383 @@
+package javaball.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import javaball.enums.Location;
+import javaball.enums.RefQualification;
+import javaball.model.Referee;
+import javaball.model.RefereeListener;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * TableModel populating the main display JTable with the referees, either
+ * the full list ordered by ID or a given list (e.g. the referees ordered by
+ * suitability for a match). It defines columns and populates the rows with
+ * Referee data.
+ * <p>
+ * The model is kept for the lifetime of the table and observes the referees:
+ * an added, changed or removed referee only fires an event for its own row,
+ * so that the table keeps its columns, renderers and sort order and repaints
+ * that row only. In the full list the row of a referee is found by binary
+ * search on the ID. Events from other threads are handed to the event
+ * dispatch thread.
+ * <p>
+ * Cell values are formatted a page of rows at a time, when a row of the page
+ * is first painted, and only the most recently painted pages are kept, so
+ * that scrolling through a million referees neither formats every cell on
+ * each paint nor keeps every cell's value. The rows are sorted by
+ * RefereeRowSorter, from the sort keys of a column given by this model.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class RefereeTableModel extends AbstractTableModel implements
+		RefereeListener {
+	// Integer value for each Column Heading with useful name
+	final static int COLUMN_ID = 0;
+	final static int COLUMN_FNAME = 1;
+	final static int COLUMN_LNAME = 2;
+	final static int COLUMN_QUAL = 3;
+	final static int COLUMN_ALLOC = 4;
+	final static int COLUMN_HOME = 5;
+	final static int COLUMN_TRAVEL = 6;
+
+	/** Rows per page of formatted values and number of pages kept */
+	private final static int PAGE_SHIFT = 5;
+	private final static int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private final static int MAX_PAGES = 256;
+
+	/** Qualification types in order of their names, e.g. IJB before NJB */
+	private final static int[] QUALIFICATION_RANKS = qualificationRanks();
+
+	// Array Containing values of Column Headers to be displayed
+	private final String[] columnNames = {"ID", "First Name", "Last Name",
+			"Qualification", "Allocations", "Home", "Travel Areas"};
+
+	// Class of the values of each column
+	private final Class<?>[] columnClasses = {String.class, String.class,
+			String.class, String.class, Integer.class, Location.class,
+			String.class};
+
+	// The data to be populated on the table.
+	private ArrayList<Referee> listReferees;
+
+	// Whether the data is the full list of referees ordered by ID
+	private boolean all;
+
+	// Formatted values of the most recently painted pages (least recently
+	// painted first), COLUMNS values per row
+	private final LinkedHashMap<Integer, Object[]> pages =
+			new LinkedHashMap<Integer, Object[]>(MAX_PAGES * 2, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> e) {
+			return size() > MAX_PAGES;
+		}
+	};
+
+	/**
+	 * Constructor for a table model of the full list of referees
+	 * @param referees all referees ordered by ID
+	 */
+	RefereeTableModel(ArrayList<Referee> referees) {
+		this.listReferees = referees;
+		this.all = true;
+	}
+
+	/**
+	 * Returns whether the full list of referees is shown
+	 * @return whether all referees are shown in ID order
+	 */
+	boolean isShowingAll() {
+		return all;
+	}
+
+	/**
+	 * Shows the full list of referees
+	 * @param referees all referees ordered by ID
+	 */
+	void showAll(ArrayList<Referee> referees) {
+		listReferees = referees;
+		all = true;
+		pages.clear();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Shows a given list of referees in its order; referees added later are
+	 * not shown
+	 * @param referees the referees to be shown
+	 */
+	void showReferees(ArrayList<Referee> referees) {
+		listReferees = referees;
+		all = false;
+		pages.clear();
+		fireTableDataChanged();
+	}
+
+	@Override
+	public void refereeAdded(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeAdded(ref);
+				}
+			});
+			return;
+		}
+
+		// Insert the referee's row at its place in ID order
+		if (!all)
+			return;
+		int row = Collections.binarySearch(listReferees, ref);
+		if (row >= 0)
+			return;
+		row = -row - 1;
+		listReferees.add(row, ref);
+		pages.clear();
+		fireTableRowsInserted(row, row);
+	}
+
+	@Override
+	public void refereeChanged(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeChanged(ref);
+				}
+			});
+			return;
+		}
+
+		int row = rowOf(ref);
+		if (row >= 0) {
+			pages.remove(row >> PAGE_SHIFT);
+			fireTableRowsUpdated(row, row);
+		}
+	}
+
+	@Override
+	public void refereeRemoved(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeRemoved(ref);
+				}
+			});
+			return;
+		}
+
+		int row = rowOf(ref);
+		if (row >= 0) {
+			listReferees.remove(row);
+			pages.clear();
+			fireTableRowsDeleted(row, row);
+		}
+	}
+
+	/**
+	 * Returns the row of a referee
+	 * @param ref the referee
+	 * @return the row (-1 if the referee is not shown)
+	 */
+	private int rowOf(Referee ref) {
+		if (!all)
+			return listReferees.indexOf(ref);
+		int row = Collections.binarySearch(listReferees, ref);
+		return row >= 0 && listReferees.get(row) == ref ? row : -1;
+	}
+
+	// Find out amount of rows to create in Model based on size of ArrayList
+	@Override
+	public int getRowCount() {
+		return listReferees.size();
+	}
+
+	// Return number of columns, being amount of headings in columnNames.
+	@Override
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	// Return the Column heading for Column in a given index
+	@Override
+	public String getColumnName(int columnIndex) {
+		return columnNames[columnIndex];
+	}
+
+	// Return the Column type for Column in a given index (also while there
+	// are no referees)
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return columnClasses[columnIndex];
+	}
+
+	// Stop user from being able to edit the TableData
+	@Override
+	public boolean isCellEditable(int rowIndex, int columnIndex) {
+		return false;
+	}
+
+	/**
+	 * Method to return a value in the table at a given row and column.
+	 * The return type is kept as type Object to allow for multiple data
+	 * types in a table
+	 * @param rowIndex - The row of data we're interested in (a referee)
+	 * @param columnIndex - The column we want (information about a referee)
+	 * @return The found result.
+	 */
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		// Get the page of the row, formatting it if it is not kept
+		Object[] page = pages.get(rowIndex >> PAGE_SHIFT);
+		if (page == null) {
+			page = formatPage(rowIndex >> PAGE_SHIFT);
+			pages.put(rowIndex >> PAGE_SHIFT, page);
+		}
+		return page[(rowIndex & PAGE_SIZE - 1) * columnNames.length
+				+ columnIndex];
+	}
+
+	/**
+	 * Formats the values of a page of rows
+	 * @param pageIndex the page
+	 * @return the values, row by row
+	 */
+	private Object[] formatPage(int pageIndex) {
+		int first = pageIndex << PAGE_SHIFT;
+		int last = Math.min(first + PAGE_SIZE, listReferees.size());
+		Object[] page = new Object[PAGE_SIZE * columnNames.length];
+		for (int row = first; row < last; row++) {
+			Referee referee = listReferees.get(row);
+			int offset = (row - first) * columnNames.length;
+			page[offset + COLUMN_ID] = referee.getID();
+			page[offset + COLUMN_FNAME] = referee.getFirstName();
+			page[offset + COLUMN_LNAME] = referee.getLastName();
+			page[offset + COLUMN_QUAL] = referee.getQualification().name()
+					+ referee.getQualificationLevel();
+			page[offset + COLUMN_ALLOC] = referee.getAllocations();
+			page[offset + COLUMN_HOME] = referee.getHomeLocation();
+			page[offset + COLUMN_TRAVEL] = referee.getTravelLocations();
+		}
+		return page;
+	}
+
+	/**
+	 * Returns whether the rows are in the order of a column already (the
+	 * full list is ordered by ID)
+	 * @param column the column
+	 * @return whether no sorting by the column is needed
+	 */
+	boolean isInOrder(int column) {
+		return all && column == COLUMN_ID;
+	}
+
+	/**
+	 * Returns whether the values of a column may change for a row (the ID
+	 * and names of a referee are never edited)
+	 * @param column the column
+	 * @return whether rows updated may have to be moved
+	 */
+	boolean isChanging(int column) {
+		return column != COLUMN_ID && column != COLUMN_FNAME
+				&& column != COLUMN_LNAME;
+	}
+
+	/**
+	 * Returns the sort keys of all rows for a column: non-negative numbers
+	 * ordered as the column's values
+	 * @param column the column
+	 * @return the key of each row
+	 */
+	int[] sortKeys(int column) {
+		int[] keys = new int[listReferees.size()];
+		if (isChanging(column)) {
+			for (int row = 0; row < keys.length; row++)
+				keys[row] = sortKey(row, column);
+			return keys;
+		}
+
+		// Rank the distinct values (IDs are only ranked for short lists)
+		HashMap<String, Integer> ranks = new HashMap<String, Integer>();
+		for (int row = 0; row < keys.length; row++)
+			ranks.put(textOf(row, column), 0);
+		String[] values = ranks.keySet().toArray(new String[ranks.size()]);
+		Arrays.sort(values);
+		for (int rank = 0; rank < values.length; rank++)
+			ranks.put(values[rank], rank);
+		for (int row = 0; row < keys.length; row++)
+			keys[row] = ranks.get(textOf(row, column));
+		return keys;
+	}
+
+	/**
+	 * Returns the sort key of a row for a column whose values may change
+	 * @param row the row
+	 * @param column the column
+	 * @return a non-negative key ordered as the column's values
+	 */
+	int sortKey(int row, int column) {
+		Referee referee = listReferees.get(row);
+		switch (column) {
+		case COLUMN_QUAL:
+			return QUALIFICATION_RANKS[referee.getQualification().ordinal()]
+					<< 8 | referee.getQualificationLevel();
+		case COLUMN_ALLOC:
+			return referee.getAllocations();
+		case COLUMN_HOME:
+			return referee.getHomeLocation().ordinal();
+		case COLUMN_TRAVEL:
+			// "Y" after "N", the first area being the most significant
+			int key = 0;
+			for (Location location : Location.values())
+				key = key << 1 | (referee.getTravelLocation(location) ? 1 : 0);
+			return key;
+		default:
+			throw new IllegalArgumentException("Invalid column index");
+		}
+	}
+
+	/**
+	 * Returns the text of a row's ID or name
+	 */
+	private String textOf(int row, int column) {
+		Referee referee = listReferees.get(row);
+		return column == COLUMN_ID ? referee.getID()
+				: column == COLUMN_FNAME ? referee.getFirstName()
+						: referee.getLastName();
+	}
+
+	/**
+	 * Returns the rank of each qualification type's name by ordinal
+	 */
+	private static int[] qualificationRanks() {
+		RefQualification[] types = RefQualification.values();
+		int[] ranks = new int[types.length];
+		for (RefQualification type : types)
+			for (RefQualification other : types)
+				if (other.name().compareTo(type.name()) < 0)
+					ranks[type.ordinal()]++;
+		return ranks;
+	}
+}
@@ -248,7 +248,7 @@ public class AllocationFrame extends JFrame implements ActionListener {
 				MatchLevel level = (MatchLevel) cmbLevel.getSelectedItem();
 				Location area = (Location) cmbLocation.getSelectedItem();
 
-				// Retrieve list of suitable referees
+				// Allocate the two most suitable referees
 				ArrayList<Referee> suitableRefs = controller
 						.allocateReferees(week, level, area);
 				
@@ -280,7 +280,8 @@ public class AllocationFrame extends JFrame implements ActionListener {
 
 					// Update table to display the suitable referees ordered
 					// by suitability and the table's description
-					controller.allocatedTableData(suitableRefs);
+					controller.allocatedTableData(controller
+							.getSuitableReferees(week));
 					controller.setTableHeader("Referees ordered by "
 							+ "suitability for match in week " + week);
 				}
@@ -0,0 +1,201 @@
+package javaball.gui;
+
+import java.util.Arrays;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Segment tree of the referees' numbers of allocations in chart order,
+ * giving the least, the highest and the total number of allocations of any
+ * range of referees by combining at most two nodes per level, so that a
+ * column of the chart standing for thousands of referees is summarised in
+ * logarithmic time. A node holds the least, highest and total number of its
+ * two children; the leaves are the referees, padded to a power of two with
+ * empty leaves.
+ * <p>
+ * A referee's number of allocations is changed by updating the nodes above
+ * its leaf. Referees added or removed shift the leaves after them, so the
+ * tree is built again.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class AllocationTree {
+
+	/** Number of referees */
+	private int size;
+
+	/** Number of leaves (a power of two); node 1 is the root, the children
+	 * of node i are 2i and 2i + 1 and the leaves start at node leaves */
+	private int leaves;
+
+	/** Least, highest and total number of allocations per node */
+	private int[] min;
+	private int[] max;
+	private long[] sum;
+
+	/**
+	 * Constructor for a tree of the referees' numbers of allocations
+	 * @param allocations the number of allocations per referee
+	 */
+	AllocationTree(int[] allocations) {
+		build(allocations, allocations.length);
+	}
+
+	/**
+	 * Returns the number of referees
+	 * @return the number of referees
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a referee's number of allocations
+	 * @param i the index of the referee
+	 * @return the number of allocations
+	 */
+	int get(int i) {
+		return max[leaves + i];
+	}
+
+	/**
+	 * Changes a referee's number of allocations
+	 * @param i the index of the referee
+	 * @param allocations the number of allocations
+	 */
+	void set(int i, int allocations) {
+		int node = leaves + i;
+		min[node] = max[node] = allocations;
+		sum[node] = allocations;
+		for (node >>= 1; node > 0; node >>= 1)
+			combine(node);
+	}
+
+	/**
+	 * Inserts a referee, shifting the referees after it
+	 * @param i the index of the referee
+	 * @param allocations the number of allocations
+	 */
+	void insert(int i, int allocations) {
+		int[] shifted = new int[size + 1];
+		System.arraycopy(max, leaves, shifted, 0, i);
+		shifted[i] = allocations;
+		System.arraycopy(max, leaves + i, shifted, i + 1, size - i);
+		build(shifted, shifted.length);
+	}
+
+	/**
+	 * Removes a referee, shifting the referees after it
+	 * @param i the index of the referee
+	 */
+	void remove(int i) {
+		int[] shifted = new int[size - 1];
+		System.arraycopy(max, leaves, shifted, 0, i);
+		System.arraycopy(max, leaves + i + 1, shifted, i, size - i - 1);
+		build(shifted, shifted.length);
+	}
+
+	/**
+	 * Returns the least number of allocations of a range of referees
+	 * @param from the index of the first referee
+	 * @param to the index after the last referee (greater than from)
+	 * @return the least number of allocations
+	 */
+	int min(int from, int to) {
+		int least = Integer.MAX_VALUE;
+		for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1)
+				least = Math.min(least, min[l++]);
+			if ((r & 1) == 1)
+				least = Math.min(least, min[--r]);
+		}
+		return least;
+	}
+
+	/**
+	 * Returns the highest number of allocations of a range of referees
+	 * @param from the index of the first referee
+	 * @param to the index after the last referee
+	 * @return the highest number of allocations (0 for no referees)
+	 */
+	int max(int from, int to) {
+		int highest = 0;
+		for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1)
+				highest = Math.max(highest, max[l++]);
+			if ((r & 1) == 1)
+				highest = Math.max(highest, max[--r]);
+		}
+		return highest;
+	}
+
+	/**
+	 * Returns the highest number of allocations of all referees
+	 * @return the highest number of allocations (0 for no referees)
+	 */
+	int max() {
+		return max[1];
+	}
+
+	/**
+	 * Returns the total number of allocations of a range of referees
+	 * @param from the index of the first referee
+	 * @param to the index after the last referee
+	 * @return the total number of allocations
+	 */
+	long sum(int from, int to) {
+		long total = 0;
+		for (int l = from + leaves, r = to + leaves; l < r; l >>= 1, r >>= 1) {
+			if ((l & 1) == 1)
+				total += sum[l++];
+			if ((r & 1) == 1)
+				total += sum[--r];
+		}
+		return total;
+	}
+
+	/**
+	 * Builds the tree from the referees' numbers of allocations
+	 * @param allocations the number of allocations per referee
+	 * @param count the number of referees
+	 */
+	private void build(int[] allocations, int count) {
+		size = count;
+		leaves = Integer.highestOneBit(Math.max(count, 1));
+		if (leaves < count)
+			leaves <<= 1;
+		min = new int[leaves * 2];
+		max = new int[leaves * 2];
+		sum = new long[leaves * 2];
+
+		// Empty leaves never lower a least number of allocations
+		Arrays.fill(min, leaves + count, leaves * 2, Integer.MAX_VALUE);
+		for (int i = 0; i < count; i++) {
+			min[leaves + i] = max[leaves + i] = allocations[i];
+			sum[leaves + i] = allocations[i];
+		}
+		for (int node = leaves - 1; node > 0; node--)
+			combine(node);
+	}
+
+	/**
+	 * Sets a node from its two children
+	 * @param node the node
+	 */
+	private void combine(int node) {
+		min[node] = Math.min(min[2 * node], min[2 * node + 1]);
+		max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+		sum[node] = sum[2 * node] + sum[2 * node + 1];
+	}
+}
@@ -1,16 +1,37 @@
 package javaball.gui;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import javaball.model.AllocationStatistics;
 import javaball.model.Referee;
-import javaball.model.RefereeList;
+import javaball.model.RefereeListener;
 
+import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
 
 /**
  * Team Foxtrot
@@ -18,6 +39,22 @@ import javax.swing.JFrame;
  * <p>
  * Shows a bar chart of all referees and the number of allocations per referee
  * <p>
+ * The chart can be zoomed from a bar per referee labelled with the ID down to
+ * the whole list fitting into the window, and panned by scrolling. Zoomed out
+ * to less than a pixel per referee, each column of pixels stands for the
+ * referees it covers and shows their least, highest and mean number of
+ * allocations, read from an AllocationTree in logarithmic time; so drawing
+ * costs per pixel, not per referee. The axis with the number of allocations
+ * stays in place when panning.
+ * <p>
+ * The chart is drawn into images 1024 pixels wide, as each part is first
+ * shown, and painted from them, so that moving, resizing or scrolling the
+ * window only copies the images. The chart observes the referees: a referee
+ * allocated to a match only redraws his/her own bar or column in the images
+ * (all of them if the highest number of allocations, and with it the scale,
+ * has changed), and referees added or removed lay the chart out again.
+ * Below the chart the allocation statistics given are shown.
+ * <p>
  * University of Glasgow
  * MSc/PGDip Information Technology/Software Development
  * Team Project 2014/15
@@ -26,150 +63,670 @@ import javax.swing.JFrame;
  * @author Andrew Lowson (0800685l)
  * @author Marco Cook (2152599c)
  * @author Raoul Rothfeld (2164502r)
- * 
+ *
  * @version 1.3 - final
  * @since 11-02-2015
  */
-public class ChartFrame extends JFrame {
-	/** RefereeList Object with all Referees to be displayed */
-	private final RefereeList refList;
+public class ChartFrame extends JFrame implements RefereeListener {
+	/** Dimensions of the chart and the largest initial width of its view */
+	private static final int CHART_HEIGHT = 240;
+	private static final int MAX_VIEW_WIDTH = 1200;
 
-	/** Dimensions of the chart frame */
-	private static final int FRAME_HEIGHT = 300;
-	private int frame_width;
-
-	/** Dimensions of each bar */
+	/** Dimensions of each bar, fully zoomed in */
 	private static final int BAR_WIDTH = 50;
 	private static final int SPACING = 30;
-	
-	/** Margins of the chart */
-	private static final int BOTTOM_MARGIN = 65;
+
+	/** Width per referee fully zoomed in */
+	private static final double DETAIL_ZOOM = BAR_WIDTH + SPACING;
+
+	/** Factor of each zoom step */
+	private static final double ZOOM_STEP = 2;
+
+	/** Margins of the chart and width of the axis */
+	private static final int TOP_MARGIN = 20;
+	private static final int BOTTOM_MARGIN = 25;
+	private static final int AXIS_WIDTH = 60;
+
+	/** Distance between ID labels when the bars are too narrow to label
+	 * each */
+	private static final int LABEL_SPACING = 100;
+
+	/** Most gridlines (and y-axis labels) drawn, so that the labels do not
+	 * overlap however many allocations there are */
+	private static final int MAX_GRIDLINES = 20;
+
+	/** Width of each image the chart is drawn into and number of images
+	 * kept */
+	private static final int TILE_WIDTH = 1024;
+	private static final int MAX_TILES = 32;
+
+	/** Fonts of the titles and axis labels */
+	private static final Font BOLD = new Font("Arial", Font.BOLD, 12);
+	private static final Font PLAIN = new Font("Arial", Font.PLAIN, 12);
+
+	/** Colour of the range between the least and highest number of
+	 * allocations of the referees in a column */
+	private static final Color RANGE = new Color(176, 176, 176);
+
+	/** The chart shown, its axis and the scroll pane panning it */
+	private final ChartComponent chart = new ChartComponent();
+	private final AxisComponent axis = new AxisComponent(chart);
+	private final JScrollPane scrollPane;
+
+	/** Statistics of the allocations shown below the chart */
+	private final JLabel statisticsLabel = new JLabel(" ", JLabel.CENTER);
 
 	/**
 	 * Opens a JFrame showing the column chart with the number of allocations
 	 * per referee
-	 * @param refList the RefereeList Object containing all referees
+	 * @param referees all referees to be shown
 	 */
-	public ChartFrame(RefereeList refList) {
-		// Store passed referee list
-		this.refList = refList;
-		this.refList.sort();
-
-		// Calculate JFrame width according to the number of referees and
-		// the necessary margins (left and right); minimum width of 150 px
-		int widthPerReferee = BAR_WIDTH + SPACING;
-		int margins = SPACING * 2;
-		frame_width = Math.max(refList.size() * widthPerReferee + margins, 300);
+	public ChartFrame(Iterable<Referee> referees) {
+		chart.show(referees);
 
 		// Set JFrame properties
 		setTitle("Referee Chart");
-		setSize(frame_width, FRAME_HEIGHT);
 		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
-		setResizable(false);
+
+		// Print centred chart title above chart, next to the zoom buttons
+		JPanel top = new JPanel(new BorderLayout());
+		JLabel title = new JLabel("Allocations per Referee (ordered by ID)",
+				JLabel.CENTER);
+		title.setFont(BOLD);
+		top.add(title, BorderLayout.CENTER);
+		JPanel buttons = new JPanel();
+		buttons.add(zoomButton("Zoom in", ZOOM_STEP));
+		buttons.add(zoomButton("Zoom out", 1 / ZOOM_STEP));
+		buttons.add(zoomButton("Show all", 0));
+		top.add(buttons, BorderLayout.EAST);
+		add(top, BorderLayout.NORTH);
+
+		// Display column chart, panning sideways under the y-axis
+		scrollPane = new JScrollPane(chart,
+				ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER,
+				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+		scrollPane.setRowHeaderView(axis);
+		add(scrollPane, BorderLayout.CENTER);
+
+		// Print centred x-axis description, above the statistics
+		JPanel bottom = new JPanel(new BorderLayout());
+		JLabel xAxisTitle = new JLabel("Referees by ID", JLabel.CENTER);
+		xAxisTitle.setFont(BOLD);
+		bottom.add(xAxisTitle, BorderLayout.NORTH);
+		statisticsLabel.setFont(PLAIN);
+		bottom.add(statisticsLabel, BorderLayout.SOUTH);
+		add(bottom, BorderLayout.SOUTH);
+
+		// Zoom around the mouse by turning the wheel with Ctrl held down;
+		// otherwise the wheel scrolls as usual
+		chart.addMouseWheelListener(new MouseWheelListener() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (e.isControlDown())
+					zoom(e.getWheelRotation() < 0 ? ZOOM_STEP : 1 / ZOOM_STEP,
+							e.getX() - scrollPane.getViewport()
+									.getViewPosition().x);
+				else
+					scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(
+							chart, e, scrollPane));
+			}
+		});
+		fitChart();
+	}
+
+	/**
+	 * Shows other referees, e.g. all referees once the chart listens to
+	 * their changes
+	 * @param referees all referees to be shown
+	 */
+	public void showReferees(Iterable<Referee> referees) {
+		chart.show(referees);
+		axis.repaint();
+		if (!isShowing())
+			fitChart();
+	}
+
+	/**
+	 * Shows the statistics of the referees' allocations below the chart
+	 * @param statistics the statistics (e.g. of the model, polled)
+	 */
+	public void showStatistics(AllocationStatistics statistics) {
+		statisticsLabel.setText(String.format("Referees: %d   Allocations: "
+				+ "%d to %d, mean %.2f, standard deviation %.2f",
+				statistics.getReferees(), statistics.getMin(),
+				statistics.getMax(), statistics.getMean(),
+				statistics.getStandardDeviation()));
+	}
+
+	/**
+	 * Sizes the frame to the chart fully zoomed in, up to MAX_VIEW_WIDTH,
+	 * zooming out for the whole chart to fit
+	 */
+	private void fitChart() {
+		int width = Math.min(chart.widthAt(DETAIL_ZOOM), MAX_VIEW_WIDTH);
+		chart.setZoom(chart.zoomToFit(width));
+		scrollPane.getViewport().setPreferredSize(new Dimension(width,
+				CHART_HEIGHT));
+		pack();
 		setLocationRelativeTo(null); // centres JFrame on desktop
+	}
+
+	/**
+	 * Creates a button zooming around the middle of the view
+	 * @param text the text of the button
+	 * @param factor the factor to zoom by (0 to show all referees)
+	 * @return the button
+	 */
+	private JButton zoomButton(String text, final double factor) {
+		JButton button = new JButton(text);
+		button.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				zoom(factor, scrollPane.getViewport().getWidth() / 2);
+			}
+		});
+		return button;
+	}
+
+	/**
+	 * Zooms the chart, keeping the referee at a point of the view in place;
+	 * the chart is zoomed no further in than a bar per referee and no
+	 * further out than to fit into the view
+	 * @param factor the factor to zoom by
+	 * @param anchor the point of the view, from its left edge
+	 */
+	private void zoom(double factor, int anchor) {
+		JViewport viewport = scrollPane.getViewport();
+		double ref = (viewport.getViewPosition().x + anchor) / chart.getZoom();
+		double zoom = Math.max(Math.min(chart.getZoom() * factor,
+				DETAIL_ZOOM), chart.zoomToFit(viewport.getWidth()));
+		if (zoom == chart.getZoom())
+			return;
+		chart.setZoom(zoom);
+
+		// Size the view at once, so that it can be moved to the referee
+		Dimension size = chart.getPreferredSize();
+		viewport.setViewSize(size);
+		int x = (int) Math.round(ref * zoom) - anchor;
+		x = Math.max(0, Math.min(x, size.width - viewport.getWidth()));
+		viewport.setViewPosition(new Point(x, 0));
+	}
+
+	@Override
+	public void refereeAdded(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeAdded(ref);
+				}
+			});
+			return;
+		}
+		chart.add(ref);
+		axis.repaint();
+	}
 
-		// Display column chart
-		add(new ChartComponent());
+	@Override
+	public void refereeChanged(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeChanged(ref);
+				}
+			});
+			return;
+		}
+		chart.change(ref);
+		axis.repaint();
+	}
+
+	@Override
+	public void refereeRemoved(final Referee ref) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refereeRemoved(ref);
+				}
+			});
+			return;
+		}
+		chart.remove(ref);
+		axis.repaint();
 	}
 
 	/**
-	 * A component that draws the column chart and displays all axis and titles
+	 * Returns the height of a bar for a number of allocations
+	 * @param allocations the number of allocations
+	 * @param scale the highest number of allocations (at least one)
+	 * @return the height in pixels
 	 */
-	private class ChartComponent extends JComponent {
-		/** @Override paint method */
-		public void paint(Graphics g) {
-			// Set font properties for chart and axis titles; create FontMetric
-			// to retrieve lengths of titles as to horizontally centre titles
-			g.setFont(new Font("Arial", Font.BOLD, 12));
-			FontMetrics fm_bold = g.getFontMetrics();
+	private static int heightOf(double allocations, int scale) {
+		return (int) (allocations * (chartBottom() - TOP_MARGIN) / scale);
+	}
 
-			// Print centred chart title above chart
-			String title = "Allocations per Referee (ordered by ID)";
-			g.drawString(title, (frame_width - fm_bold.stringWidth(title)) / 2,
-					25);
+	/**
+	 * Returns the interval between gridlines: two allocations, or the least
+	 * of 5, 10, 20, 50, ... which keeps to MAX_GRIDLINES
+	 * @param scale the highest number of allocations (at least one)
+	 * @return the interval
+	 */
+	private static long gridInterval(int scale) {
+		for (long base = 1;; base *= 10)
+			for (long interval : new long[] {2 * base, 5 * base, 10 * base})
+				if (scale / interval <= MAX_GRIDLINES)
+					return interval;
+	}
 
-			// Print rotated y-axis description
-			((Graphics2D) g).rotate(-Math.PI / 2); // Rotate orientation -90°
-			String yAxisTitle = "Number of Allocations";
-			g.drawString(yAxisTitle, (FRAME_HEIGHT + 120) / -2, 20);
-			((Graphics2D) g).rotate(Math.PI / 2); // Revert rotation to normal
+	/**
+	 * Returns the bottom edge of the chart
+	 */
+	private static int chartBottom() {
+		return CHART_HEIGHT - BOTTOM_MARGIN;
+	}
 
-			// Print centred x-axis description
-			String xAxisTitle = "Referees by ID";
-			g.drawString(xAxisTitle,
-					(frame_width - fm_bold.stringWidth(xAxisTitle)) / 2,
-					FRAME_HEIGHT - 30);
+	/**
+	 * A component that draws the column chart without its y-axis
+	 */
+	static class ChartComponent extends JComponent {
+		/** The referees shown, ordered by ID */
+		private ArrayList<Referee> refs = new ArrayList<>();
 
-			// Set font properties for axis labels
-			g.setFont(new Font("Arial", Font.PLAIN, 12));
-			FontMetrics fm_plain = g.getFontMetrics();
+		/** Number of allocations drawn per referee */
+		private AllocationTree allocations = new AllocationTree(new int[0]);
 
-			// Retrieve the maximum number of allocations to provide flexible,
-			// vertically scaling of the chart
-			int maxAllocations = refList.getMaxAllocation();
+		/** Width per referee in pixels */
+		private double zoom = DETAIL_ZOOM;
 
-			// Calculate the edges of the chart
-			int chartTop = SPACING + 10;
-			int chartBottom = FRAME_HEIGHT - BOTTOM_MARGIN;
-			int chartLeft = SPACING * 2;
-			int chartRight = frame_width - SPACING;
+		/** Width of the chart */
+		private int chart_width;
 
-			// Print gridline and y-axis labels (with interval of two)
-			int yLabel = SPACING + 5;
-			// For each second interval up to the maximum number of allocations
-			for (int i = 0; i <= maxAllocations; i += 2) {
-				// Calculate height of next y-axis label and gridline
-				int yLabelHeight = chartBottom - i
-						* (chartBottom - SPACING - 10) / maxAllocations;
-
-				// Print y-axis label (number of allocations) with tick marking
-				// where on the y-axis the label is placed
-				g.drawString("" + i, yLabel, yLabelHeight);
-				g.drawLine(yLabel * 2 - 15, yLabelHeight, chartLeft,
-						yLabelHeight);
+		/** Images of the chart by their index from the left (least recently
+		 * painted first) */
+		private final LinkedHashMap<Integer, BufferedImage> tiles =
+				new LinkedHashMap<Integer, BufferedImage>(MAX_TILES * 2, 0.75f,
+						true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, BufferedImage> e) {
+				return size() > MAX_TILES;
+			}
+		};
 
-				// Print gridline (except for 0 as that gridline is the x-axis)
-				if (i != 0) {
-					// Display gridline in light gray
-					g.setColor(Color.LIGHT_GRAY);
-					g.drawLine(chartLeft, yLabelHeight, chartRight,
-							yLabelHeight);
+		/**
+		 * Shows other referees
+		 * @param referees all referees to be shown
+		 */
+		void show(Iterable<Referee> referees) {
+			refs = new ArrayList<>();
+			for (Referee ref : referees)
+				refs.add(ref);
+			Collections.sort(refs);
+			int[] counts = new int[refs.size()];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = refs.get(i).getAllocations();
+			allocations = new AllocationTree(counts);
+			layOut();
+		}
+
+		/**
+		 * Adds the bar of a referee added
+		 * @param ref the referee
+		 */
+		void add(Referee ref) {
+			int i = Collections.binarySearch(refs, ref);
+			if (i >= 0)
+				return;
+			i = -i - 1;
+			refs.add(i, ref);
+			allocations.insert(i, ref.getAllocations());
+			layOut();
+		}
+
+		/**
+		 * Redraws the bar of a referee changed, or the whole chart if its
+		 * scale has changed
+		 * @param ref the referee
+		 */
+		void change(Referee ref) {
+			int i = indexOf(ref);
+			if (i < 0 || allocations.get(i) == ref.getAllocations())
+				return;
+			int lastScale = scale();
+			allocations.set(i, ref.getAllocations());
+			if (scale() != lastScale) {
+				tiles.clear();
+				repaint();
+				return;
+			}
+
+			// Redraw the bar's or column's area (not its label) in the
+			// images kept
+			int left = x(i);
+			int right = Math.max(x(i + 1), left + 1);
+			Rectangle column = new Rectangle(left, TOP_MARGIN, right - left,
+					chartBottom() - TOP_MARGIN);
+			for (Map.Entry<Integer, BufferedImage> tile : tiles.entrySet()) {
+				int tileLeft = tile.getKey() * TILE_WIDTH;
+				if (left < tileLeft + TILE_WIDTH && right > tileLeft) {
+					Graphics2D g = tile.getValue().createGraphics();
+					g.translate(-tileLeft, 0);
+					g.clip(column);
+					draw(g, left, right);
+					g.dispose();
 				}
+			}
+			repaint(column);
+		}
+
+		/**
+		 * Removes the bar of a referee removed
+		 * @param ref the referee
+		 */
+		void remove(Referee ref) {
+			int i = indexOf(ref);
+			if (i < 0)
+				return;
+			refs.remove(i);
+			allocations.remove(i);
+			layOut();
+		}
+
+		/**
+		 * Returns the index of a referee's bar
+		 * @param ref the referee
+		 * @return the index (-1 if the referee is not shown)
+		 */
+		private int indexOf(Referee ref) {
+			int i = Collections.binarySearch(refs, ref);
+			return i >= 0 && refs.get(i) == ref ? i : -1;
+		}
+
+		/**
+		 * Returns the width per referee
+		 * @return the width in pixels
+		 */
+		double getZoom() {
+			return zoom;
+		}
+
+		/**
+		 * Changes the width per referee and draws the chart again
+		 * @param zoom the width in pixels
+		 */
+		void setZoom(double zoom) {
+			this.zoom = zoom;
+			layOut();
+		}
+
+		/**
+		 * Returns the width per referee for the chart to fit into a width,
+		 * but no more than a bar per referee
+		 * @param width the width
+		 * @return the width per referee in pixels
+		 */
+		double zoomToFit(int width) {
+			if (refs.isEmpty())
+				return DETAIL_ZOOM;
+			return Math.min((double) Math.max(width - SPACING, 1)
+					/ refs.size(), DETAIL_ZOOM);
+		}
+
+		/**
+		 * Returns the width of the chart at a width per referee; minimum
+		 * width of 300 px
+		 * @param zoom the width per referee in pixels
+		 * @return the width of the chart
+		 */
+		int widthAt(double zoom) {
+			return Math.max((int) Math.ceil(refs.size() * zoom) + SPACING,
+					300);
+		}
+
+		/**
+		 * Returns the highest number of allocations the chart is scaled to
+		 * (at least one, so that a chart without allocations has a scale)
+		 */
+		int scale() {
+			return Math.max(allocations.max(), 1);
+		}
+
+		/**
+		 * Sizes the chart to the number of referees and draws it again
+		 */
+		private void layOut() {
+			chart_width = widthAt(zoom);
+			setPreferredSize(new Dimension(chart_width, CHART_HEIGHT));
+			tiles.clear();
+			revalidate();
+			repaint();
+		}
+
+		/**
+		 * Paints the chart from the images covering the area to be painted,
+		 * drawing the images not kept
+		 */
+		@Override
+		protected void paintComponent(Graphics g) {
+			Rectangle clip = g.getClipBounds();
+			if (clip == null)
+				clip = new Rectangle(0, 0, getWidth(), getHeight());
+			int first = Math.max(clip.x, 0) / TILE_WIDTH;
+			int last = Math.min(clip.x + clip.width, chart_width) / TILE_WIDTH;
+			for (int tile = first; tile <= last; tile++)
+				g.drawImage(tile(tile), tile * TILE_WIDTH, 0, null);
+		}
+
+		/**
+		 * Returns an image of the chart, drawing it if it is not kept
+		 * @param tile the index of the image from the left
+		 * @return the image
+		 */
+		private BufferedImage tile(int tile) {
+			BufferedImage image = tiles.get(tile);
+			if (image == null) {
+				image = new BufferedImage(TILE_WIDTH, CHART_HEIGHT,
+						BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = image.createGraphics();
+				int tileLeft = tile * TILE_WIDTH;
+				g.translate(-tileLeft, 0);
+				g.clipRect(tileLeft, 0, TILE_WIDTH, CHART_HEIGHT);
+				draw(g, tileLeft, tileLeft + TILE_WIDTH);
+				g.dispose();
+				tiles.put(tile, image);
+			}
+			return image;
+		}
+
+		/**
+		 * Draws the part of the chart between two x coordinates (any
+		 * drawing outside them is to be clipped)
+		 * @param g the graphics to draw on
+		 * @param left the left edge of the part
+		 * @param right the right edge of the part
+		 */
+		private void draw(Graphics2D g, int left, int right) {
+			// Clear the part
+			g.setColor(getBackground() != null ? getBackground()
+					: Color.WHITE);
+			g.fillRect(left, 0, right - left, CHART_HEIGHT);
+
+			// Print gridline with interval of two or more (except for 0 as
+			// that gridline is the x-axis)
+			int scale = scale();
+			long interval = gridInterval(scale);
+			int chartRight = chart_width - SPACING;
+			g.setColor(Color.LIGHT_GRAY);
+			for (long i = interval; i <= scale; i += interval) {
+				int y = chartBottom() - heightOf(i, scale);
+				g.drawLine(left, y, Math.min(chartRight, right), y);
+			}
+
+			// Print x-axis after the gridline to ensure that the axis is
+			// overlaying the gridline
+			g.setColor(Color.BLACK);
+			g.drawLine(left, chartBottom(), Math.min(chartRight, right),
+					chartBottom());
 
-				// Revert colour to black
+			// Print a bar per referee, or per column of pixels if there is
+			// less than a pixel per referee
+			if (zoom >= 1)
+				drawBars(g, left, right, scale);
+			else
+				drawColumns(g, left, right, scale);
+			drawLabels(g, left, right);
+		}
+
+		/**
+		 * Draws the bar of each referee whose bar reaches into a part
+		 */
+		private void drawBars(Graphics2D g, int left, int right, int scale) {
+			g.setColor(Color.GRAY);
+			int barWidth = Math.max((int) (zoom * BAR_WIDTH / DETAIL_ZOOM), 1);
+			int last = firstAt(right);
+			for (int i = Math.max(firstAt(left) - 1, 0); i < last; i++) {
+				int columnLeft = x(i) + (x(i + 1) - x(i) - barWidth) / 2;
+				int barHeight = heightOf(allocations.get(i), scale);
+				g.fillRect(columnLeft, chartBottom() - barHeight, barWidth,
+						barHeight);
+			}
+		}
+
+		/**
+		 * Draws each column of pixels of a part for the referees it covers:
+		 * a bar up to their least number of allocations, the range up to
+		 * their highest and a dot at their mean
+		 */
+		private void drawColumns(Graphics2D g, int left, int right,
+				int scale) {
+			for (int x = Math.max(left, 0); x < right; x++) {
+				int from = firstAt(x);
+				int to = firstAt(x + 1);
+				if (from >= to)
+					continue;
+				int least = heightOf(allocations.min(from, to), scale);
+				int highest = heightOf(allocations.max(from, to), scale);
+				int mean = heightOf((double) allocations.sum(from, to)
+						/ (to - from), scale);
+				g.setColor(Color.GRAY);
+				g.fillRect(x, chartBottom() - least, 1, least);
+				g.setColor(RANGE);
+				g.fillRect(x, chartBottom() - highest, 1, highest - least);
 				g.setColor(Color.BLACK);
+				g.fillRect(x, chartBottom() - mean - 1, 1, 1);
 			}
-			
-			// Print y- and x-axes after the gridline to ensure that the axes
-			// are overlaying the gridline
-			g.drawLine(chartLeft, chartTop, chartLeft, chartBottom); // y-axis
-			g.drawLine(chartLeft, chartBottom, chartRight, chartBottom);
-			
-			// Print column chart for each referee
-			// Calculate left edge of first bar with one pixel offset as to
-			// avoid overlaying the y-axis
-			int columnLeft = chartLeft + 1;
-			
-			// Print column according to number of allocations per referee for
-			// each referee in the provided RefereeList
-			for (Referee ref : refList) {
+		}
+
+		/**
+		 * Draws the ID labels reaching into a part: below each bar if the
+		 * bars are wide enough, otherwise every LABEL_SPACING pixels with a
+		 * tick marking the referee labelled
+		 */
+		private void drawLabels(Graphics2D g, int left, int right) {
+			g.setColor(Color.BLACK);
+			g.setFont(PLAIN);
+			FontMetrics fm_plain = g.getFontMetrics();
+			int labelTop = chartBottom() + 15;
+			if (zoom >= BAR_WIDTH) {
 				// Print referee ID as x-axis label (centred below ref's bar)
-				g.setColor(Color.BLACK);
-				String xLabel = ref.getID();
-				int xLabelLeft = columnLeft
-						+ (BAR_WIDTH - fm_plain.stringWidth(xLabel)) / 2;
-				g.drawString(xLabel, xLabelLeft, chartBottom + 15);
-				
-				// Print bar according to number of allocations
-				g.setColor(Color.GRAY);
-				int barHeight = ref.getAllocations()
-						* (chartBottom - SPACING - 10) / maxAllocations;
-				g.fillRect(columnLeft, chartBottom - barHeight, BAR_WIDTH,
-						barHeight);
-				
-				// Advance columnLeft for next bar to be printed
-				columnLeft += BAR_WIDTH + SPACING;
+				int last = Math.min(firstAt(right) + 1, refs.size());
+				for (int i = Math.max(firstAt(left) - 1, 0); i < last; i++) {
+					String xLabel = refs.get(i).getID();
+					g.drawString(xLabel, (x(i) + x(i + 1)
+							- fm_plain.stringWidth(xLabel)) / 2, labelTop);
+				}
+				return;
+			}
+			for (int x = Math.max(left / LABEL_SPACING - 1, 0)
+					* LABEL_SPACING; x < right; x += LABEL_SPACING) {
+				int i = firstAt(x);
+				if (i >= refs.size())
+					return;
+				g.drawLine(x(i), chartBottom(), x(i), chartBottom() + 4);
+				g.drawString(refs.get(i).getID(), x(i) + 2, labelTop);
 			}
 		}
+
+		/**
+		 * Returns the left edge of a referee's part of the chart
+		 */
+		private int x(int i) {
+			return (int) (i * zoom);
+		}
+
+		/**
+		 * Returns the first referee whose part of the chart starts at or
+		 * after an x coordinate
+		 * @param x the x coordinate
+		 * @return the index of the referee (the number of referees if
+		 * there is none)
+		 */
+		private int firstAt(int x) {
+			if (x <= 0)
+				return 0;
+			int i = (int) Math.min(Math.ceil(x / zoom), refs.size());
+
+			// Correct any rounding
+			while (i > 0 && x(i - 1) >= x)
+				i--;
+			while (i < refs.size() && x(i) < x)
+				i++;
+			return i;
+		}
+	}
+
+	/**
+	 * A component that draws the y-axis of the chart and its title, staying
+	 * in place when the chart is panned
+	 */
+	static class AxisComponent extends JComponent {
+		private static final long serialVersionUID = 1L;
+
+		/** The chart of the axis */
+		private final ChartComponent chart;
+
+		/**
+		 * Constructor for the axis of a chart
+		 * @param chart the chart
+		 */
+		AxisComponent(ChartComponent chart) {
+			this.chart = chart;
+			setPreferredSize(new Dimension(AXIS_WIDTH, CHART_HEIGHT));
+		}
+
+		/**
+		 * Draws the y-axis with its labels and title
+		 */
+		@Override
+		protected void paintComponent(Graphics g) {
+			// Print rotated y-axis description, centred beside the chart
+			g.setColor(Color.BLACK);
+			g.setFont(BOLD);
+			FontMetrics fm_bold = g.getFontMetrics();
+			String yAxisTitle = "Number of Allocations";
+			((Graphics2D) g).rotate(-Math.PI / 2); // Rotate orientation -90°
+			g.drawString(yAxisTitle, -(TOP_MARGIN + chartBottom()
+					+ fm_bold.stringWidth(yAxisTitle)) / 2, 20);
+			((Graphics2D) g).rotate(Math.PI / 2); // Revert rotation to normal
+
+			// Print y-axis labels (with the gridlines' interval) with tick
+			// marking where on the y-axis the label is placed
+			g.setFont(PLAIN);
+			int scale = chart.scale();
+			long interval = gridInterval(scale);
+			int yLabel = SPACING + 5;
+			for (long i = 0; i <= scale; i += interval) {
+				int yLabelHeight = chartBottom() - heightOf(i, scale);
+				g.drawString("" + i, yLabel, yLabelHeight);
+				g.drawLine(yLabel * 2 - 15, yLabelHeight, AXIS_WIDTH,
+						yLabelHeight);
+			}
+
+			// Print y-axis
+			g.drawLine(AXIS_WIDTH - 1, TOP_MARGIN, AXIS_WIDTH - 1,
+					chartBottom());
+		}
 	}
-}
\ No newline at end of file
+}
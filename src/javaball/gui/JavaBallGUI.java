@@ -9,6 +9,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 
 import javaball.controller.JavaBallController;
 import javaball.model.Referee;
@@ -24,8 +26,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
-import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
  * Team Foxtrot
@@ -49,16 +54,22 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 	/** JFrame and spacing dimensions in pixels */
 	private static final int WIDTH = 800, HEIGHT = 400, SPACING = 5;
 
+	/** Pause in typing (ms) before searching and number of matches and
+	 * suggestions for a misspelt search shown */
+	private static final int SEARCH_DELAY = 150, SEARCH_MATCHES = 100,
+			SEARCH_SUGGESTIONS = 10;
+
 	/** Predefined set of colours for uniform component colouring */
 	private final Color background = Color.decode("0xDDDDDD"),
 			header = Color.DARK_GRAY;
 
-	/** Reference to the JavaBallController */
-	private final JavaBallController controller;
+	/** Reference to the JavaBallController (null while loading) */
+	private JavaBallController controller;
 
 	/** Default strings within GUI */
 	private final String defaultSearch = "Enter name or ID...";
 	private final String defaultTableHeader = "Referees ordered by ID";
+	private final String loadingTableHeader = "Loading referees...";
 
 	/** Main/interactive GUI components */
 	private JTextField fldSearch;
@@ -69,14 +80,19 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 	/** JTable to store the referee listing */
 	private JTable refereesTable;
 
+	/** Timer starting the type-ahead search once typing pauses */
+	private Timer searchTimer;
+
+	/** Number of the latest type-ahead search (results of older ones are
+	 * dropped) and whether the table shows type-ahead matches */
+	private int searchNumber;
+	private boolean showingMatches;
+
 	/**
-	 * Constructor for JavaBallGUI
-	 * @param controller
+	 * Constructor for JavaBallGUI, showing that the referees are being
+	 * loaded until the controller is set
 	 */
-	public JavaBallGUI(JavaBallController controller) {
-		// Store reference to JavaBallController
-		this.controller = controller;
-
+	public JavaBallGUI() {
 		// Set JFrame properties
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
 		setTitle("JavaBall RAS");
@@ -90,6 +106,41 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		
 		// Make buttons and text field responsive to user input
 		addActionListeners();
+		setLoaded(false);
+	}
+
+	/**
+	 * Sets the JavaBallController once the referees are loaded, enabling
+	 * the GUI
+	 * @param controller the JavaBallController
+	 */
+	public void setController(JavaBallController controller) {
+		this.controller = controller;
+		setLoaded(true);
+	}
+
+	/**
+	 * Returns the table displaying the referee listing
+	 * @return the referee table
+	 */
+	public JTable getTable() {
+		return refereesTable;
+	}
+
+	/**
+	 * Enables the GUI components acting on the referees, or disables them
+	 * while they are being loaded
+	 * @param loaded whether the referees have been loaded
+	 */
+	private void setLoaded(boolean loaded) {
+		fldSearch.setEnabled(loaded);
+		btnSearch.setEnabled(loaded);
+		btnAddRef.setEnabled(loaded);
+		btnAllocRefs.setEnabled(loaded);
+		btnChart.setEnabled(loaded);
+		btnSaveExit.setEnabled(loaded);
+		if (!loaded)
+			lblTableHeader.setText(loadingTableHeader);
 	}
 
 	/**
@@ -241,19 +292,17 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		Component tableHeaderSpacerRight = Box
 				.createHorizontalStrut(SPACING + 1);
 		
-		// Create table to display referee listing and set its properties
-		refereesTable = controller.getTable();
+		// Create table to display referee listing and set its properties (the
+		// controller fills it in and sets its sorter once the referees are
+		// loaded)
+		refereesTable = new JTable();
 		refereesTable.setBackground(UIManager.getColor("menu"));
-		refereesTable.setAutoCreateRowSorter(true);
 		refereesTable.setBorder(null);
 		refereesTable.setShowVerticalLines(false);
 		refereesTable.setRowSelectionAllowed(false);
 		refereesTable.setFont(new Font("Dialog", Font.PLAIN, 14));
 
-		// Create and apply table layout
-		DefaultTableCellRenderer leftRender = new DefaultTableCellRenderer();
-		leftRender.setHorizontalAlignment(JLabel.LEFT);
-		refereesTable.getColumnModel().getColumn(4).setCellRenderer(leftRender);
+		// Apply table layout
 		refereesTable.setSize(contentPanel.getWidth(),
 				contentPanel.getHeight());
 		
@@ -295,6 +344,34 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		btnChart.addActionListener(this);
 		btnSaveExit.addActionListener(this);
 
+		// Search upon enter in the search field as upon the search button
+		fldSearch.addActionListener(this);
+
+		// Search as the user types, once typing pauses
+		searchTimer = new Timer(SEARCH_DELAY, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				typeAhead();
+			}
+		});
+		searchTimer.setRepeats(false);
+		fldSearch.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+		});
+
 		// Clear the search text field if mouse cursor enters the field
 		fldSearch.addMouseListener(new MouseAdapter() {
 			@Override
@@ -304,6 +381,32 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 				}
 			}
 		});
+
+		// Edit a suggested referee once the user picks it by double click
+		refereesTable.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent event) {
+				int row = refereesTable.rowAtPoint(event.getPoint());
+				if (event.getClickCount() == 2 && showingMatches && row >= 0)
+					editSuggestion(row);
+			}
+		});
+	}
+
+	/**
+	 * Opens a referee frame for a referee suggested in the table
+	 * @param row the table row of the referee picked
+	 */
+	private void editSuggestion(int row) {
+		// The ID column of the referee picked
+		String id = (String) refereesTable.getModel().getValueAt(
+				refereesTable.convertRowIndexToModel(row), 0);
+		Referee ref = controller.getReferee(id);
+		if (ref != null) {
+			RefereeFrame editRef = new RefereeFrame(controller, ref);
+			editRef.setVisible(true);
+			editRef.setTitle("Edit Referee");
+		}
 	}
 
 	/**
@@ -321,7 +424,7 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		else if (ae.getSource() == btnChart)
 			// Open chart frame upon chart button
 			controller.openChart();
-		else if (ae.getSource() == btnSearch)
+		else if (ae.getSource() == btnSearch || ae.getSource() == fldSearch)
 			 // Search for desired referee upon search button
 			searchReferee();
 		else if (ae.getSource() == btnShowAll)
@@ -353,7 +456,8 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		// Retrieve user input in search field
 		String refInfo = fldSearch.getText().toLowerCase().trim();
 		
-		// Retrieve referee upon provided search query
+		// Retrieve referee upon provided search query (partial IDs and names
+		// are only suggested, see typeAhead())
 		Referee ref = controller.getReferee(refInfo);
 		
 		// Check if referee is existent
@@ -365,6 +469,23 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 			
 			// Reset the search field to default text
 			fldSearch.setText(defaultSearch);
+			return;
+		}
+
+		// Otherwise suggest the most similar referees (e.g. for a misspelt
+		// name) in the table, leaving the search input to be corrected
+		ArrayList<Referee> similar = new ArrayList<Referee>();
+		if (!refInfo.isEmpty() && !refInfo.equalsIgnoreCase(defaultSearch))
+			similar = controller.findSimilarReferees(refInfo,
+					SEARCH_SUGGESTIONS);
+		if (!similar.isEmpty()) {
+			// Drop a pending type-ahead search, which would replace them
+			searchTimer.stop();
+			searchNumber++;
+			showingMatches = true;
+			controller.allocatedTableData(similar);
+			setTableHeader("No referee \"" + refInfo + "\" found. Did you "
+					+ "mean one of these? (double click to edit)");
 		} else {
 			// Otherwise show error that referee could not be found and reset
 			// the search field to default text
@@ -373,6 +494,50 @@ public class JavaBallGUI extends JFrame implements ActionListener {
 		}
 	}
 
+	/**
+	 * Shows the referees whose ID or names start with the search field input
+	 * in the table, searching in the background; an empty search field shows
+	 * all referees again
+	 */
+	private void typeAhead() {
+		final String query = fldSearch.getText().trim();
+		final int number = ++searchNumber;
+		if (controller == null)
+			return;
+		if (query.isEmpty() || query.equals(defaultSearch)) {
+			if (showingMatches) {
+				showingMatches = false;
+				controller.updateTable();
+			}
+			return;
+		}
+
+		new SwingWorker<ArrayList<Referee>, Void>() {
+			@Override
+			protected ArrayList<Referee> doInBackground() {
+				return controller.findReferees(query, SEARCH_MATCHES);
+			}
+
+			@Override
+			protected void done() {
+				// Drop the results if the input has changed since
+				if (number != searchNumber)
+					return;
+				ArrayList<Referee> matches;
+				try {
+					matches = get();
+				} catch (InterruptedException | ExecutionException e) {
+					return;
+				}
+				showingMatches = true;
+				controller.allocatedTableData(matches);
+				setTableHeader(matches.isEmpty() ? "No referees matching \""
+						+ query + "\"" : "Referees matching \"" + query
+						+ "\" (double click to edit)");
+			}
+		}.execute();
+	}
+
 	/**
 	 * Sets the table header to a given String and activates the show all button
 	 * @param label the table header to be displayed
@@ -1,7 +1,24 @@
 package javaball.main;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import javaball.controller.AllocationServer;
+import javaball.controller.Autosave;
 import javaball.controller.JavaBallController;
 import javaball.gui.JavaBallGUI;
+import javaball.model.ConcurrentModel;
+import javaball.model.LoadListener;
+import javaball.model.ModelJournal;
+import javaball.model.ModelSnapshot;
 import javaball.model.RefereeList;
 import javaball.model.Season;
 
@@ -9,7 +26,11 @@ import javaball.model.Season;
  * Team Foxtrot
  * JavaBall Referee Allocation System
  * <p>
- * The main class
+ * The main class, starting the GUI or, given --server [port], the headless
+ * HTTP service (see AllocationServer), listening at the loopback address
+ * unless -Djavaball.server.address is given. The GUI's main frame is shown
+ * at once while the model is loaded, and the time taken by each startup
+ * phase is logged.
  * <p>
  * University of Glasgow
  * MSc/PGDip Information Technology/Software Development
@@ -24,24 +45,321 @@ import javaball.model.Season;
  * @since 13-02-2015
  */
 public class JavaBall {
+	/** Journal records written between forcing them to disk (0: on exit) */
+	private static final int SYNC_EVERY = Integer.getInteger(
+			"javaball.journal.syncEvery", ModelJournal.SYNC_EVERY);
+
+	/** Autosave interval and quiet time in ms (interval 0: no autosave) */
+	private static final long AUTOSAVE_INTERVAL = Long.getLong(
+			"javaball.autosave.interval", Autosave.INTERVAL);
+	private static final long AUTOSAVE_QUIET = Long.getLong(
+			"javaball.autosave.quiet", Autosave.QUIET);
+
+	/** Address the headless service listens at (the loopback address unless
+	 * given, e.g. 0.0.0.0 for all interfaces) */
+	private static final String SERVER_ADDRESS = System.getProperty(
+			"javaball.server.address");
+
+	/** Exit code for wrong arguments */
+	private static final int USAGE = 2;
+
+	/** Log of the startup phases */
+	private static final Logger LOG = Logger.getLogger(JavaBall.class
+			.getName());
+
+	/** Whether running headless, i.e. warnings go to standard error */
+	private static boolean headless;
+
+	/** Receives the problems found while loading the referees */
+	private static final LoadListener WARNINGS = new LoadListener() {
+		@Override
+		public void loadWarning(String message) {
+			warn(message);
+		}
+	};
+
+	/** The main frame (only used on the event dispatch thread) */
+	private static JavaBallGUI view;
+
 	/**
 	 * The main method
-	 * @param args the arguments
+	 * @param args the arguments (--server [port] for the headless service)
 	 */
 	public static void main(String[] args) {
-		// initialise model (Season for Matches, RefereeList for Referees)
+		final long start = System.nanoTime();
+		headless = args.length > 0 && args[0].equals("--server");
+		int port = headless ? port(args) : AllocationServer.PORT;
+		if (port < 0) {
+			System.err.println("Usage: java javaball.main.JavaBall "
+					+ "[--server [port]]");
+			System.exit(USAGE);
+		}
+
+		// show the main frame at once, waiting for the referees
+		if (!headless)
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					view = new JavaBallGUI();
+					view.setVisible(true);
+					logPhase("Frame shown", start);
+				}
+			});
+
+		// meanwhile initialise model (Season for Matches, RefereeList for
+		// Referees) on this thread rather than the event dispatch thread
 		Season season = new Season();
-		RefereeList refList = new RefereeList();
-		
-		// initialise controller
-		JavaBallController controller = new JavaBallController(season,
-				refList);
-                
-        // initialise view
-		JavaBallGUI view = new JavaBallGUI(controller);
-		view.setVisible(true);
-		
-		// pass GUI reference to controller
-		controller.setView(view);
-	}
-}
\ No newline at end of file
+		RefereeList refList = null;
+		ModelSnapshot snapshot = readSnapshot();
+		if (snapshot != null)
+			refList = restore(snapshot, season);
+
+		// replay the changes not saved last time, and journal new ones
+		ModelJournal journal;
+		if (refList != null) {
+			logPhase("Snapshot restored", start);
+			journal = openJournal(snapshot.getJournalId(),
+					snapshot.getJournalPosition(), refList, season);
+		} else {
+			season = new Season();
+			refList = new RefereeList(WARNINGS);
+			logPhase("Referee input file read", start);
+			journal = openJournal(
+					new File(RefereeList.INPUT_FILE).lastModified(), 0,
+					refList, season);
+		}
+		if (journal != null && journal.getReplayed() > 0)
+			logPhase("Journal replayed (" + journal.getReplayed()
+					+ " changes)", start);
+
+		if (headless)
+			serve(port, refList, season, journal);
+		else
+			show(refList, season, journal, start);
+	}
+
+	/**
+	 * Returns the port given after --server
+	 * @param args the arguments (--server [port])
+	 * @return the port (the default port if none is given), or -1 if the
+	 * arguments are not valid
+	 */
+	private static int port(String[] args) {
+		if (args.length == 1)
+			return AllocationServer.PORT;
+		if (args.length > 2)
+			return -1;
+		try {
+			int port = Integer.parseInt(args[1]);
+			return port >= 0 && port <= 0xFFFF ? port : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Hands the loaded model to the main frame, on the event dispatch thread
+	 * once the frame is shown
+	 * @param refList the referees
+	 * @param season the matches
+	 * @param journal the journal (or null)
+	 * @param start the time (System.nanoTime()) the programme was started
+	 */
+	private static void show(final RefereeList refList, final Season season,
+			final ModelJournal journal, final long start) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				// initialise controller
+				JavaBallController controller = new JavaBallController(
+						season, refList, journal);
+				if (AUTOSAVE_INTERVAL > 0)
+					controller.startAutosave(AUTOSAVE_INTERVAL,
+							AUTOSAVE_QUIET);
+
+				// pass GUI reference to controller and enable the GUI
+				controller.setView(view);
+				view.setController(controller);
+				logPhase("Referees shown", start);
+			}
+		});
+	}
+
+	/**
+	 * Logs the time taken until the end of a startup phase
+	 * @param phase the phase
+	 * @param start the time (System.nanoTime()) the programme was started
+	 */
+	private static void logPhase(String phase, long start) {
+		LOG.info(String.format("%s after %.0f ms", phase,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+	/**
+	 * Serves the model over HTTP until the process is stopped, autosaving
+	 * it; on shutdown the snapshot is written and the journal deleted
+	 * @param port the port to listen at
+	 * @param refList the referees
+	 * @param season the matches
+	 * @param journal the journal (or null)
+	 */
+	private static void serve(int port, RefereeList refList, Season season,
+			final ModelJournal journal) {
+		final ConcurrentModel model = new ConcurrentModel(refList, season,
+				journal) {
+			@Override
+			protected void journalFailed(IOException e) {
+				warn("Error writing to " + ModelJournal.FILE + " ("
+						+ e.getMessage() + ").");
+			}
+		};
+		final Autosave autosave = AUTOSAVE_INTERVAL <= 0 ? null
+				: new Autosave(model, Paths.get(ModelSnapshot.FILE),
+						AUTOSAVE_INTERVAL, AUTOSAVE_QUIET) {
+					@Override
+					protected void failed(IOException e) {
+						warn("Error writing " + ModelSnapshot.FILE + " ("
+								+ e.getMessage() + ").");
+					}
+				};
+
+		// Send responses at once instead of waiting for the client to
+		// acknowledge their headers (read when the server is created)
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+
+		final AllocationServer server;
+		try {
+			InetAddress address = SERVER_ADDRESS == null
+					? InetAddress.getLoopbackAddress()
+					: InetAddress.getByName(SERVER_ADDRESS);
+			server = new AllocationServer(model, autosave,
+					new InetSocketAddress(address, port));
+		} catch (UnknownHostException e) {
+			warn("Address " + SERVER_ADDRESS + " is unknown.");
+			System.exit(1);
+			return;
+		} catch (IOException e) {
+			warn("Port " + port + " could not be bound (" + e.getMessage()
+					+ ").");
+			System.exit(1);
+			return;
+		}
+
+		// Save the model when stopped (e.g. by Ctrl-C)
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop(1);
+				if (autosave != null)
+					autosave.close();
+				try {
+					model.capture().write(Paths.get(ModelSnapshot.FILE));
+					if (journal != null) {
+						journal.close();
+						ModelJournal.delete(Paths.get(ModelJournal.FILE));
+					}
+				} catch (IOException e) {
+					warn("Error writing " + ModelSnapshot.FILE + " ("
+							+ e.getMessage() + ").");
+				}
+			}
+		});
+		server.start();
+		System.out.println("Serving on " + server.getAddress().getHostString()
+				+ " port " + server.getAddress().getPort());
+	}
+
+	/**
+	 * Shows a warning, on the event dispatch thread (or on standard error if
+	 * headless)
+	 * @param message the warning
+	 */
+	private static void warn(final String message) {
+		if (headless)
+			System.err.println("Warning: " + message);
+		else
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					JOptionPane.showMessageDialog(null, message, "Warning",
+							JOptionPane.WARNING_MESSAGE);
+				}
+			});
+	}
+
+	/**
+	 * Reads the model saved last time (on exit or by the autosave), unless
+	 * the referee input file has been changed since
+	 * @return the snapshot (null if there is nothing to restore)
+	 */
+	private static ModelSnapshot readSnapshot() {
+		File snapshot = new File(ModelSnapshot.FILE);
+		if (!snapshot.exists() || snapshot.lastModified()
+				< new File(RefereeList.INPUT_FILE).lastModified())
+			return null;
+
+		try {
+			return ModelSnapshot.read(snapshot.toPath());
+		} catch (IOException e) {
+			restoreFailed(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Restores the model of a snapshot
+	 * @param snapshot the snapshot read
+	 * @param season the empty season to restore the matches into
+	 * @return the restored referees (null if they cannot be restored, in
+	 * which case the season must not be used)
+	 */
+	private static RefereeList restore(ModelSnapshot snapshot, Season season) {
+		try {
+			return snapshot.restore(season);
+		} catch (IOException e) {
+			restoreFailed(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Warns that the snapshot cannot be restored
+	 */
+	private static void restoreFailed(IOException e) {
+		// Fall back to the input file
+		warn(ModelSnapshot.FILE + " could not be restored (" + e.getMessage()
+				+ "), " + RefereeList.INPUT_FILE + " is read instead.");
+	}
+
+	/**
+	 * Opens the journal, replaying the changes recorded since the model's
+	 * base was saved
+	 * @param id the journal's ID (as recorded in the snapshot, or the time
+	 * stamp of the input file)
+	 * @param position the journal position the base includes
+	 * @param refList the referees read from the base
+	 * @param season the matches read from the base
+	 * @return the journal (null if it cannot be used)
+	 */
+	private static ModelJournal openJournal(long id, long position,
+			RefereeList refList, Season season) {
+		try {
+			return ModelJournal.open(Paths.get(ModelJournal.FILE), id,
+					position, SYNC_EVERY, refList, season);
+		} catch (IOException e) {
+			// Keep the journal's changes, but out of the way of the next start
+			String kept = "";
+			try {
+				kept = ", it has been moved to " + ModelJournal.moveAside(
+						Paths.get(ModelJournal.FILE)).getFileName();
+			} catch (IOException moveFailed) {
+				// Left where it is; it is not deleted on exit either
+			}
+			warn(ModelJournal.FILE + " could not be replayed ("
+					+ e.getMessage() + ")" + kept + "; changes will only be "
+					+ "saved on exit.");
+			return null;
+		}
+	}
+}
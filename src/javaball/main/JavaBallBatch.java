@@ -0,0 +1,158 @@
+package javaball.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.RefereeList;
+import javaball.model.ReportWriter;
+import javaball.model.Season;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Command line entry point allocating a whole fixtures file without the GUI:
+ * java javaball.main.JavaBallBatch fixtures.txt [--batch]
+ * <p>
+ * The referees are read from the input file and the fixtures file is read
+ * line by line, one fixture per line, e.g. "5 Senior Central" (week, level
+ * and area). The fixtures are allocated in order, with the same result as
+ * allocating them one by one in the GUI, or, given --batch, all at once (see
+ * BatchAllocator). The output files are written as on exiting the GUI, and
+ * the time taken by each step is reported. Malformed lines are reported on
+ * standard error and skipped; no dialog is ever shown, so it also runs on
+ * machines without a display.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class JavaBallBatch {
+
+	/** Exit codes for wrong arguments and unreadable or unwritable files */
+	private static final int USAGE = 2, FAILED = 1;
+
+	/**
+	 * The main method
+	 * @param args the fixtures file, optionally followed by --batch
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2
+				|| (args.length == 2 && !args[1].equals("--batch"))) {
+			System.err.println("Usage: java javaball.main.JavaBallBatch "
+					+ "<fixtures file> [--batch]");
+			System.exit(USAGE);
+		}
+		boolean batch = args.length == 2;
+		long start = System.nanoTime();
+
+		// Read the referees
+		RefereeList refList = new RefereeList(RefereeList.MAX_REFEREES);
+		try {
+			for (String error : refList.load(RefereeList.INPUT_FILE))
+				System.err.println(RefereeList.INPUT_FILE + ": " + error);
+		} catch (IOException e) {
+			fail(RefereeList.INPUT_FILE + " could not be read ("
+					+ e.getMessage() + ").");
+		}
+		long loaded = System.nanoTime();
+
+		// Read the fixtures
+		ArrayList<Match> fixtures = new ArrayList<Match>();
+		try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]),
+				StandardCharsets.UTF_8)) {
+			readFixtures(in, fixtures);
+		} catch (IOException e) {
+			fail(args[0] + " could not be read (" + e.getMessage() + ").");
+		}
+		long read = System.nanoTime();
+
+		// Allocate them
+		ConcurrentModel model = new ConcurrentModel(refList, new Season(),
+				null);
+		ArrayList<Match> allocated = batch ? model.allocateReferees(fixtures)
+				: model.allocateInOrder(fixtures);
+		long done = System.nanoTime();
+
+		// Write the output files
+		try {
+			model.writeReports(Paths.get(ReportWriter.MATCH_FILE),
+					Paths.get(ReportWriter.REFEREE_FILE));
+		} catch (IOException e) {
+			fail("Error writing to file (" + e.getMessage() + ").");
+		}
+		long written = System.nanoTime();
+
+		// Report the timings
+		System.out.printf("%d referees read in %.1f ms%n", model.size(),
+				(loaded - start) / 1e6);
+		System.out.printf("%d fixtures read in %.1f ms%n", fixtures.size(),
+				(read - loaded) / 1e6);
+		System.out.printf("%d matches allocated (%d skipped) in %.1f ms, "
+				+ "%.0f matches/s%n", allocated.size(),
+				fixtures.size() - allocated.size(), (done - read) / 1e6,
+				allocated.size() / Math.max((done - read) / 1e9, 1e-9));
+		System.out.printf("%s and %s written in %.1f ms%n",
+				ReportWriter.MATCH_FILE, ReportWriter.REFEREE_FILE,
+				(written - done) / 1e6);
+		System.out.printf("Total %.1f ms%n", (written - start) / 1e6);
+	}
+
+	/**
+	 * Reads fixtures line by line, reporting and skipping malformed lines
+	 * and blank ones
+	 * @param in the fixtures, e.g. "5 Senior Central" per line
+	 * @param fixtures the list to add the fixtures to
+	 * @throws IOException if the fixtures cannot be read
+	 */
+	static void readFixtures(BufferedReader in, ArrayList<Match> fixtures)
+			throws IOException {
+		int lineNumber = 0;
+		for (String line; (line = in.readLine()) != null;) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+			String[] fields = line.split("\\s+");
+			try {
+				if (fields.length != 3)
+					throw new IllegalArgumentException();
+				int week = Integer.parseInt(fields[0]);
+				if (week < Season.MIN_WEEK || week > Season.MAX_WEEK)
+					throw new IllegalArgumentException();
+				fixtures.add(new Match(week,
+						MatchLevel.valueOf(fields[1].toUpperCase()),
+						Location.valueOf(fields[2].toUpperCase())));
+			} catch (IllegalArgumentException e) {
+				// Includes invalid numbers and enum constants
+				System.err.println("Line " + lineNumber
+						+ " skipped, expected week (" + Season.MIN_WEEK + "-"
+						+ Season.MAX_WEEK + "), level and area: " + line);
+			}
+		}
+	}
+
+	/**
+	 * Reports a failure and exits
+	 */
+	private static void fail(String message) {
+		System.err.println(message);
+		System.exit(FAILED);
+	}
+}
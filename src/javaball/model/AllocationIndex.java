@@ -0,0 +1,464 @@
+package javaball.model;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Index of allocation candidates: for every match area, match level and
+ * travel tier (local, adjacent, other) the suitable referees are kept ordered
+ * by allocations, so the most suitable referees for a match are found by
+ * peeking at three ordered sets instead of ranking the whole list. Referees
+ * are indexed by their rows in the list's store.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class AllocationIndex {
+
+	/** Number of match classes: one per area and level */
+	static final int CLASSES = Location.values().length
+			* MatchLevel.values().length;
+
+	/** Number of buckets: one per match class and tier */
+	private static final int BUCKETS = CLASSES * RefereeList.TIERS;
+
+	/** The store holding the indexed referees */
+	private final RefereeStore store;
+
+	/** Candidates per bucket, ordered by allocations and then by ID */
+	private final ArrayList<TreeSet<Candidate>> buckets;
+
+	/** The current entry of every indexed row (null for others) */
+	private Candidate[] candidates;
+
+	/** Per pair of match classes: number of referees suitable for both */
+	private final int[][] shared;
+
+	/**
+	 * Constructor for an empty index
+	 * @param store the store holding the referees to be indexed
+	 */
+	AllocationIndex(RefereeStore store) {
+		this.store = store;
+		buckets = new ArrayList<>(BUCKETS);
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.add(new TreeSet<Candidate>());
+		candidates = new Candidate[0];
+		shared = new int[CLASSES][CLASSES];
+	}
+
+	/**
+	 * Adds a referee to the buckets he/she is suitable for
+	 * @param row the row of the referee to be indexed
+	 */
+	void add(int row) {
+		Candidate candidate = candidate(row);
+		put(candidate);
+		for (int i = 0; i < BUCKETS; i++)
+			if ((candidate.buckets & 1 << i) != 0)
+				buckets.get(i).add(candidate);
+		share(candidate.buckets, 1);
+	}
+
+	/**
+	 * Adds many referees at once (e.g. after reading a file): the new
+	 * entries are sorted once, and every bucket is rebuilt by merging its
+	 * entries with the sorted new ones in linear time, instead of inserting
+	 * entry by entry
+	 * @param rows the rows of the referees to be indexed
+	 * @param pool the pool to sort and rebuild the buckets on in parallel
+	 * (or null to do so on the calling thread)
+	 */
+	void addAll(Collection<Integer> rows, ForkJoinPool pool) {
+		final Candidate[] added = new Candidate[rows.size()];
+		int n = 0;
+		for (int row : rows) {
+			Candidate candidate = candidate(row);
+			put(candidate);
+			share(candidate.buckets, 1);
+			added[n++] = candidate;
+		}
+
+		if (pool == null) {
+			Arrays.sort(added);
+			for (int i = 0; i < BUCKETS; i++)
+				buckets.set(i, rebuild(i, added));
+			return;
+		}
+
+		// Every bucket is rebuilt on its own task
+		Arrays.parallelSort(added);
+		ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(BUCKETS);
+		for (int i = 0; i < BUCKETS; i++) {
+			final int bucket = i;
+			tasks.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					buckets.set(bucket, rebuild(bucket, added));
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+	}
+
+	/**
+	 * Merges a bucket's current entries with the new entries belonging to
+	 * it, both already sorted, and builds the new bucket from the merged
+	 * entries in linear time
+	 * @param i the bucket to be rebuilt
+	 * @param added the new entries in index order
+	 * @return the rebuilt bucket
+	 */
+	private TreeSet<Candidate> rebuild(int i, Candidate[] added) {
+		TreeSet<Candidate> bucket = buckets.get(i);
+		ArrayList<Candidate> merged = new ArrayList<>(bucket.size()
+				+ added.length);
+		Iterator<Candidate> current = bucket.iterator();
+		Candidate next = current.hasNext() ? current.next() : null;
+		for (Candidate candidate : added) {
+			if ((candidate.buckets & 1 << i) == 0)
+				continue;
+			while (next != null && next.compareTo(candidate) < 0) {
+				merged.add(next);
+				next = current.hasNext() ? current.next() : null;
+			}
+
+			// An entry already in the bucket is kept, as by TreeSet.add
+			if (next == null || next.compareTo(candidate) != 0)
+				merged.add(candidate);
+		}
+		while (next != null) {
+			merged.add(next);
+			next = current.hasNext() ? current.next() : null;
+		}
+		return new TreeSet<>(new SortedRun(merged));
+	}
+
+	/**
+	 * Creates the entry of a row under its current allocations, determining
+	 * every bucket the referee belongs to
+	 */
+	private Candidate candidate(int row) {
+		int flags = store.getFlags(row);
+		int mask = 0;
+		for (Location area : Location.values())
+			for (MatchLevel level : MatchLevel.values())
+				if (RefereeList.isSuitable(flags, area, level))
+					mask |= 1 << bucket(area, level,
+							RefereeList.getTier(flags, area));
+		return new Candidate(row, store.getID(row), store.getAllocations(row),
+				mask);
+	}
+
+	/**
+	 * Makes an entry the current entry of its row
+	 */
+	private void put(Candidate candidate) {
+		if (candidate.row >= candidates.length)
+			candidates = Arrays.copyOf(candidates, Math.max(candidate.row + 1,
+					candidates.length * 2));
+		candidates[candidate.row] = candidate;
+	}
+
+	/**
+	 * Removes a referee from all buckets
+	 * @param row the row of the referee to be removed
+	 */
+	void remove(int row) {
+		Candidate candidate = row < candidates.length ? candidates[row]
+				: null;
+		if (candidate == null)
+			return;
+		candidates[row] = null;
+
+		for (int i = 0; i < BUCKETS; i++)
+			if ((candidate.buckets & 1 << i) != 0)
+				buckets.get(i).remove(candidate);
+		share(candidate.buckets, -1);
+	}
+
+	/**
+	 * Counts a referee in or out of the shared referees of his/her classes
+	 * @param mask the buckets of the referee
+	 * @param delta 1 to count the referee in, -1 to count him/her out
+	 */
+	private void share(int mask, int delta) {
+		for (int i = 0; i < BUCKETS; i++) {
+			if ((mask & 1 << i) == 0)
+				continue;
+			for (int j = 0; j < BUCKETS; j++)
+				if ((mask & 1 << j) != 0)
+					shared[i / RefereeList.TIERS][j / RefereeList.TIERS]
+							+= delta;
+		}
+	}
+
+	/**
+	 * Checks whether any referee is suitable for matches of both classes
+	 * @param c the first match class
+	 * @param d the second match class
+	 * @return whether or not the two classes share a referee
+	 */
+	boolean sharesReferees(int c, int d) {
+		return shared[c][d] > 0;
+	}
+
+	/**
+	 * Re-indexes a referee whose allocations, qualification, home or travel
+	 * preferences have changed
+	 * @param row the row of the changed referee
+	 */
+	void update(int row) {
+		if (row < candidates.length && candidates[row] != null) {
+			remove(row);
+			add(row);
+		}
+	}
+
+	/**
+	 * Returns the k most suitable referees for a match: the least allocated
+	 * local referees, then adjacent ones, then the remaining ones
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @param k the number of referees wanted
+	 * @return up to k referees, the most suitable first
+	 */
+	ArrayList<Referee> getSuitableReferees(Location area, MatchLevel level,
+			int k) {
+		ArrayList<Referee> suitableReferees = new ArrayList<>(Math.max(k, 0));
+		for (int tier = 0; tier < RefereeList.TIERS; tier++) {
+			for (Candidate candidate : buckets.get(bucket(area, level, tier))) {
+				if (suitableReferees.size() >= k)
+					return suitableReferees;
+				suitableReferees.add(store.getView(candidate.row));
+			}
+		}
+		return suitableReferees;
+	}
+
+	/**
+	 * Returns the match class number of an area and level
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @return the match class (0 to CLASSES - 1)
+	 */
+	static int classOf(Location area, MatchLevel level) {
+		return area.ordinal() * MatchLevel.values().length + level.ordinal();
+	}
+
+	/**
+	 * Returns the bucket number of an area, level and tier
+	 */
+	private static int bucket(Location area, MatchLevel level, int tier) {
+		return classOf(area, level) * RefereeList.TIERS + tier;
+	}
+
+	/**
+	 * Plans allocations on top of the index without changing the index or
+	 * the referees: planned referees are kept in private buckets under their
+	 * planned allocations and skipped in the index's buckets. Several planners
+	 * may read the index at the same time as long as nobody changes it.
+	 */
+	class Planner {
+		/** Planned entries of all rows allocated by this planner */
+		private final HashMap<Integer, Candidate> planned;
+
+		/** Planned entries per bucket */
+		private final ArrayList<TreeSet<Candidate>> plannedBuckets;
+
+		/** Per bucket: the last index entry up to which all are planned */
+		private final Candidate[] frontier;
+
+		/** Constructor for a planner without planned allocations */
+		Planner() {
+			planned = new HashMap<>();
+			plannedBuckets = new ArrayList<>(BUCKETS);
+			for (int i = 0; i < BUCKETS; i++)
+				plannedBuckets.add(new TreeSet<Candidate>());
+			frontier = new Candidate[BUCKETS];
+		}
+
+		/**
+		 * Returns the k most suitable referees for a match taking the planned
+		 * allocations into account
+		 * @param area the area the match is held in
+		 * @param level the level of the match
+		 * @param k the number of referees wanted
+		 * @return up to k referees, the most suitable first
+		 */
+		ArrayList<Referee> getSuitableReferees(Location area,
+				MatchLevel level, int k) {
+			ArrayList<Referee> suitableReferees = new ArrayList<>(
+					Math.max(k, 0));
+			for (int tier = 0; tier < RefereeList.TIERS; tier++) {
+				int b = bucket(area, level, tier);
+				TreeSet<Candidate> bucket = buckets.get(b);
+				Iterator<Candidate> indexed = frontier[b] == null
+						? bucket.iterator()
+						: bucket.tailSet(frontier[b], false).iterator();
+				Iterator<Candidate> own = plannedBuckets.get(b).iterator();
+
+				// Skip planned referees at the front of the index's bucket
+				// for good, as they will never be unplanned again
+				Candidate next = null;
+				while (indexed.hasNext()) {
+					next = indexed.next();
+					if (!planned.containsKey(next.row))
+						break;
+					frontier[b] = next;
+					next = null;
+				}
+				Candidate nextOwn = own.hasNext() ? own.next() : null;
+
+				// Merge the unplanned index entries with the planned ones
+				while (next != null || nextOwn != null) {
+					if (suitableReferees.size() >= k)
+						return suitableReferees;
+					if (nextOwn == null
+							|| (next != null && next.compareTo(nextOwn) < 0)) {
+						suitableReferees.add(store.getView(next.row));
+						next = null;
+						while (indexed.hasNext() && next == null) {
+							next = indexed.next();
+							if (planned.containsKey(next.row))
+								next = null;
+						}
+					} else {
+						suitableReferees.add(store.getView(nextOwn.row));
+						nextOwn = own.hasNext() ? own.next() : null;
+					}
+				}
+			}
+			return suitableReferees;
+		}
+
+		/**
+		 * Plans one more allocation for an indexed referee
+		 * @param ref the referee to be allocated
+		 */
+		void allocate(Referee ref) {
+			int row = ref.getRow();
+			Candidate current = planned.get(row);
+			if (current == null)
+				current = ref.getStore() == store && row < candidates.length
+						? candidates[row] : null;
+			else
+				for (int i = 0; i < BUCKETS; i++)
+					if ((current.buckets & 1 << i) != 0)
+						plannedBuckets.get(i).remove(current);
+			if (current == null)
+				return;
+
+			Candidate next = new Candidate(row, current.id,
+					current.allocations + 1, current.buckets);
+			planned.put(row, next);
+			for (int i = 0; i < BUCKETS; i++)
+				if ((next.buckets & 1 << i) != 0)
+					plannedBuckets.get(i).add(next);
+		}
+	}
+
+	/**
+	 * A referee's row together with the ID, allocations and buckets he/she
+	 * is indexed under, so that the entry can be found again after the
+	 * referee changed
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		private final int row;
+		private final String id;
+		private final int allocations;
+		private final int buckets;
+
+		private Candidate(int row, String id, int allocations, int buckets) {
+			this.row = row;
+			this.id = id;
+			this.allocations = allocations;
+			this.buckets = buckets;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			int byAllocs = Integer.compare(allocations, other.allocations);
+			return byAllocs != 0 ? byAllocs : id.compareTo(other.id);
+		}
+	}
+
+	/**
+	 * Sorted entries seen as a sorted set, so that a TreeSet is built from
+	 * them in linear time; only iterating is supported
+	 */
+	private static final class SortedRun extends AbstractSet<Candidate>
+			implements SortedSet<Candidate> {
+		private final List<Candidate> entries;
+
+		private SortedRun(List<Candidate> entries) {
+			this.entries = entries;
+		}
+
+		@Override
+		public Iterator<Candidate> iterator() {
+			return entries.iterator();
+		}
+
+		@Override
+		public int size() {
+			return entries.size();
+		}
+
+		@Override
+		public Comparator<? super Candidate> comparator() {
+			return null;
+		}
+
+		@Override
+		public Candidate first() {
+			return entries.get(0);
+		}
+
+		@Override
+		public Candidate last() {
+			return entries.get(entries.size() - 1);
+		}
+
+		@Override
+		public SortedSet<Candidate> subSet(Candidate from, Candidate to) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedSet<Candidate> headSet(Candidate to) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedSet<Candidate> tailSet(Candidate from) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package javaball.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Statistics of the listed referees' numbers of allocations: the least,
+ * highest and mean number, their variance and the number of referees per
+ * number of allocations. A RefereeList keeps its statistics up to date as
+ * referees are added, removed or allocated to a match, each in constant time:
+ * the number of referees per number of allocations, the total and the total
+ * of squares are counted up or down, so that the mean and variance are
+ * derived without visiting the referees. The least and highest number only
+ * move past numbers no referee has when the last referee of a number is
+ * removed. Edits of a referee's details leave the statistics unchanged.
+ * <p>
+ * Numbers of allocations below DENSE are counted in an array; the few
+ * referees with more (e.g. a roster line with an implausibly large number)
+ * are counted in a sorted map, so that no number of allocations, up to
+ * Integer.MAX_VALUE, needs an array that large. Their squared deviations
+ * are summed up when the variance is asked for.
+ * <p>
+ * The statistics handed out are copies, which do not change; copying them
+ * takes time in the number of distinct numbers of allocations only, so that
+ * they can be polled often, e.g. by a dashboard.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class AllocationStatistics {
+
+	/** Numbers of allocations counted in an array (below this) */
+	static final int DENSE = 1024;
+
+	/** Number of referees per number of allocations below DENSE */
+	private int[] counts;
+
+	/** Number of referees per number of allocations of DENSE or more */
+	private final TreeMap<Integer, Integer> outliers;
+
+	/** Number of referees */
+	private int referees;
+
+	/** Least and highest number of allocations (0 without referees) */
+	private int min;
+	private int max;
+
+	/** Total number of allocations, and total of the squares of the numbers
+	 * below DENSE (those of the outliers would not fit a long, so they are
+	 * summed up when the variance is asked for) */
+	private long sum;
+	private long sumOfSquares;
+
+	/**
+	 * Constructor for the statistics of no referees
+	 */
+	AllocationStatistics() {
+		this.counts = new int[1];
+		this.outliers = new TreeMap<>();
+	}
+
+	/**
+	 * Constructor for a copy of statistics
+	 * @param other the statistics to be copied
+	 */
+	private AllocationStatistics(AllocationStatistics other) {
+		this.counts = Arrays.copyOf(other.counts, other.max < DENSE
+				? Math.min(other.max + 1, other.counts.length)
+				: other.counts.length);
+		this.outliers = new TreeMap<>(other.outliers);
+		this.referees = other.referees;
+		this.min = other.min;
+		this.max = other.max;
+		this.sum = other.sum;
+		this.sumOfSquares = other.sumOfSquares;
+	}
+
+	/**
+	 * Returns a copy of the statistics, which does not change
+	 * @return the copy
+	 */
+	AllocationStatistics copy() {
+		return new AllocationStatistics(this);
+	}
+
+	/**
+	 * Counts a referee added
+	 * @param allocations the referee's number of allocations
+	 */
+	void add(int allocations) {
+		count(allocations, 1);
+		if (referees++ == 0)
+			min = max = allocations;
+		else {
+			min = Math.min(min, allocations);
+			max = Math.max(max, allocations);
+		}
+		sum += allocations;
+	}
+
+	/**
+	 * Stops counting a referee removed
+	 * @param allocations the referee's number of allocations
+	 */
+	void remove(int allocations) {
+		count(allocations, -1);
+		sum -= allocations;
+		if (--referees == 0) {
+			min = max = 0;
+			return;
+		}
+
+		// Move past numbers of allocations no referee has any more
+		if (getReferees(max) == 0)
+			max = below(max);
+		if (getReferees(min) == 0)
+			min = above(min);
+	}
+
+	/**
+	 * Counts a referee allocated to one more match
+	 * @param allocations the referee's number of allocations, including the
+	 * new one (at least 1)
+	 */
+	void allocated(int allocations) {
+		if (allocations <= 0)
+			throw new IllegalArgumentException("Invalid allocations");
+		count(allocations - 1, -1);
+		count(allocations, 1);
+		sum++;
+		max = Math.max(max, allocations);
+		if (min == allocations - 1 && getReferees(min) == 0)
+			min = allocations;
+	}
+
+	/**
+	 * Counts referees with a number of allocations up or down
+	 * @param allocations the number of allocations
+	 * @param referees the number of referees to be added (or removed if
+	 * negative)
+	 */
+	private void count(int allocations, int referees) {
+		if (allocations < DENSE) {
+			if (allocations >= counts.length)
+				counts = Arrays.copyOf(counts, Math.min(DENSE, Math.max(
+						allocations + 1, counts.length * 2)));
+			counts[allocations] += referees;
+			sumOfSquares += (long) referees * allocations * allocations;
+			return;
+		}
+		Integer count = outliers.get(allocations);
+		int newCount = (count == null ? 0 : count) + referees;
+		if (newCount == 0)
+			outliers.remove(allocations);
+		else
+			outliers.put(allocations, newCount);
+	}
+
+	/**
+	 * Returns the highest number of allocations of a referee below a number
+	 * (there has to be one); at most DENSE counts are looked at
+	 */
+	private int below(int allocations) {
+		Integer outlier = outliers.lowerKey(allocations);
+		if (outlier != null)
+			return outlier;
+		for (int i = Math.min(allocations, counts.length) - 1; i > 0; i--)
+			if (counts[i] > 0)
+				return i;
+		return 0;
+	}
+
+	/**
+	 * Returns the least number of allocations of a referee above a number
+	 * (there has to be one); at most DENSE counts are looked at
+	 */
+	private int above(int allocations) {
+		for (int i = allocations + 1; i < counts.length; i++)
+			if (counts[i] > 0)
+				return i;
+		return outliers.higherKey(allocations);
+	}
+
+	/**
+	 * Returns the number of referees
+	 * @return the number of referees
+	 */
+	public int getReferees() {
+		return referees;
+	}
+
+	/**
+	 * Returns the number of referees with a number of allocations
+	 * @param allocations the number of allocations
+	 * @return the number of referees
+	 */
+	public int getReferees(int allocations) {
+		if (allocations < 0)
+			return 0;
+		if (allocations < DENSE)
+			return allocations < counts.length ? counts[allocations] : 0;
+		Integer count = outliers.get(allocations);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the number of referees per number of allocations, leaving out
+	 * the numbers no referee has
+	 * @return the number of referees by number of allocations, in
+	 * ascending order
+	 */
+	public SortedMap<Integer, Integer> getHistogram() {
+		TreeMap<Integer, Integer> histogram = new TreeMap<>();
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] > 0)
+				histogram.put(i, counts[i]);
+		for (Map.Entry<Integer, Integer> outlier : outliers.entrySet())
+			histogram.put(outlier.getKey(), outlier.getValue());
+		return histogram;
+	}
+
+	/**
+	 * Returns the least number of allocations of a referee
+	 * @return the least number (0 without referees)
+	 */
+	public int getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the highest number of allocations of a referee
+	 * @return the highest number (0 without referees)
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the total number of allocations of all referees
+	 * @return the total number
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the mean number of allocations per referee
+	 * @return the mean (0 without referees)
+	 */
+	public double getMean() {
+		return referees == 0 ? 0 : (double) sum / referees;
+	}
+
+	/**
+	 * Returns the variance of the referees' numbers of allocations
+	 * @return the (population) variance (0 without referees)
+	 */
+	public double getVariance() {
+		if (referees == 0)
+			return 0;
+		double mean = getMean();
+
+		// Squared deviations of the outliers, then of the numbers below DENSE
+		double deviations = 0;
+		long outlierReferees = 0, outlierSum = 0;
+		for (Map.Entry<Integer, Integer> outlier : outliers.entrySet()) {
+			double deviation = outlier.getKey() - mean;
+			deviations += outlier.getValue() * deviation * deviation;
+			outlierReferees += outlier.getValue();
+			outlierSum += (long) outlier.getValue() * outlier.getKey();
+		}
+		deviations += sumOfSquares - 2 * mean * (sum - outlierSum)
+				+ (referees - outlierReferees) * mean * mean;
+		return Math.max(deviations / referees, 0);
+	}
+
+	/**
+	 * Returns the standard deviation of the referees' numbers of
+	 * allocations
+	 * @return the (population) standard deviation (0 without referees)
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+}
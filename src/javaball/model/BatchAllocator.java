@@ -0,0 +1,419 @@
+package javaball.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Allocates two referees to each match of a whole list of fixtures at once.
+ * Instead of picking the best referees match by match, the allocation is
+ * solved as a min-cost flow which minimises the total travel tier cost plus
+ * the allocation imbalance (every further allocation of a referee costs more
+ * than the one before), while respecting the same suitability rules as
+ * single match allocation.
+ * <p>
+ * Matches of the same area and level are interchangeable, so the network has
+ * one node per such match class: source -> class (two referees per match) ->
+ * referee (at most once per match) -> sink (rising cost per allocation).
+ * Every augmenting path alternates between classes and referees, so shortest
+ * paths are found on a graph of at most six class nodes whose edge weights are
+ * read off ordered sets of referees.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class BatchAllocator {
+
+	/** Default cost of one travel tier (local, adjacent, other) */
+	public static final int DEFAULT_TIER_COST = 10;
+
+	/** Default cost of one allocation (on top of a referee's allocations) */
+	public static final int DEFAULT_BALANCE_COST = 1;
+
+	/** Number of match classes (one per area and level) */
+	private static final int CLASSES = AllocationIndex.CLASSES;
+
+	/** Marks unreachable nodes */
+	private static final long INFINITY = Long.MAX_VALUE;
+
+	/** The referees to allocate from */
+	private final RefereeList refList;
+
+	/** Weights of the two cost components */
+	private final int tierCost;
+	private final int balanceCost;
+
+	/**
+	 * Constructor using the default cost weights
+	 * @param refList the referees to allocate from
+	 */
+	public BatchAllocator(RefereeList refList) {
+		this(refList, DEFAULT_TIER_COST, DEFAULT_BALANCE_COST);
+	}
+
+	/**
+	 * Constructor with given cost weights
+	 * @param refList the referees to allocate from
+	 * @param tierCost the cost of each travel tier step of a referee
+	 * @param balanceCost the cost of each allocation a referee already has
+	 */
+	public BatchAllocator(RefereeList refList, int tierCost, int balanceCost) {
+		this.refList = refList;
+		this.tierCost = tierCost;
+		this.balanceCost = balanceCost;
+	}
+
+	/**
+	 * Allocates two referees to each of the given matches; matches for which
+	 * fewer than two suitable referees exist are left unallocated
+	 * @param fixtures the matches to be allocated
+	 * @return the allocated matches in fixture order
+	 */
+	public ArrayList<Match> allocate(List<Match> fixtures) {
+		Network network = new Network(fixtures);
+		network.solve();
+		return network.commit(fixtures);
+	}
+
+	/**
+	 * Returns the match class of a match area and level
+	 */
+	private static int classOf(Location area, MatchLevel level) {
+		return AllocationIndex.classOf(area, level);
+	}
+
+	/**
+	 * Packs a cost and a referee number into a key ordered by cost first
+	 */
+	private static long key(long cost, int ref) {
+		return cost << 32 | ref;
+	}
+
+	/**
+	 * Returns the cost packed into a key
+	 */
+	private static long costOf(long key) {
+		return key >> 32;
+	}
+
+	/**
+	 * Returns the referee number packed into a key
+	 */
+	private static int refOf(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * The flow network of a single allocation run
+	 */
+	private class Network {
+		/** Matches, areas and levels per class */
+		private final ArrayList<ArrayList<Match>> matches;
+		private final Location[] areas;
+		private final MatchLevel[] levels;
+
+		/** Classes which can be allocated (matches and two referees) */
+		private final boolean[] active;
+
+		/** Referees suitable for any active class, in ID order */
+		private final ArrayList<Referee> refs;
+
+		/** Per referee: classes suitable for and allocations before the run */
+		private final int[] suitable;
+		private final int[] allocations;
+
+		/** Per referee: allocations planned by this run */
+		private final int[] used;
+
+		/** Per class and referee: number of the class's matches planned */
+		private final int[][] flow;
+
+		/** Per class: referee places planned so far */
+		private final int[] sent;
+
+		/** Per class: referees with room left, by cost of one more match */
+		private final ArrayList<TreeSet<Long>> toSink;
+
+		/**
+		 * Per pair of classes: referees which could move a match from the
+		 * second class to the first, by the change in travel cost
+		 */
+		private final ArrayList<ArrayList<TreeSet<Long>>> exchange;
+
+		/**
+		 * Builds the network for a list of fixtures
+		 * @param fixtures the matches to be allocated
+		 */
+		private Network(List<Match> fixtures) {
+			matches = new ArrayList<>(CLASSES);
+			areas = new Location[CLASSES];
+			levels = new MatchLevel[CLASSES];
+			for (Location area : Location.values()) {
+				for (MatchLevel level : MatchLevel.values()) {
+					areas[classOf(area, level)] = area;
+					levels[classOf(area, level)] = level;
+				}
+			}
+			for (int c = 0; c < CLASSES; c++)
+				matches.add(new ArrayList<Match>());
+			for (Match match : fixtures)
+				matches.get(classOf(match.getArea(), match.getLevel()))
+						.add(match);
+
+			// Collect all referees suitable for a class with matches
+			refs = new ArrayList<>();
+			ArrayList<Integer> masks = new ArrayList<>();
+			int[] suitableCount = new int[CLASSES];
+			for (Referee ref : refList) {
+				int mask = 0;
+				for (int c = 0; c < CLASSES; c++) {
+					if (!matches.get(c).isEmpty()
+							&& RefereeList.isSuitable(ref, areas[c], levels[c])) {
+						mask |= 1 << c;
+						suitableCount[c]++;
+					}
+				}
+				if (mask != 0) {
+					refs.add(ref);
+					masks.add(mask);
+				}
+			}
+
+			// A class needs at least two suitable referees
+			active = new boolean[CLASSES];
+			for (int c = 0; c < CLASSES; c++)
+				active[c] = !matches.get(c).isEmpty() && suitableCount[c] > 1;
+
+			int n = refs.size();
+			suitable = new int[n];
+			allocations = new int[n];
+			used = new int[n];
+			flow = new int[CLASSES][n];
+			sent = new int[CLASSES];
+			for (int r = 0; r < n; r++) {
+				suitable[r] = masks.get(r);
+				allocations[r] = refs.get(r).getAllocations();
+				for (int c = 0; c < CLASSES; c++)
+					if (!active[c])
+						suitable[r] &= ~(1 << c);
+			}
+
+			toSink = new ArrayList<>(CLASSES);
+			exchange = new ArrayList<>(CLASSES);
+			for (int c = 0; c < CLASSES; c++) {
+				toSink.add(new TreeSet<Long>());
+				ArrayList<TreeSet<Long>> row = new ArrayList<>(CLASSES);
+				for (int d = 0; d < CLASSES; d++)
+					row.add(new TreeSet<Long>());
+				exchange.add(row);
+			}
+			for (int r = 0; r < n; r++)
+				link(r);
+		}
+
+		/**
+		 * Plans two referees for every match of the active classes by
+		 * successive shortest augmenting paths
+		 */
+		private void solve() {
+			long[] dist = new long[CLASSES];
+			int[] predClass = new int[CLASSES];
+			int[] predRef = new int[CLASSES];
+
+			while (true) {
+				// Classes still needing referees are reached from the source
+				for (int c = 0; c < CLASSES; c++) {
+					dist[c] = active[c] && sent[c] < demand(c) ? 0 : INFINITY;
+					predClass[c] = -1;
+					predRef[c] = -1;
+				}
+
+				// Bellman-Ford over the class nodes; exchanges may be negative
+				for (int round = 0; round < CLASSES; round++) {
+					boolean relaxed = false;
+					for (int c = 0; c < CLASSES; c++) {
+						if (dist[c] == INFINITY)
+							continue;
+						for (int d = 0; d < CLASSES; d++) {
+							TreeSet<Long> via = exchange.get(c).get(d);
+							if (c == d || via.isEmpty())
+								continue;
+							long cand = dist[c] + costOf(via.first());
+							if (cand < dist[d]) {
+								dist[d] = cand;
+								predClass[d] = c;
+								predRef[d] = refOf(via.first());
+								relaxed = true;
+							}
+						}
+					}
+					if (!relaxed)
+						break;
+				}
+
+				// Find the cheapest way into the sink
+				long best = INFINITY;
+				int last = -1;
+				for (int c = 0; c < CLASSES; c++) {
+					if (dist[c] == INFINITY || toSink.get(c).isEmpty())
+						continue;
+					long cand = dist[c] + costOf(toSink.get(c).first());
+					if (cand < best) {
+						best = cand;
+						last = c;
+					}
+				}
+				if (last == -1)
+					return; // every match has been planned (or cannot be)
+
+				// Augment one referee place along the path
+				int r = refOf(toSink.get(last).first());
+				unlink(r);
+				flow[last][r]++;
+				used[r]++;
+				link(r);
+
+				int c = last;
+				while (predClass[c] != -1) {
+					int prev = predClass[c];
+					int moved = predRef[c];
+					unlink(moved);
+					flow[prev][moved]++;
+					flow[c][moved]--;
+					link(moved);
+					c = prev;
+				}
+				sent[c]++;
+			}
+		}
+
+		/**
+		 * Turns the planned flow into referee pairs and allocates them
+		 * @param fixtures the matches in fixture order
+		 * @return the allocated matches in fixture order
+		 */
+		private ArrayList<Match> commit(List<Match> fixtures) {
+			for (int c = 0; c < CLASSES; c++) {
+				if (!active[c] || sent[c] < demand(c))
+					continue;
+				final int cls = c;
+
+				// List every planned referee place of the class, grouped by
+				// referee and the most suitable referees first
+				ArrayList<Integer> planned = new ArrayList<>();
+				for (int r = 0; r < refs.size(); r++)
+					if (flow[c][r] > 0)
+						planned.add(r);
+				Collections.sort(planned, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer r1, Integer r2) {
+						int byCost = Long.compare(travelCost(cls, r1),
+								travelCost(cls, r2));
+						if (byCost != 0)
+							return byCost;
+						int byAllocs = Integer.compare(allocations[r1],
+								allocations[r2]);
+						return byAllocs != 0 ? byAllocs : r1.compareTo(r2);
+					}
+				});
+				ArrayList<Referee> places = new ArrayList<>(demand(c));
+				for (int r : planned)
+					for (int i = 0; i < flow[c][r]; i++)
+						places.add(refs.get(r));
+
+				// No referee holds more places than there are matches, so
+				// place i and place i + n always hold different referees
+				ArrayList<Match> classMatches = matches.get(c);
+				int n = classMatches.size();
+				for (int i = 0; i < n; i++) {
+					Referee first = places.get(i);
+					Referee second = places.get(i + n);
+					Match match = classMatches.get(i);
+					match.setReferees(new Referee[] {first, second});
+					first.addMatch(match);
+					second.addMatch(match);
+				}
+			}
+
+			// Report the allocated matches in fixture order
+			ArrayList<Match> allocated = new ArrayList<>();
+			for (Match match : fixtures)
+				if (active[classOf(match.getArea(), match.getLevel())]
+						&& match.getReferees()[0] != null)
+					allocated.add(match);
+			return allocated;
+		}
+
+		/**
+		 * Returns the number of referee places of a class
+		 */
+		private int demand(int c) {
+			return 2 * matches.get(c).size();
+		}
+
+		/**
+		 * Returns the travel cost of a referee for matches of a class
+		 */
+		private long travelCost(int c, int r) {
+			return (long) tierCost
+					* RefereeList.getTier(refs.get(r), areas[c]);
+		}
+
+		/**
+		 * Returns the cost of planning one more match of a class for a referee
+		 */
+		private long sinkCost(int c, int r) {
+			return travelCost(c, r) + (long) balanceCost
+					* (allocations[r] + used[r]);
+		}
+
+		/**
+		 * Removes a referee from all ordered sets before it changes
+		 */
+		private void unlink(int r) {
+			for (int c = 0; c < CLASSES; c++) {
+				if ((suitable[r] & 1 << c) == 0)
+					continue;
+				toSink.get(c).remove(key(sinkCost(c, r), r));
+				for (int d = 0; d < CLASSES; d++)
+					if (d != c && (suitable[r] & 1 << d) != 0)
+						exchange.get(c).get(d).remove(key(
+								travelCost(c, r) - travelCost(d, r), r));
+			}
+		}
+
+		/**
+		 * Adds a referee to the ordered sets matching his/her current state
+		 */
+		private void link(int r) {
+			for (int c = 0; c < CLASSES; c++) {
+				if ((suitable[r] & 1 << c) == 0
+						|| flow[c][r] >= matches.get(c).size())
+					continue;
+				toSink.get(c).add(key(sinkCost(c, r), r));
+				for (int d = 0; d < CLASSES; d++)
+					if (d != c && (suitable[r] & 1 << d) != 0
+							&& flow[d][r] > 0)
+						exchange.get(c).get(d).add(key(
+								travelCost(c, r) - travelCost(d, r), r));
+			}
+		}
+	}
+}
@@ -0,0 +1,680 @@
+package javaball.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.enums.RefQualification;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * The model (referees, season and journal) shared by threads serving
+ * concurrent requests. Every access goes through this class, which guards
+ * the model with one StampedLock. Lookups by ID, name and week are
+ * optimistic reads of the hash indexes, repeated under the read lock if a
+ * change got in the way. Suitability rankings and ID creation walk ordered
+ * trees, which must not be read while they are rebalanced, so they share the
+ * read lock. Adding, editing and removing referees take the write lock
+ * briefly.
+ * <p>
+ * Allocating a match reserves its referees under the read lock and commits
+ * them only if the lock can be converted to the write lock, i.e. nobody else
+ * holds it; otherwise they are chosen again under the write lock. Two
+ * allocations thus never commit a pair chosen before the other's change.
+ * <p>
+ * Changes are appended to the journal under the write lock, so its records
+ * are in the order the changes were made, and committed (written to disk)
+ * after the lock has been released, so that concurrent commits are grouped.
+ * A change which could not be journaled is still made, and reported to
+ * journalFailed(). Observers of the referees (see RefereeListener) are told
+ * about each change once the lock has been released.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class ConcurrentModel {
+
+	/** The model */
+	private final RefereeList refList;
+	private final Season season;
+
+	/** Journal of the model's changes (null if not journaled) */
+	private final ModelJournal journal;
+
+	/** Guards the model */
+	private final StampedLock lock = new StampedLock();
+
+	/** Observers of the referees */
+	private final CopyOnWriteArrayList<RefereeListener> listeners =
+			new CopyOnWriteArrayList<RefereeListener>();
+
+	/**
+	 * Constructor for a shared model; the referee list, season and journal
+	 * must not be used directly any more
+	 * @param refList the referees
+	 * @param season the season's matches
+	 * @param journal the journal to record changes in (or null)
+	 */
+	public ConcurrentModel(RefereeList refList, Season season,
+			ModelJournal journal) {
+		this.refList = refList;
+		this.season = season;
+		this.journal = journal;
+
+		// Lookups must not build the indexes of restored referees
+		refList.indexRestored();
+	}
+
+	/**
+	 * Adds an observer of the referees
+	 * @param listener the observer
+	 */
+	public void addRefereeListener(RefereeListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes an observer of the referees
+	 * @param listener the observer
+	 */
+	public void removeRefereeListener(RefereeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns the journal of the model's changes
+	 * @return the journal (null if not journaled)
+	 */
+	public ModelJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the maximum number of referees
+	 * @return the maximum number of referees
+	 */
+	public int getMaxReferees() {
+		return refList.getMaxReferees();
+	}
+
+	/**
+	 * Returns the number of listed referees
+	 * @return the number of listed referees
+	 */
+	public int size() {
+		long stamp = lock.tryOptimisticRead();
+		int size = refList.size();
+		if (lock.validate(stamp))
+			return size;
+
+		stamp = lock.readLock();
+		try {
+			return refList.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the referee of a given ID (ignoring case)
+	 * @param id the ID of the desired referee
+	 * @return the referee if found (otherwise null)
+	 */
+	public Referee getReferee(String id) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				Referee ref = refList.getReferee(id);
+				if (lock.validate(stamp))
+					return ref;
+			} catch (RuntimeException e) {
+				// Read while the index was changed, read again below
+			}
+
+		stamp = lock.readLock();
+		try {
+			return refList.getReferee(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the first listed referee of a given full name (ignoring case)
+	 * @param firstName the first name of the desired referee
+	 * @param lastName the last name of the desired referee
+	 * @return the referee if found (otherwise null)
+	 */
+	public Referee getReferee(String firstName, String lastName) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				Referee ref = refList.getReferee(firstName, lastName);
+				if (lock.validate(stamp))
+					return ref;
+			} catch (RuntimeException e) {
+				// Read while the index was changed, read again below
+			}
+
+		stamp = lock.readLock();
+		try {
+			return refList.getReferee(firstName, lastName);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the referees whose ID or names start with a given prefix, as
+	 * RefereeList.findReferees(prefix, max) does
+	 * @param prefix the beginning of an ID or name
+	 * @param max the maximum number of referees to be returned
+	 * @return the referees found
+	 */
+	public ArrayList<Referee> findReferees(String prefix, int max) {
+		long stamp = lock.readLock();
+		try {
+			return refList.findReferees(prefix, max);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the referees whose full names are most similar to a query, as
+	 * RefereeList.search(query, limit) does
+	 * @param query the name searched for
+	 * @param limit the maximum number of referees to be returned
+	 * @return the referees found, the most similar first
+	 */
+	public ArrayList<Referee> search(String query, int limit) {
+		long stamp = lock.readLock();
+		try {
+			return refList.search(query, limit);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the referees' allocations, cheap enough to
+	 * be polled often (see AllocationStatistics)
+	 * @return a copy of the statistics, which does not change
+	 */
+	public AllocationStatistics getStatistics() {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				AllocationStatistics statistics = refList.getStatistics();
+				if (lock.validate(stamp))
+					return statistics;
+			} catch (RuntimeException e) {
+				// Read while the statistics were changed, read again below
+			}
+
+		stamp = lock.readLock();
+		try {
+			return refList.getStatistics();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the match of a given week
+	 * @param week the week of the match
+	 * @return the match (null if there is none)
+	 */
+	public Match getMatch(int week) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0)
+			try {
+				Match match = season.getMatch(week);
+				if (lock.validate(stamp))
+					return match;
+			} catch (RuntimeException e) {
+				// Read while the index was changed, read again below
+			}
+
+		stamp = lock.readLock();
+		try {
+			return season.getMatch(week);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns a copy of the listed referees in ID order
+	 * @return the listed referees
+	 */
+	public ArrayList<Referee> getReferees() {
+		long stamp = lock.readLock();
+		try {
+			return refList.getReferees();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns a copy of the season's matches
+	 * @return the matches in the order they were added
+	 */
+	public ArrayList<Match> getMatches() {
+		long stamp = lock.readLock();
+		try {
+			return new ArrayList<>(season.getMatches());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the most suitable referees for a match, as
+	 * RefereeList.getSuitableReferees(match, k) does
+	 * @param match the match which requires referees
+	 * @param k the number of referees wanted
+	 * @return up to k referees, the most suitable first
+	 */
+	public ArrayList<Referee> getSuitableReferees(Match match, int k) {
+		long stamp = lock.readLock();
+		try {
+			return refList.getSuitableReferees(match, k);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns all referees suitable for the match of a given week, ordered by
+	 * suitability with the allocated referees first
+	 * @param week the week of the match
+	 * @return the ranked referees (empty if there is no match that week)
+	 */
+	public ArrayList<Referee> getSuitableReferees(int week) {
+		long stamp = lock.readLock();
+		try {
+			Match match = season.getMatch(week);
+			if (match == null)
+				return new ArrayList<Referee>();
+			return refList.getSuitableReferees(match);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Creates an unused ID for a given full name
+	 * @param firstName the first name of a referee
+	 * @param lastName the last name of a referee
+	 * @return the ID (which may be taken by the time it is used)
+	 */
+	public String createID(String firstName, String lastName) {
+		long stamp = lock.readLock();
+		try {
+			return refList.createID(firstName, lastName);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Adds a new referee under a new ID
+	 * @param firstName the first name of the referee
+	 * @param lastName the last name of the referee
+	 * @param qualType the qualification type of the referee (NJB/IJB)
+	 * @param qualLevel the qualification level of the referee (1..4)
+	 * @param allocations the previous match allocations for the referee
+	 * @param home the home location of the referee
+	 * @param travel the travel preferences of the referee
+	 * @return the added referee (null if the list is full)
+	 */
+	public Referee addReferee(String firstName, String lastName,
+			RefQualification qualType, int qualLevel, int allocations,
+			Location home, String travel) {
+		Referee ref = null;
+		long record = 0;
+		IOException failure = null;
+		long stamp = lock.writeLock();
+		try {
+			ref = new Referee(refList.createID(firstName, lastName),
+					firstName, lastName, qualType.name() + qualLevel,
+					allocations, home.toString(), travel);
+			if (!refList.add(ref))
+				return null;
+			if (journal != null)
+				record = journal.appendAdded(ref);
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		commit(record, failure);
+		for (RefereeListener listener : listeners)
+			listener.refereeAdded(ref);
+		return ref;
+	}
+
+	/**
+	 * Edits the details of a listed referee
+	 * @param ref the referee to be edited
+	 * @param qualType the qualification type of the referee (NJB/IJB)
+	 * @param qualLevel the qualification level of the referee (1..4)
+	 * @param home the home location of the referee
+	 * @param travel the travel preferences of the referee
+	 * @return whether the referee was listed and has been edited
+	 * @throws IllegalArgumentException if a detail is not valid (the
+	 * referee is left unchanged then)
+	 */
+	public boolean editReferee(Referee ref, RefQualification qualType,
+			int qualLevel, Location home, String travel) {
+		long record = 0;
+		IOException failure = null;
+		long stamp = lock.writeLock();
+		try {
+			if (refList.getReferee(ref.getID()) != ref)
+				return false;
+			ref.edit(qualType, qualLevel, home, travel);
+			if (journal != null)
+				record = journal.appendEdited(ref);
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		commit(record, failure);
+		for (RefereeListener listener : listeners)
+			listener.refereeChanged(ref);
+		return true;
+	}
+
+	/**
+	 * Removes a listed referee
+	 * @param ref the referee to be removed
+	 * @return whether the referee was listed and has been removed
+	 */
+	public boolean removeReferee(Referee ref) {
+		long record = 0;
+		IOException failure = null;
+		long stamp = lock.writeLock();
+		try {
+			if (!refList.remove(ref))
+				return false;
+			if (journal != null)
+				record = journal.appendRemoved(ref);
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		commit(record, failure);
+		for (RefereeListener listener : listeners)
+			listener.refereeRemoved(ref);
+		return true;
+	}
+
+	/**
+	 * Allocates the two most suitable referees to a new match, unless its
+	 * week already hosts a match. The referees are reserved under the read
+	 * lock and committed under the write lock without another change in
+	 * between.
+	 * @param week the week in which the match shall take place
+	 * @param level the match's level (Junior or Senior)
+	 * @param area the match's location
+	 * @return the most suitable referees, allocated if there are two of them
+	 * (null if the week already hosts a match)
+	 */
+	public ArrayList<Referee> allocateReferees(int week, MatchLevel level,
+			Location area) {
+		Match match = new Match(week, level, area);
+		ArrayList<Referee> suitableReferees = null;
+		long record = 0;
+		IOException failure = null;
+		long stamp = lock.readLock();
+		try {
+			// Reserve the referees
+			if (season.getMatch(week) != null)
+				return null;
+			suitableReferees = refList.getSuitableReferees(match, 2);
+			if (suitableReferees.size() < 2)
+				return suitableReferees;
+
+			// Commit them if no other reader may change the model first,
+			// otherwise choose them again once all others are done
+			long writeStamp = lock.tryConvertToWriteLock(stamp);
+			if (writeStamp == 0) {
+				lock.unlockRead(stamp);
+				stamp = lock.writeLock();
+				if (season.getMatch(week) != null)
+					return null;
+				suitableReferees = refList.getSuitableReferees(match, 2);
+				if (suitableReferees.size() < 2)
+					return suitableReferees;
+			} else
+				stamp = writeStamp;
+
+			match.setReferees(suitableReferees
+					.toArray(new Referee[suitableReferees.size()]));
+			season.addMatch(match);
+			for (Referee ref : suitableReferees)
+				ref.addMatch(match);
+			if (journal != null)
+				record = journal.appendAllocated(Collections
+						.singletonList(match));
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			lock.unlock(stamp);
+		}
+		commit(record, failure);
+		for (Referee ref : suitableReferees)
+			for (RefereeListener listener : listeners)
+				listener.refereeChanged(ref);
+		return suitableReferees;
+	}
+
+	/**
+	 * Allocates two referees to each match of a list of fixtures at once (see
+	 * BatchAllocator); fixtures in weeks which already host a match are
+	 * skipped
+	 * @param fixtures the matches to be allocated
+	 * @return the matches which have been allocated and added to the season
+	 */
+	public ArrayList<Match> allocateReferees(ArrayList<Match> fixtures) {
+		return allocate(fixtures, false);
+	}
+
+	/**
+	 * Allocates the two most suitable referees to each match of a list of
+	 * fixtures in turn (see ParallelAllocator); fixtures in weeks which
+	 * already host a match are skipped
+	 * @param fixtures the matches to be allocated in order
+	 * @return the matches which have been allocated and added to the season
+	 */
+	public ArrayList<Match> allocateInOrder(ArrayList<Match> fixtures) {
+		return allocate(fixtures, true);
+	}
+
+	/**
+	 * Captures a snapshot of the model (see ModelSnapshot.capture), which
+	 * matches the journal's position
+	 * @return the snapshot, to be written by any thread
+	 */
+	public ModelSnapshot capture() {
+		long stamp = lock.readLock();
+		try {
+			return ModelSnapshot.capture(refList, season, journal);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Writes the match and referee output files (see ReportWriter) of the
+	 * model as it is at one point in time. The referees' rows and the
+	 * matches are copied under the read lock and written once it has been
+	 * released, so that changes are not held up by the files.
+	 * @param matchFile the match output file
+	 * @param refereeFile the referee output file
+	 * @throws IOException if a file cannot be written
+	 */
+	public void writeReports(Path matchFile, Path refereeFile)
+			throws IOException {
+		RefereeStore rows;
+		int[] order;
+		Match[] matches;
+		int[][] matchRows;
+		long stamp = lock.readLock();
+		try {
+			// The listed referees' rows in ID order
+			RefereeStore store = refList.getStore();
+			rows = new RefereeStore(store);
+			order = refList.getRows();
+
+			// The matches and the rows of their referees; removed referees
+			// are copied one by one
+			IdentityHashMap<Referee, Integer> removedRows =
+					new IdentityHashMap<Referee, Integer>();
+			matches = new Match[season.getNumMatches()];
+			matchRows = new int[matches.length][];
+			int i = 0;
+			for (Match match : season) {
+				Referee[] matchReferees = match.getReferees();
+				int[] refRows = new int[matchReferees.length];
+				for (int j = 0; j < refRows.length; j++) {
+					Referee ref = matchReferees[j];
+					if (ref == null)
+						refRows[j] = -1;
+					else if (ref.getStore() == store)
+						refRows[j] = ref.getRow();
+					else {
+						Integer row = removedRows.get(ref);
+						if (row == null) {
+							row = rows.copy(ref.getStore(), ref.getRow());
+							removedRows.put(ref, row);
+						}
+						refRows[j] = row;
+					}
+				}
+				matches[i] = match;
+				matchRows[i++] = refRows;
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+
+		try (ReportWriter matchWriter = new ReportWriter(matchFile);
+				ReportWriter refereeWriter = new ReportWriter(refereeFile)) {
+			// Headline and one row per match
+			matchWriter.writeMatchHeader();
+			for (int i = 0; i < matches.length; i++) {
+				Match copy = new Match(matches[i].getWeek(),
+						matches[i].getLevel(), matches[i].getArea());
+				Referee[] matchReferees = new Referee[matchRows[i].length];
+				for (int j = 0; j < matchReferees.length; j++)
+					if (matchRows[i][j] >= 0)
+						matchReferees[j] = rows.getView(matchRows[i][j]);
+				copy.setReferees(matchReferees);
+				matchWriter.writeMatch(copy);
+			}
+
+			// One row per referee, in ID order
+			for (int row : order)
+				refereeWriter.writeReferee(rows.getView(row));
+		}
+	}
+
+	/**
+	 * Allocates a list of fixtures under the write lock
+	 */
+	private ArrayList<Match> allocate(ArrayList<Match> fixtures,
+			boolean inOrder) {
+		ArrayList<Match> allocated = null;
+		long record = 0;
+		IOException failure = null;
+		long stamp = lock.writeLock();
+		try {
+			ArrayList<Match> newMatches = newFixtures(fixtures);
+			allocated = inOrder
+					? new ParallelAllocator(refList).allocate(newMatches)
+					: new BatchAllocator(refList).allocate(newMatches);
+			for (Match match : allocated)
+				season.addMatch(match);
+			if (journal != null)
+				record = journal.appendAllocated(allocated);
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		commit(record, failure);
+
+		// Each allocated referee changed once
+		LinkedHashSet<Referee> changed = new LinkedHashSet<Referee>();
+		for (Match match : allocated)
+			for (Referee ref : match.getReferees())
+				if (ref != null)
+					changed.add(ref);
+		for (Referee ref : changed)
+			for (RefereeListener listener : listeners)
+				listener.refereeChanged(ref);
+		return allocated;
+	}
+
+	/**
+	 * Filters a list of fixtures down to the first fixture of each week not
+	 * yet hosting a match
+	 */
+	private ArrayList<Match> newFixtures(ArrayList<Match> fixtures) {
+		ArrayList<Match> newMatches = new ArrayList<Match>();
+		HashSet<Integer> weeks = new HashSet<Integer>();
+		for (Match match : fixtures)
+			if (season.getMatch(match.getWeek()) == null
+					&& weeks.add(match.getWeek()))
+				newMatches.add(match);
+		return newMatches;
+	}
+
+	/**
+	 * Called by the thread making a change when the change could not be
+	 * journaled (it has been made all the same)
+	 * @param e the cause
+	 */
+	protected void journalFailed(IOException e) {
+	}
+
+	/**
+	 * Commits a journal record appended under the write lock, or reports why
+	 * it could not be appended
+	 */
+	private void commit(long record, IOException failure) {
+		try {
+			if (failure != null)
+				throw failure;
+			if (journal != null && record > 0)
+				journal.commit(record);
+		} catch (IOException e) {
+			journalFailed(e);
+		}
+	}
+}
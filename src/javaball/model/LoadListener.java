@@ -0,0 +1,31 @@
+package javaball.model;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Receives the problems found while loading the model, e.g. malformed lines
+ * of the referee input file, so that the model layer does not report them
+ * itself. It may be called on any thread.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public interface LoadListener {
+
+	/**
+	 * Called with a problem found while loading; whatever could be loaded
+	 * is used all the same
+	 * @param message the description of the problem
+	 */
+	void loadWarning(String message);
+}
@@ -90,6 +90,14 @@ public class Match {
 		this.level = level;
 	}
     
+    /**
+     * Returns the referees allocated to the match
+     * @return an array of the two referees (null entries if unallocated)
+     */
+	public Referee[] getReferees() {
+		return suitableReferees;
+	}
+
     /**
      * Populates the match's suitable referees array
      * @param referees, an array containing the two suitable referees
@@ -0,0 +1,687 @@
+package javaball.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.enums.RefQualification;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Append-only journal of the changes made to the model since it was last
+ * saved (referees added, edited and removed, and matches allocated), so that
+ * they survive a crash without rewriting the output files or the snapshot
+ * after every change. The journal is replayed on top of its base (the
+ * snapshot or the referee input file it was started on) when it is opened.
+ * <p>
+ * Positions in the journal are logical: they keep growing as records are
+ * appended, also when the journal is compacted, i.e. the records up to a
+ * position (e.g. included in a snapshot) are dropped from the file. A
+ * snapshot records the journal's ID and position, so that only the later
+ * records are replayed on top of it.
+ * <p>
+ * Records are written with group commit: a thread committing its record
+ * also writes the records other threads have appended meanwhile, in one
+ * write, and threads whose records are being written wait for that write
+ * instead of writing again. Writes are forced to disk every syncEvery
+ * records (0 forces them only on closing, leaving the rest to the OS).
+ * <p>
+ * Layout (version 1, big endian): magic, version, the journal's ID (e.g. the
+ * time stamp of the base it was started on) and the position of its first
+ * record, then the records, each as its length, type and details, and a
+ * CRC32 of type and details. A record cut off by a crash ends the journal.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class ModelJournal {
+
+	/** The name of the journal file */
+	public static final String FILE = "JavaBall.journal";
+
+	/** Default number of records written between forcing them to disk */
+	public static final int SYNC_EVERY = 1;
+
+	/** Marks journal files ("JBJL") */
+	private static final int MAGIC = 0x4A424A4C;
+
+	/** Version of the journal layout */
+	private static final int VERSION = 1;
+
+	/** Length of the header (magic, version, ID and position) */
+	private static final int HEADER = 24;
+
+	/** Record types */
+	private static final byte ADD = 1, EDIT = 2, REMOVE = 3, ALLOCATE = 4;
+
+	/** The journal file, and its channel positioned at its end */
+	private final Path file;
+	private FileChannel channel;
+
+	/** ID of the journal */
+	private final long id;
+
+	/** Length of the file's header, and the position of the first record */
+	private int header;
+	private long start;
+
+	/** Position after the records appended */
+	private long end;
+
+	/** Number of records written between forcing them to disk (0: never) */
+	private final int syncEvery;
+
+	/** Number of records replayed when the journal was opened */
+	private final int replayed;
+
+	/** Records appended but not yet written */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private final DataOutputStream pendingData = new DataOutputStream(pending);
+
+	/** Number of records appended, written and forced to disk */
+	private long appended, written, synced;
+
+	/** Whether a thread is writing a batch of records */
+	private boolean writing;
+
+	/** Failure of an earlier write, after which nothing is written */
+	private IOException failure;
+
+	/**
+	 * Constructor for a journal opened for appending
+	 */
+	private ModelJournal(Path file, FileChannel channel, long id, int header,
+			long start, long end, int syncEvery, int replayed) {
+		this.file = file;
+		this.channel = channel;
+		this.id = id;
+		this.header = header;
+		this.start = start;
+		this.end = end;
+		this.syncEvery = syncEvery;
+		this.replayed = replayed;
+	}
+
+	/**
+	 * Opens a journal, replaying its records from a given position onto the
+	 * model if it has the same ID; otherwise (or if it ends before that
+	 * position, whose records are part of the base then) a new journal is
+	 * started at that position. A record cut off by a crash is dropped.
+	 * @param file the journal file
+	 * @param id the journal's ID, e.g. the time stamp of the referee input
+	 * file, or the ID recorded in the snapshot the model has been read from
+	 * @param position the position of the first record not included in the
+	 * model, e.g. as recorded in the snapshot (0 for a new base)
+	 * @param syncEvery the number of records to be written between forcing
+	 * them to disk (0 to force them on closing only)
+	 * @param refList the referees read from the base
+	 * @param season the matches read from the base
+	 * @return the journal, ready to record further changes
+	 * @throws IOException if the journal cannot be opened, starts after the
+	 * position, or its records do not match the model
+	 */
+	public static ModelJournal open(Path file, long id, long position,
+			int syncEvery, RefereeList refList, Season season)
+			throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			// Replay a journal of the same ID from the position, up to its
+			// last whole record
+			int replayed = 0;
+			int header = HEADER;
+			long start = position;
+			long end = 0;
+			long size = channel.size();
+			if (size >= HEADER && size <= Integer.MAX_VALUE) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						0, size);
+				int version = buffer.getInt() == MAGIC ? buffer.getInt() : 0;
+				long journalId = buffer.getLong();
+				long journalStart = buffer.getLong();
+				if (version == VERSION && journalId == id) {
+					if (journalStart > position)
+						throw new IOException("Journal starts at "
+								+ journalStart + ", after position " + position);
+
+					// Skip the records up to the position
+					int first = buffer.position();
+					long skip = position - journalStart;
+					while (buffer.position() - first < skip && next(buffer))
+						buffer.position(buffer.position() + 8
+								+ buffer.getInt(buffer.position()));
+					if (buffer.position() - first > skip)
+						throw new IOException("No journal record at position "
+								+ position);
+					if (buffer.position() - first == skip) {
+						while (next(buffer)) {
+							apply(buffer, refList, season, replayed + 1);
+							replayed++;
+						}
+						header = first;
+						start = journalStart;
+						end = buffer.position();
+					}
+				}
+			}
+
+			// Otherwise start afresh at the position
+			if (end == 0) {
+				channel.truncate(0);
+				writeHeader(channel, id, position);
+				end = HEADER;
+			}
+			channel.truncate(end);
+			channel.force(true);
+			channel.position(end);
+			return new ModelJournal(file, channel, id, header, start,
+					start + end - header, syncEvery, replayed);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of records replayed when the journal was opened
+	 * @return the number of replayed changes
+	 */
+	public int getReplayed() {
+		return replayed;
+	}
+
+	/**
+	 * Returns the journal's ID
+	 * @return the ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the position after the records appended so far, i.e. where the
+	 * changes made after now will be recorded
+	 * @return the current position
+	 */
+	public synchronized long getPosition() {
+		return end;
+	}
+
+	/**
+	 * Drops the records before a position from the file (e.g. once a
+	 * snapshot including them has been written). The remaining records are
+	 * copied into a new file, which replaces the journal once it has been
+	 * forced to disk, so that a crash leaves either file behind.
+	 * @param position a position returned by getPosition()
+	 * @throws IOException if the journal cannot be compacted
+	 */
+	public void compact(long position) throws IOException {
+		commit(appended());
+		synchronized (this) {
+			// Nothing else is written meanwhile
+			while (writing)
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			if (failure != null)
+				throw new IOException("Journal not written", failure);
+			long writtenEnd = end - pending.size();
+			if (position <= start)
+				return;
+			if (position > writtenEnd)
+				throw new IOException("Position " + position
+						+ " beyond the journal");
+
+			// Copy the records from the position into a new file
+			Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			try (FileChannel compacted = FileChannel.open(temporary,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE)) {
+				writeHeader(compacted, id, position);
+				long offset = header + position - start;
+				long count = writtenEnd - position;
+				compacted.position(HEADER);
+				while (count > 0) {
+					long copied = channel.transferTo(offset, count, compacted);
+					offset += copied;
+					count -= copied;
+				}
+				compacted.force(true);
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			// Carry on writing to the new file
+			try {
+				FileChannel old = channel;
+				channel = FileChannel.open(file, StandardOpenOption.WRITE);
+				channel.position(channel.size());
+				old.close();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+			header = HEADER;
+			start = position;
+			synced = written;
+		}
+	}
+
+	/**
+	 * Records a referee added to the list
+	 * @param ref the added referee
+	 * @throws IOException if the record cannot be written
+	 */
+	public void refereeAdded(Referee ref) throws IOException {
+		commit(appendAdded(ref));
+	}
+
+	/**
+	 * Appends the record of an added referee, to be committed
+	 * @return the number of the record
+	 */
+	long appendAdded(Referee ref) throws IOException {
+		Record out = new Record(ADD);
+		out.writeString(ref.getID());
+		out.writeString(ref.getFirstName());
+		out.writeString(ref.getLastName());
+		out.writeInt(ref.getAllocations());
+		out.writeDetails(ref);
+		return append(out);
+	}
+
+	/**
+	 * Records the new qualification, home and travel preferences of a referee
+	 * @param ref the edited referee
+	 * @throws IOException if the record cannot be written
+	 */
+	public void refereeEdited(Referee ref) throws IOException {
+		commit(appendEdited(ref));
+	}
+
+	/**
+	 * Appends the record of an edited referee, to be committed
+	 * @return the number of the record
+	 */
+	long appendEdited(Referee ref) throws IOException {
+		Record out = new Record(EDIT);
+		out.writeString(ref.getID());
+		out.writeDetails(ref);
+		return append(out);
+	}
+
+	/**
+	 * Records a referee removed from the list
+	 * @param ref the removed referee
+	 * @throws IOException if the record cannot be written
+	 */
+	public void refereeRemoved(Referee ref) throws IOException {
+		commit(appendRemoved(ref));
+	}
+
+	/**
+	 * Appends the record of a removed referee, to be committed
+	 * @return the number of the record
+	 */
+	long appendRemoved(Referee ref) throws IOException {
+		Record out = new Record(REMOVE);
+		out.writeString(ref.getID());
+		return append(out);
+	}
+
+	/**
+	 * Records matches added to the season with their allocated referees, in
+	 * one commit
+	 * @param matches the allocated matches
+	 * @throws IOException if the records cannot be written
+	 */
+	public void matchesAllocated(Collection<Match> matches)
+			throws IOException {
+		commit(appendAllocated(matches));
+	}
+
+	/**
+	 * Appends the records of allocated matches, to be committed together
+	 * @return the number of the last record (0 if there are no matches)
+	 */
+	long appendAllocated(Collection<Match> matches) throws IOException {
+		long last = 0;
+		for (Match match : matches) {
+			Record out = new Record(ALLOCATE);
+			out.writeInt(match.getWeek());
+			out.writeByte(match.getLevel().ordinal());
+			out.writeByte(match.getArea().ordinal());
+			Referee[] referees = match.getReferees();
+			out.writeByte(referees.length);
+			for (Referee ref : referees)
+				out.writeString(ref == null ? "" : ref.getID());
+			last = append(out);
+		}
+		return last;
+	}
+
+	/**
+	 * Writes and forces the remaining records to disk and closes the journal
+	 * @throws IOException if the records cannot be written
+	 */
+	public void close() throws IOException {
+		try {
+			commit(appended());
+			synchronized (this) {
+				if (failure == null && synced < written) {
+					channel.force(false);
+					synced = written;
+				}
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Appends a record to the records to be written next
+	 * @return the number of the record
+	 */
+	private synchronized long append(Record out) throws IOException {
+		byte[] record = out.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		pendingData.writeInt(record.length);
+		pendingData.write(record);
+		pendingData.writeInt((int) crc.getValue());
+		end += record.length + 8;
+		return ++appended;
+	}
+
+	/**
+	 * Returns the number of appended records
+	 */
+	private synchronized long appended() {
+		return appended;
+	}
+
+	/**
+	 * Makes sure that a record has been written (and forced to disk as often
+	 * as configured), writing it with all other pending records unless
+	 * another thread is already doing so
+	 * @param record the number of the record
+	 */
+	void commit(long record) throws IOException {
+		byte[] batch;
+		long last;
+		synchronized (this) {
+			// Wait for a write which may already include the record
+			while (writing && written < record)
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			if (failure != null)
+				throw new IOException("Journal not written", failure);
+			if (written >= record)
+				return;
+
+			// Write all pending records
+			writing = true;
+			batch = pending.toByteArray();
+			pending.reset();
+			last = appended;
+		}
+
+		IOException error = null;
+		boolean sync = false;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			sync = syncEvery > 0 && last - synced >= syncEvery;
+			if (sync)
+				channel.force(false);
+		} catch (IOException e) {
+			error = e;
+			throw e;
+		} finally {
+			synchronized (this) {
+				writing = false;
+				if (error == null) {
+					written = last;
+					if (sync)
+						synced = last;
+				} else
+					failure = error;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes a header for a journal of a given ID starting at a position
+	 */
+	private static void writeHeader(FileChannel channel, long id,
+			long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putInt(VERSION).putLong(id).putLong(position)
+				.flip();
+		while (header.hasRemaining())
+			channel.write(header, HEADER - header.remaining());
+	}
+
+	/**
+	 * Checks that the buffer holds another whole record with a valid
+	 * checksum, leaving the buffer at its start
+	 * @return whether there is another record
+	 */
+	private static boolean next(ByteBuffer buffer) {
+		if (buffer.remaining() < 4)
+			return false;
+		int start = buffer.position();
+		int length = buffer.getInt(start);
+		if (length < 1 || length > buffer.remaining() - 8)
+			return false;
+
+		CRC32 crc = new CRC32();
+		ByteBuffer record = buffer.duplicate();
+		record.position(start + 4).limit(start + 4 + length);
+		crc.update(record);
+		return buffer.getInt(start + 4 + length) == (int) crc.getValue();
+	}
+
+	/**
+	 * Applies the next record to the model, moving the buffer past it
+	 */
+	private static void apply(ByteBuffer buffer, RefereeList refList,
+			Season season, int number) throws IOException {
+		int length = buffer.getInt();
+		int end = buffer.position() + length + 4;
+		try {
+			byte type = buffer.get();
+			switch (type) {
+			case ADD: {
+				String id = readString(buffer);
+				String firstName = readString(buffer);
+				String lastName = readString(buffer);
+				int allocations = buffer.getInt();
+				RefQualification qualification = value(
+						RefQualification.values(), buffer.get());
+				int level = buffer.get();
+				Location home = value(Location.values(), buffer.get());
+				String travel = travel(buffer.get());
+				if (!refList.add(new Referee(id, firstName, lastName,
+						qualification.name() + level, allocations,
+						home.toString(), travel)))
+					throw new IOException("Referee " + id + " not added");
+				break;
+			}
+			case EDIT: {
+				Referee ref = listed(refList, readString(buffer));
+				ref.setQualification(value(RefQualification.values(),
+						buffer.get()));
+				ref.setQualificationLevel(buffer.get());
+				ref.setHomeLocation(value(Location.values(), buffer.get()));
+				ref.setTravelLocation(travel(buffer.get()));
+				break;
+			}
+			case REMOVE:
+				refList.remove(listed(refList, readString(buffer)));
+				break;
+			case ALLOCATE: {
+				int week = buffer.getInt();
+				MatchLevel level = value(MatchLevel.values(), buffer.get());
+				Location area = value(Location.values(), buffer.get());
+				Referee[] referees = new Referee[buffer.get()];
+				for (int i = 0; i < referees.length; i++) {
+					String id = readString(buffer);
+					if (!id.isEmpty())
+						referees[i] = listed(refList, id);
+				}
+				Match match = new Match(week, level, area);
+				match.setReferees(referees);
+				season.addMatch(match);
+				for (Referee ref : referees)
+					if (ref != null)
+						ref.addMatch(match);
+				break;
+			}
+			default:
+				throw new IOException("Unknown record type " + type);
+			}
+		} catch (IOException | IllegalArgumentException
+				| BufferUnderflowException e) {
+			throw new IOException("Journal record " + number
+					+ " does not match the model", e);
+		}
+		buffer.position(end);
+	}
+
+	/**
+	 * Converts travel bits (1 << Location ordinal) to a three character
+	 * travel String (e.g. 'YNY')
+	 */
+	private static String travel(int bits) {
+		char[] travel = new char[Location.values().length];
+		for (int i = 0; i < travel.length; i++)
+			travel[i] = (bits & 1 << i) != 0 ? 'Y' : 'N';
+		return new String(travel);
+	}
+
+	/**
+	 * Returns the listed referee of a given ID
+	 */
+	private static Referee listed(RefereeList refList, String id)
+			throws IOException {
+		Referee ref = refList.getReferee(id);
+		if (ref == null || !ref.getID().equals(id))
+			throw new IOException("Referee " + id + " not listed");
+		return ref;
+	}
+
+	/**
+	 * Reads a String written by Record.writeString
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the enum constant of an ordinal read from a record
+	 */
+	private static <E> E value(E[] values, int ordinal) throws IOException {
+		if (ordinal < 0 || ordinal >= values.length)
+			throw new IOException("Invalid ordinal " + ordinal);
+		return values[ordinal];
+	}
+
+	/**
+	 * Deletes a journal file whose changes have been saved otherwise (e.g.
+	 * after writing a snapshot)
+	 * @param file the journal file
+	 * @throws IOException if the file exists but cannot be deleted
+	 */
+	public static void delete(Path file) throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Moves a journal file which could not be replayed aside, so that its
+	 * changes are kept (e.g. to be recovered by hand) while the model is
+	 * saved without them
+	 * @param file the journal file
+	 * @return the file the journal has been moved to
+	 * @throws IOException if the file cannot be moved
+	 */
+	public static Path moveAside(Path file) throws IOException {
+		Path aside = file.resolveSibling(file.getFileName() + ".unreplayed");
+		return Files.move(file, aside, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * A record being put together: its type, then its details
+	 */
+	private static final class Record extends DataOutputStream {
+
+		private Record(byte type) throws IOException {
+			super(new ByteArrayOutputStream(32));
+			writeByte(type);
+		}
+
+		/**
+		 * Writes a String as its UTF-8 length (unsigned short) and bytes
+		 */
+		private void writeString(String string) throws IOException {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > 0xFFFF)
+				throw new IOException("String too long to be journaled");
+			writeShort(bytes.length);
+			write(bytes);
+		}
+
+		/**
+		 * Writes the editable details of a referee
+		 */
+		private void writeDetails(Referee ref) throws IOException {
+			writeByte(ref.getQualification().ordinal());
+			writeByte(ref.getQualificationLevel());
+			writeByte(ref.getHomeLocation().ordinal());
+			writeByte(ref.getFlags() & RefereeStore.TRAVEL_MASK);
+		}
+
+		/**
+		 * Returns the record's bytes
+		 */
+		private byte[] toByteArray() {
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+}
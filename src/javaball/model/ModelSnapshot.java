@@ -0,0 +1,464 @@
+package javaball.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Binary snapshot of the whole model (referees with their allocations, and
+ * the season's matches with their referees), so that a later run can carry
+ * on where the last one stopped. Referee details are written column by
+ * column as kept by the referee store and read back through a memory mapped
+ * file with bulk reads. The text files stay the format for interchange.
+ * <p>
+ * A snapshot is either captured from the model or read from a file. Capturing
+ * only copies the referee store's columns and the matches, so it is cheap
+ * enough for the thread changing the model (it is consistent as long as the
+ * model does not change meanwhile); writing, which sorts the referees by ID,
+ * can then be left to another thread while the model changes.
+ * The snapshot records the position the model's journal had reached, so that
+ * only the later journal records are replayed on top of it.
+ * <p>
+ * Layout (version 1, big endian): magic, version, referee cap, journal ID and
+ * position, the name dictionary, the listed referees in ID order, the removed
+ * referees still allocated to matches, and the matches with their referees as
+ * indexes into the listed and then the removed referees (-1 for none).
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class ModelSnapshot {
+
+	/** The name of the snapshot file */
+	public static final String FILE = "JavaBall.snapshot";
+
+	/** Marks snapshot files ("JBSN") */
+	private static final int MAGIC = 0x4A42534E;
+
+	/** Version of the snapshot layout */
+	private static final int VERSION = 1;
+
+	/** Referee index of an empty referee place */
+	private static final int NONE = -1;
+
+	/** Maximum number of referees of the list */
+	private final int maxReferees;
+
+	/** Details of the listed referees (rows without an ID are free) */
+	private final RefereeStore listed;
+
+	/** Rows of the listed referees in ID order */
+	private final int[] order;
+
+	/** Details of the removed referees still allocated to matches */
+	private final RefereeStore removed;
+
+	/**
+	 * The matches' weeks, levels, areas and referees, the latter as rows of
+	 * the listed referees, or (from listed.rows() on) of the removed ones
+	 */
+	private final int[] weeks;
+	private final MatchLevel[] levels;
+	private final Location[] areas;
+	private final int[][] referees;
+
+	/** ID of the journal of the model, and its position when captured */
+	private final long journalId;
+	private final long journalPosition;
+
+	/**
+	 * Constructor for a captured or read snapshot
+	 */
+	private ModelSnapshot(int maxReferees, RefereeStore listed, int[] order,
+			RefereeStore removed, int[] weeks, MatchLevel[] levels,
+			Location[] areas, int[][] referees, long journalId,
+			long journalPosition) {
+		this.maxReferees = maxReferees;
+		this.listed = listed;
+		this.order = order;
+		this.removed = removed;
+		this.weeks = weeks;
+		this.levels = levels;
+		this.areas = areas;
+		this.referees = referees;
+		this.journalId = journalId;
+		this.journalPosition = journalPosition;
+	}
+
+	/**
+	 * Captures the model as it is now; to be called by the thread changing
+	 * the model (or while it is not being changed otherwise)
+	 * @param refList the referees
+	 * @param season the season's matches
+	 * @param journal the journal recording the model's changes (or null)
+	 * @return the snapshot, to be written by any thread
+	 */
+	public static ModelSnapshot capture(RefereeList refList, Season season,
+			ModelJournal journal) {
+		RefereeStore store = refList.getStore();
+		RefereeStore listed = new RefereeStore(store);
+
+		// Removed referees still allocated are copied one by one
+		RefereeStore removed = new RefereeStore(1);
+		IdentityHashMap<Referee, Integer> removedRows =
+				new IdentityHashMap<>();
+
+		int count = season.getNumMatches();
+		int[] weeks = new int[count];
+		MatchLevel[] levels = new MatchLevel[count];
+		Location[] areas = new Location[count];
+		int[][] referees = new int[count][];
+		int i = 0;
+		for (Match match : season) {
+			weeks[i] = match.getWeek();
+			levels[i] = match.getLevel();
+			areas[i] = match.getArea();
+			Referee[] matchReferees = match.getReferees();
+			int[] rows = new int[matchReferees.length];
+			for (int j = 0; j < rows.length; j++) {
+				Referee ref = matchReferees[j];
+				if (ref == null)
+					rows[j] = NONE;
+				else if (ref.getStore() == store)
+					rows[j] = ref.getRow();
+				else {
+					Integer row = removedRows.get(ref);
+					if (row == null) {
+						row = listed.rows()
+								+ removed.copy(ref.getStore(), ref.getRow());
+						removedRows.put(ref, row);
+					}
+					rows[j] = row;
+				}
+			}
+			referees[i++] = rows;
+		}
+
+		return new ModelSnapshot(refList.getMaxReferees(), listed,
+				refList.getRows(),
+				removed, weeks, levels, areas, referees,
+				journal == null ? 0 : journal.getId(),
+				journal == null ? 0 : journal.getPosition());
+	}
+
+	/**
+	 * Returns the ID of the journal of the model
+	 * @return the journal ID (0 if the model had no journal)
+	 */
+	public long getJournalId() {
+		return journalId;
+	}
+
+	/**
+	 * Returns the position the journal of the model had reached, i.e. where
+	 * the changes not included in the snapshot start
+	 * @return the journal position
+	 */
+	public long getJournalPosition() {
+		return journalPosition;
+	}
+
+	/**
+	 * Writes the snapshot; the file is replaced only once the snapshot has
+	 * been written completely
+	 * @param file the snapshot file
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void write(Path file) throws IOException {
+		// Written index of each row: listed referees in ID order, then the
+		// removed ones
+		int[] removedOrder = new int[removed.rows()];
+		int[] indexes = new int[listed.rows() + removed.rows()];
+		for (int i = 0; i < order.length; i++)
+			indexes[order[i]] = i;
+		for (int row = 0; row < removed.rows(); row++) {
+			removedOrder[row] = row;
+			indexes[listed.rows() + row] = order.length + row;
+		}
+
+		// Both stores' names, the removed referees' codes following
+		ArrayList<String> names = new ArrayList<>(listed.getNames().size()
+				+ removed.getNames().size());
+		names.addAll(listed.getNames());
+		names.addAll(removed.getNames());
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporary),
+						1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(maxReferees);
+			out.writeLong(journalId);
+			out.writeLong(journalPosition);
+			writeStrings(out, names);
+			writeReferees(out, listed, order, 0);
+			writeReferees(out, removed, removedOrder,
+					listed.getNames().size());
+
+			out.writeInt(weeks.length);
+			for (int i = 0; i < weeks.length; i++) {
+				out.writeInt(weeks[i]);
+				out.writeByte(levels[i].ordinal());
+				out.writeByte(areas[i].ordinal());
+				out.writeByte(referees[i].length);
+				for (int row : referees[i])
+					out.writeInt(row == NONE ? NONE : indexes[row]);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot
+	 * @param file the snapshot file
+	 * @return the snapshot, to be restored
+	 * @throws IOException if the snapshot cannot be read or is invalid
+	 */
+	public static ModelSnapshot read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot too large");
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			try {
+				return read(buffer);
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Snapshot truncated", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot from a buffer
+	 */
+	private static ModelSnapshot read(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("Not a snapshot");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported snapshot version " + version);
+
+		int maxReferees = buffer.getInt();
+		long journalId = buffer.getLong();
+		long journalPosition = buffer.getLong();
+		String[] names = readStrings(buffer);
+		RefereeStore listed = readReferees(buffer, names);
+		RefereeStore removed = readReferees(buffer, names);
+
+		int count = count(buffer);
+		int[] weeks = new int[count];
+		MatchLevel[] levels = new MatchLevel[count];
+		Location[] areas = new Location[count];
+		int[][] referees = new int[count][];
+		for (int i = 0; i < count; i++) {
+			weeks[i] = buffer.getInt();
+			levels[i] = value(MatchLevel.values(), buffer.get());
+			areas[i] = value(Location.values(), buffer.get());
+			int places = buffer.get();
+			if (places < 0)
+				throw new IOException("Invalid number of referees " + places);
+			referees[i] = new int[places];
+			for (int j = 0; j < places; j++) {
+				int index = buffer.getInt();
+				if (index < NONE || index >= listed.rows() + removed.rows())
+					throw new IOException("Invalid referee index " + index);
+				referees[i][j] = index;
+			}
+		}
+		int[] order = new int[listed.rows()];
+		for (int row = 0; row < order.length; row++)
+			order[row] = row;
+		return new ModelSnapshot(maxReferees, listed, order, removed, weeks,
+				levels, areas, referees, journalId, journalPosition);
+	}
+
+	/**
+	 * Restores the model of a snapshot read from a file (once), adding the
+	 * matches to a given season
+	 * @param season the (empty) season to add the matches to
+	 * @return the restored referee list
+	 * @throws IOException if the referees cannot be listed
+	 */
+	public RefereeList restore(Season season) throws IOException {
+		// List the referees; the removed ones only exist as views
+		RefereeList refList = new RefereeList(maxReferees);
+		int base = refList.restore(listed);
+		if (base < 0)
+			throw new IOException("Referee IDs not unique and ascending");
+		RefereeStore store = refList.getStore();
+
+		for (int i = 0; i < weeks.length; i++) {
+			Referee[] matchReferees = new Referee[referees[i].length];
+			for (int j = 0; j < matchReferees.length; j++) {
+				int index = referees[i][j];
+				if (index == NONE)
+					continue;
+				matchReferees[j] = index < listed.rows()
+						? store.getView(base + index)
+						: removed.getView(index - listed.rows());
+			}
+			Match match = new Match(weeks[i], levels[i], areas[i]);
+			match.setReferees(matchReferees);
+			season.addMatch(match);
+		}
+		return refList;
+	}
+
+	/**
+	 * Writes the columns of a store's rows, offsetting their name codes
+	 */
+	private static void writeReferees(DataOutputStream out,
+			RefereeStore store, int[] rows, int codeOffset)
+			throws IOException {
+		ArrayList<String> ids = new ArrayList<>(rows.length);
+		for (int row : rows)
+			ids.add(store.getID(row));
+		writeStrings(out, ids);
+
+		for (int row : rows)
+			out.writeInt(codeOffset + store.getFirstNameCode(row));
+		for (int row : rows)
+			out.writeInt(codeOffset + store.getLastNameCode(row));
+		for (int row : rows)
+			out.writeByte(store.getFlags(row));
+		for (int row : rows)
+			out.writeByte(store.getQualificationBits(row));
+		for (int row : rows)
+			out.writeInt(store.getAllocations(row));
+	}
+
+	/**
+	 * Reads the referees' columns into a new store
+	 */
+	private static RefereeStore readReferees(ByteBuffer buffer,
+			String[] names) throws IOException {
+		String[] ids = readStrings(buffer);
+		int[] firstNames = readCodes(buffer, ids.length, names.length);
+		int[] lastNames = readCodes(buffer, ids.length, names.length);
+		byte[] flags = new byte[ids.length];
+		buffer.get(flags);
+		byte[] qualifications = new byte[ids.length];
+		buffer.get(qualifications);
+		int[] allocations = new int[ids.length];
+		readInts(buffer, allocations);
+		for (int row = 0; row < ids.length; row++)
+			if (!RefereeStore.isValid(flags[row], qualifications[row]))
+				throw new IOException("Invalid details of referee " + ids[row]);
+		return new RefereeStore(ids, names, firstNames, lastNames, flags,
+				qualifications, allocations);
+	}
+
+	/**
+	 * Writes Strings as their number, their UTF-8 lengths and their bytes
+	 */
+	private static void writeStrings(DataOutputStream out,
+			List<String> strings) throws IOException {
+		ArrayList<byte[]> encoded = new ArrayList<>(strings.size());
+		for (String string : strings)
+			encoded.add(string.getBytes(StandardCharsets.UTF_8));
+
+		out.writeInt(encoded.size());
+		for (byte[] bytes : encoded)
+			out.writeInt(bytes.length);
+		for (byte[] bytes : encoded)
+			out.write(bytes);
+	}
+
+	/**
+	 * Reads Strings written by writeStrings with one bulk read of the bytes
+	 */
+	private static String[] readStrings(ByteBuffer buffer) throws IOException {
+		int[] lengths = new int[count(buffer)];
+		readInts(buffer, lengths);
+		long total = 0;
+		for (int length : lengths) {
+			if (length < 0)
+				throw new IOException("Invalid string length " + length);
+			total += length;
+		}
+		if (total > buffer.remaining())
+			throw new BufferUnderflowException();
+
+		byte[] bytes = new byte[(int) total];
+		buffer.get(bytes);
+		String[] strings = new String[lengths.length];
+		int offset = 0;
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = new String(bytes, offset, lengths[i],
+					StandardCharsets.UTF_8);
+			offset += lengths[i];
+		}
+		return strings;
+	}
+
+	/**
+	 * Reads name codes, checking that they are in the dictionary
+	 */
+	private static int[] readCodes(ByteBuffer buffer, int size, int names)
+			throws IOException {
+		int[] codes = new int[size];
+		readInts(buffer, codes);
+		for (int code : codes)
+			if (code < 0 || code >= names)
+				throw new IOException("Invalid name code " + code);
+		return codes;
+	}
+
+	/**
+	 * Fills an array with ints in one bulk read
+	 */
+	private static void readInts(ByteBuffer buffer, int[] ints) {
+		if ((long) ints.length * 4 > buffer.remaining())
+			throw new BufferUnderflowException();
+		buffer.asIntBuffer().get(ints);
+		buffer.position(buffer.position() + ints.length * 4);
+	}
+
+	/**
+	 * Reads a non-negative count
+	 */
+	private static int count(ByteBuffer buffer) throws IOException {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining())
+			throw new IOException("Invalid count " + count);
+		return count;
+	}
+
+	/**
+	 * Returns the enum constant of an ordinal read from a snapshot
+	 */
+	private static <E> E value(E[] values, int ordinal) throws IOException {
+		if (ordinal < 0 || ordinal >= values.length)
+			throw new IOException("Invalid ordinal " + ordinal);
+		return values[ordinal];
+	}
+}
@@ -0,0 +1,277 @@
+package javaball.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Allocates a list of matches one after another exactly as single match
+ * allocation would (the two most suitable referees per match), planning
+ * independent parts of the list in parallel where that pays off. Matches of
+ * two areas/levels only influence each other if some referee is suitable for
+ * both, so the match classes are split into groups which share no referees;
+ * each group can be planned on its own ForkJoinPool task on top of the
+ * allocation index, and the plans are applied in list order afterwards.
+ * <p>
+ * Planning a match costs several times as much as allocating it directly
+ * (see ParallelAllocationCheck), and there are at most six groups, so the
+ * matches are allocated one by one unless the pool's threads share enough
+ * matches out between enough groups to make up for it.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class ParallelAllocator {
+
+	/** Number of match classes (one per area and level) */
+	private static final int CLASSES = AllocationIndex.CLASSES;
+
+	/** Cost of planning a match relative to allocating it directly, and the
+	 * least number of matches worth starting tasks for */
+	static final int PLANNING_COST = 4;
+	static final int MIN_PLANNED = 2000;
+
+	/** The referees to allocate from */
+	private final RefereeList refList;
+
+	/** The pool to plan the groups on */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor using the common ForkJoinPool
+	 * @param refList the referees to allocate from
+	 */
+	public ParallelAllocator(RefereeList refList) {
+		this(refList, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor using a given ForkJoinPool
+	 * @param refList the referees to allocate from
+	 * @param pool the pool to plan independent groups of matches on
+	 */
+	public ParallelAllocator(RefereeList refList, ForkJoinPool pool) {
+		this.refList = refList;
+		this.pool = pool;
+	}
+
+	/**
+	 * Allocates the two most suitable referees to each match in list order,
+	 * planning independent groups in parallel only if that is expected to be
+	 * faster; matches with fewer than two suitable referees are left
+	 * unallocated
+	 * @param fixtures the matches to be allocated
+	 * @return the allocated matches in fixture order
+	 */
+	public ArrayList<Match> allocate(List<Match> fixtures) {
+		int[] group = groups(fixtures);
+
+		// The largest group is planned by one thread, the others share the
+		// remaining threads
+		int[] size = new int[CLASSES];
+		int groups = 0, largest = 0;
+		for (Match match : fixtures) {
+			int root = find(group, classOf(match));
+			if (size[root]++ == 0)
+				groups++;
+			largest = Math.max(largest, size[root]);
+		}
+		int threads = Math.max(Math.min(groups, pool.getParallelism()), 1);
+		long planned = (long) PLANNING_COST * Math.max(largest,
+				(fixtures.size() + threads - 1) / threads);
+		if (fixtures.size() < MIN_PLANNED || planned >= fixtures.size())
+			return allocateSequentially(fixtures);
+		return plan(fixtures, group);
+	}
+
+	/**
+	 * Allocates the two most suitable referees to each match in list order,
+	 * always planning independent groups in parallel
+	 * @param fixtures the matches to be allocated
+	 * @return the allocated matches in fixture order
+	 */
+	public ArrayList<Match> allocateInParallel(List<Match> fixtures) {
+		return plan(fixtures, groups(fixtures));
+	}
+
+	/**
+	 * Allocates the two most suitable referees to each match in list order,
+	 * one match after another
+	 * @param fixtures the matches to be allocated
+	 * @return the allocated matches in fixture order
+	 */
+	public ArrayList<Match> allocateSequentially(List<Match> fixtures) {
+		ArrayList<Match> allocated = new ArrayList<>();
+		for (Match match : fixtures) {
+			ArrayList<Referee> best = refList.getSuitableReferees(match, 2);
+			if (best.size() > 1) {
+				match.setReferees(best.toArray(new Referee[best.size()]));
+				for (Referee ref : best)
+					ref.addMatch(match);
+				allocated.add(match);
+			}
+		}
+		return allocated;
+	}
+
+	/**
+	 * Joins the classes of the fixtures which share a suitable referee into
+	 * groups
+	 * @param fixtures the matches to be allocated
+	 * @return the representative class per class (see find)
+	 */
+	private int[] groups(List<Match> fixtures) {
+		AllocationIndex index = refList.getAllocationIndex();
+
+		// Match classes which occur in the fixtures
+		int present = 0;
+		for (Match match : fixtures)
+			present |= 1 << classOf(match);
+
+		// Join all classes sharing a suitable referee into one group
+		int[] group = new int[CLASSES];
+		for (int c = 0; c < CLASSES; c++)
+			group[c] = c;
+		for (int c = 0; c < CLASSES; c++)
+			for (int d = c + 1; d < CLASSES; d++)
+				if ((present & 1 << c) != 0 && (present & 1 << d) != 0
+						&& index.sharesReferees(c, d))
+					join(group, c, d);
+		return group;
+	}
+
+	/**
+	 * Plans each group of fixtures on its own task, then applies the plans
+	 * in fixture order
+	 * @param fixtures the matches to be allocated
+	 * @param group the representative class per class
+	 * @return the allocated matches in fixture order
+	 */
+	private ArrayList<Match> plan(List<Match> fixtures, int[] group) {
+		AllocationIndex index = refList.getAllocationIndex();
+
+		// Split the matches by group (keeping their order)
+		ArrayList<PlanTask> tasks = new ArrayList<>();
+		PlanTask[] taskOf = new PlanTask[CLASSES];
+		for (Match match : fixtures) {
+			int root = find(group, classOf(match));
+			if (taskOf[root] == null) {
+				taskOf[root] = new PlanTask(index.new Planner());
+				tasks.add(taskOf[root]);
+			}
+			taskOf[root].matches.add(match);
+		}
+
+		// Plan all groups in parallel; the index must not change until all
+		// plans are complete
+		for (PlanTask task : tasks)
+			pool.execute(task);
+		for (PlanTask task : tasks)
+			task.join();
+
+		// Apply the plans in fixture order
+		ArrayList<Match> allocated = new ArrayList<>();
+		for (Match match : fixtures) {
+			Referee[] referees = taskOf[find(group, classOf(match))].next();
+			if (referees != null) {
+				match.setReferees(referees);
+				for (Referee ref : referees)
+					ref.addMatch(match);
+				allocated.add(match);
+			}
+		}
+		return allocated;
+	}
+
+	/**
+	 * Returns the match class of a match
+	 */
+	private static int classOf(Match match) {
+		return AllocationIndex.classOf(match.getArea(), match.getLevel());
+	}
+
+	/**
+	 * Returns the representative class of a class's group
+	 */
+	private static int find(int[] group, int c) {
+		while (group[c] != c)
+			c = group[c] = group[group[c]];
+		return c;
+	}
+
+	/**
+	 * Joins the groups of two classes
+	 */
+	private static void join(int[] group, int c, int d) {
+		int rootC = find(group, c);
+		int rootD = find(group, d);
+		if (rootC != rootD)
+			group[Math.max(rootC, rootD)] = Math.min(rootC, rootD);
+	}
+
+	/**
+	 * Plans the referees of one group of matches on top of the allocation
+	 * index, so that the referees themselves stay untouched while planning
+	 */
+	private static class PlanTask extends RecursiveTask<ArrayList<Referee[]>> {
+		private static final long serialVersionUID = 1L;
+
+		/** The planner keeping track of the group's planned allocations */
+		private final AllocationIndex.Planner planner;
+
+		/** The group's matches in fixture order */
+		private final ArrayList<Match> matches = new ArrayList<>();
+
+		/** Position of the next planned match to be applied */
+		private int applied;
+
+		/**
+		 * Constructor for a task planning with a given planner
+		 * @param planner a planner of the allocation index
+		 */
+		private PlanTask(AllocationIndex.Planner planner) {
+			this.planner = planner;
+		}
+
+		/**
+		 * Returns the planned referees of the next match (once planned)
+		 * @return the planned referees (null if too few)
+		 */
+		private Referee[] next() {
+			return join().get(applied++);
+		}
+
+		/**
+		 * Plans the two most suitable referees of each match in turn
+		 * @return the planned referees per match (null if too few)
+		 */
+		@Override
+		protected ArrayList<Referee[]> compute() {
+			ArrayList<Referee[]> plan = new ArrayList<>(matches.size());
+			for (Match match : matches) {
+				ArrayList<Referee> best = planner.getSuitableReferees(
+						match.getArea(), match.getLevel(), 2);
+				if (best.size() > 1) {
+					for (Referee ref : best)
+						planner.allocate(ref);
+					plan.add(best.toArray(new Referee[best.size()]));
+				} else
+					plan.add(null);
+			}
+			return plan;
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package javaball.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Prefix index of the listed referees by ID, first name and last name
+ * (ignoring case) for type-ahead search, held in sorted arrays of their rows
+ * in the list's store: the rows and IDs in ID order, and the distinct names
+ * of the list's name dictionary in order with, per first and last name, the
+ * rows of each name in ID order in one array. The referees whose key starts with a prefix are found by binary
+ * search and then read in order. The names are ranked once per dictionary
+ * entry and the referees placed by the rank of their name codes, so building
+ * the arrays neither compares nor lower cases a name per referee.
+ * <p>
+ * Referees added or removed since the arrays were built are kept aside and
+ * merged into the results (a row freed and listed again may hold another
+ * referee, so removed rows are only skipped in the arrays); once there are many of them the arrays are built
+ * again from the list on the next search. Lists filled in bulk
+ * (e.g. on loading) drop the arrays, to be built once on the first search.
+ * Names and IDs cannot be edited, so edits never change the index.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class PrefixIndex {
+
+	/** Kinds of keys, in the order their matches are returned */
+	private static final int ID = 0, FIRST_NAME = 1, LAST_NAME = 2, KINDS = 3;
+
+	/** Changes kept aside before the arrays are built again (at least) */
+	private static final int MIN_CHANGES = 1024;
+
+	/** The list indexed */
+	private final RefereeList list;
+
+	/** Sorted distinct lower case names of the list's dictionary (null
+	 * until built) */
+	private String[] names;
+
+	/** Start of each name's referees per kind of name (one more than names;
+	 * null for IDs) */
+	private int[][] starts;
+
+	/** The rows per kind, in order of their key, then ID */
+	private int[][] rows;
+
+	/** The IDs of the rows in ID order (as they were when built) */
+	private String[] ids;
+
+	/** Rows added since the arrays were built, by kind and key */
+	private final ArrayList<TreeMap<String, ArrayList<Integer>>> added;
+
+	/** Rows removed since the arrays were built */
+	private final Set<Integer> removed;
+
+	/** Number of changes kept aside */
+	private int changes;
+
+	/**
+	 * Constructor for an index of a list's referees, built when first
+	 * searched
+	 * @param list the list of the referees
+	 */
+	PrefixIndex(RefereeList list) {
+		this.list = list;
+		this.added = new ArrayList<>(KINDS);
+		for (int kind = 0; kind < KINDS; kind++)
+			added.add(new TreeMap<String, ArrayList<Integer>>());
+		this.removed = new HashSet<>();
+	}
+
+	/**
+	 * Adds a referee listed
+	 * @param row the referee's row in the list's store
+	 */
+	synchronized void add(int row) {
+		if (rows == null || !keep())
+			return;
+		for (int kind = 0; kind < KINDS; kind++) {
+			String key = keyOf(row, kind);
+			ArrayList<Integer> namesakes = added.get(kind).get(key);
+			if (namesakes == null) {
+				namesakes = new ArrayList<>(1);
+				added.get(kind).put(key, namesakes);
+			}
+			namesakes.add(row);
+		}
+	}
+
+	/**
+	 * Removes a referee no longer listed (while still in the list's store)
+	 * @param row the referee's row in the list's store
+	 */
+	synchronized void remove(int row) {
+		if (rows == null)
+			return;
+		boolean wasAdded = false;
+		for (int kind = 0; kind < KINDS; kind++) {
+			String key = keyOf(row, kind);
+			ArrayList<Integer> namesakes = added.get(kind).get(key);
+			if (namesakes != null && namesakes.remove((Integer) row)) {
+				wasAdded = true;
+				if (namesakes.isEmpty())
+					added.get(kind).remove(key);
+			}
+		}
+		if (wasAdded)
+			changes--;
+		else if (keep())
+			removed.add(row);
+	}
+
+	/**
+	 * Drops the arrays, e.g. after many referees have been listed at once,
+	 * to be built again on the next search
+	 */
+	synchronized void invalidate() {
+		names = null;
+		starts = null;
+		rows = null;
+		ids = null;
+		for (TreeMap<String, ArrayList<Integer>> kind : added)
+			kind.clear();
+		removed.clear();
+		changes = 0;
+	}
+
+	/**
+	 * Counts a change kept aside, dropping the arrays instead if there are
+	 * too many changes
+	 * @return whether the change is to be kept aside
+	 */
+	private boolean keep() {
+		if (++changes > Math.max(MIN_CHANGES, ids.length / 8)) {
+			invalidate();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the referees whose ID, first name or last name starts with a
+	 * prefix (ignoring case), ID matches first, then first name and last
+	 * name matches, each in order of the key and then ID. A prefix of two
+	 * words matches the referees with a first name starting with the first
+	 * word and a last name starting with the second.
+	 * @param prefix the prefix
+	 * @param max the maximum number of referees to be returned
+	 * @return the referees found, each once
+	 */
+	synchronized ArrayList<Referee> find(String prefix, int max) {
+		if (rows == null)
+			build();
+		prefix = prefix.trim().toLowerCase();
+		Set<Integer> found = new HashSet<>();
+		ArrayList<Referee> matches = new ArrayList<>();
+		if (prefix.isEmpty() || max <= 0)
+			return matches;
+
+		String[] words = prefix.split("[ ]+");
+		if (words.length == 2) {
+			// First name starting with the first word, last name with the
+			// second
+			collect(FIRST_NAME, words[0], words[1], found, matches, max);
+		} else if (words.length == 1) {
+			for (int kind = 0; kind < KINDS && matches.size() < max; kind++)
+				collect(kind, prefix, null, found, matches, max);
+		}
+		return matches;
+	}
+
+	/**
+	 * Collects the referees with a key of a kind starting with a prefix, in
+	 * order, merging the arrays and the referees added since
+	 * @param kind the kind of key
+	 * @param prefix the prefix of the key
+	 * @param lastName the prefix of the last name (null for any)
+	 * @param found the rows collected so far
+	 * @param matches the list to add the referees to
+	 * @param max the maximum number of referees to be collected
+	 */
+	private void collect(int kind, String prefix, String lastName,
+			Set<Integer> found, ArrayList<Referee> matches, int max) {
+		int key = lowerBound(kind, prefix);
+		Map.Entry<String, ArrayList<Integer>> extra =
+				added.get(kind).ceilingEntry(prefix);
+		while (matches.size() < max) {
+			boolean inArrays = key < keys(kind)
+					&& startsWith(keyAt(kind, key), prefix);
+			boolean inAdded = extra != null
+					&& extra.getKey().startsWith(prefix);
+			if (!inArrays && !inAdded)
+				return;
+
+			// Take the smaller key next (the arrays first on a tie)
+			if (inArrays && (!inAdded || keyAt(kind, key)
+					.compareToIgnoreCase(extra.getKey()) <= 0)) {
+				for (int i = start(kind, key); i < start(kind, key + 1)
+						&& matches.size() < max; i++)
+					if (!removed.contains(rows[kind][i]))
+						match(rows[kind][i], lastName, found, matches);
+				key++;
+			} else {
+				for (int row : extra.getValue())
+					if (matches.size() < max)
+						match(row, lastName, found, matches);
+				extra = added.get(kind).higherEntry(extra.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Adds a listed row's referee to the matches unless already found or of
+	 * another last name
+	 */
+	private void match(int row, String lastName, Set<Integer> found,
+			ArrayList<Referee> matches) {
+		RefereeStore store = list.getStore();
+		if (lastName != null && !startsWith(store.getLastName(row), lastName))
+			return;
+		if (found.add(row))
+			matches.add(store.getView(row));
+	}
+
+	/**
+	 * Builds the arrays from the list
+	 */
+	private void build() {
+		// The list holds the rows in ID order already (unless IDs differ in
+		// case only), so sorting them takes one pass
+		final RefereeStore store = list.getStore();
+		Integer[] sortedRows = new Integer[list.size()];
+		int n = 0;
+		for (int row : list.getRows())
+			sortedRows[n++] = row;
+		Arrays.sort(sortedRows, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer row1, Integer row2) {
+				return store.getID(row1).compareToIgnoreCase(
+						store.getID(row2));
+			}
+		});
+		int[] byId = new int[sortedRows.length];
+		ids = new String[sortedRows.length];
+		for (int i = 0; i < byId.length; i++) {
+			byId[i] = sortedRows[i];
+			ids[i] = store.getID(byId[i]);
+		}
+
+		// Rank the dictionary's names in lower case, equal ones alike
+		List<String> dictionary = store.getNames();
+		String[] lower = new String[dictionary.size()];
+		for (int code = 0; code < lower.length; code++)
+			lower[code] = dictionary.get(code).toLowerCase();
+		String[] sorted = lower.clone();
+		Arrays.sort(sorted);
+
+		// The sorted names are the same strings, so their ranks are mapped
+		// by identity rather than searched for
+		IdentityHashMap<String, Integer> ranks =
+				new IdentityHashMap<>(sorted.length);
+		int distinct = 0;
+		for (String name : sorted) {
+			if (distinct == 0 || !name.equals(sorted[distinct - 1]))
+				sorted[distinct++] = name;
+			ranks.put(name, distinct - 1);
+		}
+		names = Arrays.copyOf(sorted, distinct);
+		int[] rankOf = new int[lower.length];
+		for (int code = 0; code < lower.length; code++)
+			rankOf[code] = ranks.get(lower[code]);
+
+		starts = new int[KINDS][];
+		rows = new int[KINDS][];
+		rows[ID] = byId;
+		place(FIRST_NAME, byId, rankOf, store);
+		place(LAST_NAME, byId, rankOf, store);
+	}
+
+	/**
+	 * Places the rows (in ID order) after each other by the rank of their
+	 * first or last name, as in a counting sort
+	 * @param kind the kind of name
+	 * @param byId the rows in ID order
+	 * @param rankOf the rank of each name code
+	 * @param store the store of the referees
+	 */
+	private void place(int kind, int[] byId, int[] rankOf,
+			RefereeStore store) {
+		int[] ranks = new int[byId.length];
+		for (int i = 0; i < byId.length; i++) {
+			int row = byId[i];
+			ranks[i] = rankOf[kind == FIRST_NAME ? store.getFirstNameCode(row)
+					: store.getLastNameCode(row)];
+		}
+
+		// Count the referees per name, then place them in ID order
+		int[] kindStarts = new int[names.length + 1];
+		for (int rank : ranks)
+			kindStarts[rank + 1]++;
+		for (int rank = 0; rank < names.length; rank++)
+			kindStarts[rank + 1] += kindStarts[rank];
+		int[] next = Arrays.copyOf(kindStarts, names.length);
+		int[] kindRows = new int[byId.length];
+		for (int i = 0; i < byId.length; i++)
+			kindRows[next[ranks[i]]++] = byId[i];
+
+		starts[kind] = kindStarts;
+		rows[kind] = kindRows;
+	}
+
+	/**
+	 * Returns the number of keys of a kind in the arrays
+	 */
+	private int keys(int kind) {
+		return kind == ID ? ids.length : names.length;
+	}
+
+	/**
+	 * Returns a key of a kind in the arrays (IDs as listed, names in lower
+	 * case)
+	 */
+	private String keyAt(int kind, int key) {
+		return kind == ID ? ids[key] : names[key];
+	}
+
+	/**
+	 * Returns the start of a key's referees of a kind in the arrays
+	 */
+	private int start(int kind, int key) {
+		return kind == ID ? key : starts[kind][key];
+	}
+
+	/**
+	 * Returns the index of the first key of a kind not less than a prefix
+	 */
+	private int lowerBound(int kind, String prefix) {
+		int low = 0, high = keys(kind);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keyAt(kind, middle).compareToIgnoreCase(prefix) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns whether a key starts with a lower case prefix, ignoring case
+	 */
+	private static boolean startsWith(String key, String prefix) {
+		return key.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	/**
+	 * Returns the lower case key of a listed row of a kind
+	 */
+	private String keyOf(int row, int kind) {
+		RefereeStore store = list.getStore();
+		return (kind == ID ? store.getID(row) : kind == FIRST_NAME
+				? store.getFirstName(row) : store.getLastName(row))
+				.toLowerCase();
+	}
+}
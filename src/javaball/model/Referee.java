@@ -1,7 +1,5 @@
 package javaball.model;
 
-import java.util.ArrayList;
-
 import javaball.enums.Location;
 import javaball.enums.RefQualification;
 
@@ -25,68 +23,73 @@ import javaball.enums.RefQualification;
  */
 public class Referee implements Comparable<Referee> {
 
-	/** Referees unique identifier */
-    private String uniqueID;
-    	
-    /** Referees first and last name */
-	private String firstName;
-	private String lastName;
-	
-	/** Qualification type for the referee (such as NJB or IJB) */
-	private RefQualification qualification;
-	
-	/** Associated level of the qualification */
-	private int qualificationLevel;
-
-	/** The area where the referee is based */
-	private Location homeLocation;
+	/** The store holding the referee's details */
+	private RefereeStore store;
 
-	/** Travel preferences associated associated with the referee */
-	private boolean visitNorth;
-	private boolean visitCentral;
-	private boolean visitSouth;
-
-	/** List of matches by week that a referee has been allocated to */
-	private ArrayList<Match> allocatedMatchesList;
-
-	/** Number of previous allocations (before the current season) */
-	private int preSeasonAllocations;
+	/** The referee's row in the store */
+	private int row;
 
 	/**
 	 * Constructor to be used if ReadLine has not been split before
 	 * instantiating new Referee object. String is split, verified for validity
 	 * and values assigned.
 	 * @param fileLine  Long line with all Referee Information
+	 * @throws IllegalArgumentException if the line is not a valid referee
 	 */
 	public Referee(String fileLine) {
-		String[] refereeDetails = fileLine.split("[ ]+");
+		String[] refereeDetails = fileLine.trim().split("[ ]+");
 
 		// Check to make sure line split properly and has adequate items
-		if (refereeDetails != null && refereeDetails.length == 7) {
-			this.uniqueID = refereeDetails[0];
-			this.firstName = refereeDetails[1];
-			this.lastName = refereeDetails[2];
-
-			// Set the home location of the referee based on the info provided
-			switch (refereeDetails[5]) {
-			case "North":
-				setHomeLocation(Location.NORTH);
-				break;
-			case "Central":
-				setHomeLocation(Location.CENTRAL);
-				break;
-			case "South":
-				setHomeLocation(Location.SOUTH);
-				break;
-			}
-			
-			preSeasonAllocations = Integer.parseInt(refereeDetails[4]);
-			allocatedMatchesList = new ArrayList<>();
-
-			// convert travel locations to boolean
-			setTravelLocation(refereeDetails[6]);
-			setQualifications(refereeDetails[3]);
+		if (refereeDetails.length != 7)
+			throw new IllegalArgumentException("Expected 7 referee details: "
+					+ fileLine);
+
+		// Set the home location of the referee based on the info provided
+		Location home;
+		switch (refereeDetails[5]) {
+		case "North":
+			home = Location.NORTH;
+			break;
+		case "Central":
+			home = Location.CENTRAL;
+			break;
+		case "South":
+			home = Location.SOUTH;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown home location: "
+					+ refereeDetails[5]);
 		}
+
+		// Qualification type and (optional) level, e.g. NJB2
+		String qualifications = refereeDetails[3];
+		int level = 0;
+		if (qualifications.length() >= RefQualification.MAXIMUM)
+			level = Integer.parseInt(qualifications.substring(3));
+		if (level < 0 || level > RefereeStore.MAX_LEVEL)
+			throw new IllegalArgumentException("Invalid qualification level: "
+					+ qualifications);
+		RefQualification qualification = parseQualification(qualifications
+				.substring(0, Math.min(3, qualifications.length())));
+
+		// A new referee lives in a store of his/her own until listed
+		store = new RefereeStore(1);
+		row = store.add(refereeDetails[0], refereeDetails[1],
+				refereeDetails[2], qualification, level,
+				Integer.parseInt(refereeDetails[4]), home,
+				parseTravel(refereeDetails[6]));
+		store.setView(row, this);
+	}
+
+	/**
+	 * Constructor for a view onto a row already held by a store; to be
+	 * called by the store only (see RefereeStore.getView)
+	 * @param store the store holding the referee's details
+	 * @param row the referee's row in the store
+	 */
+	Referee(RefereeStore store, int row) {
+		this.store = store;
+		this.row = row;
 	}
 
 	/**
@@ -113,7 +116,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return first name of this referee
 	 */
 	public String getFirstName() {
-		return this.firstName;
+		return store.getFirstName(row);
 	}
 
 	/**
@@ -121,7 +124,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return last name of this referee
 	 */
 	public String getLastName() {
-		return this.lastName;
+		return store.getLastName(row);
 	}
 
 	/**
@@ -129,7 +132,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return three character qualification type
 	 */
 	public RefQualification getQualification() {
-		return qualification;
+		return store.getQualification(row);
 	}
 
 	/**
@@ -137,7 +140,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return decimal representing the qualification level
 	 */
 	public int getQualificationLevel() {
-		return this.qualificationLevel;
+		return store.getQualificationLevel(row);
 	}
 
 	/**
@@ -145,7 +148,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return id for this referee
 	 */
 	public String getID() {
-		return this.uniqueID;
+		return store.getID(row);
 	}
 
 	/**
@@ -153,7 +156,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return Home Location as Location enum
 	 */
 	public Location getHomeLocation() {
-		return homeLocation;
+		return store.getHomeLocation(row);
 	}
 
 	/**
@@ -161,15 +164,24 @@ public class Referee implements Comparable<Referee> {
 	 * @return number of allocations
 	 */
 	public int getAllocations() {
-		return allocatedMatchesList.size() + preSeasonAllocations;
+		return store.getAllocations(row);
 	}
 
 	/**
-	 * Adds match to referee allocations list
+	 * Counts a match towards the referee's allocations
 	 * @param match specified match object
 	 */
 	public void addMatch(Match match) {
-		allocatedMatchesList.add(match);
+		if (store.addAllocation(row) && store.getList() != null)
+			store.getList().allocated(this);
+	}
+
+	/**
+	 * Returns the referee's eligibility flags (travel, home and Senior bits)
+	 * @return the flags as kept by the referee store
+	 */
+	int getFlags() {
+		return store.getFlags(row);
 	}
 
 	/**
@@ -179,13 +191,12 @@ public class Referee implements Comparable<Referee> {
 	 */
 	public String getTravelLocations() {
 		// Get travel locations for referee and combine to three-letter code
-		String n = visitNorth ? "Y" : "N";
-		String c = visitCentral ? "Y" : "N";
-		String s = visitSouth ? "Y" : "N";
-		String travel = n + c + s;
-		
+		char[] travel = new char[Location.values().length];
+		for (Location location : Location.values())
+			travel[location.ordinal()] = getTravelLocation(location) ? 'Y' : 'N';
+
 		// Return three-letter code
-		return travel;
+		return new String(travel);
 	}
 
 	/**
@@ -195,12 +206,7 @@ public class Referee implements Comparable<Referee> {
 	 * @return - boolean for particular location
 	 */
 	public boolean getTravelLocation(Location location) {
-		if (location.equals(Location.NORTH))
-			return this.visitNorth;
-		else if (location.equals(Location.CENTRAL))
-			return this.visitCentral;
-		else
-			return this.visitSouth;
+		return (store.getTravel(row) & 1 << location.ordinal()) != 0;
 	}
 	
 	/**
@@ -208,47 +214,42 @@ public class Referee implements Comparable<Referee> {
 	 * @param travel the three character String eg. 'YYY'
 	 */
 	public void setTravelLocation(String travel) {
-		// Temporarily store boolean values for each travel option
-		boolean[] visits = new boolean[travel.length()];
-		
-		// Set the travel preference to true or false
-		for (int i = 0; i < travel.length(); i++)
-		    visits[i] = travel.charAt(i) == 'Y';
+		store.setTravel(row, parseTravel(travel));
+		changed();
+	}
+
+	/**
+	 * Converts a three character travel String (North, Central, South) to
+	 * travel bits (1 << Location ordinal)
+	 * @param travel the three character String eg. 'YNY'
+	 * @return the travel bits
+	 */
+	private static int parseTravel(String travel) {
+		if (travel.length() != Location.values().length)
+			throw new IllegalArgumentException("Invalid travel preferences: "
+					+ travel);
 
-		// Store boolean values in instance variables
-		this.visitNorth = visits[0];
-		this.visitCentral = visits[1];
-		this.visitSouth = visits[2];
+		int bits = 0;
+		for (int i = 0; i < travel.length(); i++)
+			if (travel.charAt(i) == 'Y')
+				bits |= 1 << i;
+		return bits;
 	}
 	
 	/**
-	 * Method to set Qualification for Referee
-	 * @param qualifications value of qualification type and/or level
+	 * Converts a qualification type String to the qualification type
+	 * @param qualType the three letter qualification type eg. 'NJB'
+	 * @return the qualification type
 	 */
-	private void setQualifications(String qualifications) {
-		// Set scope of string to store qualification type
-		String qualType;
-
-		// Check if input is the maximum length for a qualification (i.e. is the
-		// qualification type AND level)
-		if (qualifications.length() < RefQualification.MAXIMUM)
-			// Input only contains type
-			qualType = qualifications;
-		else {
-			// Input contains type and level
-			qualType = qualifications.substring(0, 3);
-			Integer qualLevel = Integer.parseInt(qualifications.substring(3));
-			setQualificationLevel(qualLevel);
-		}
-		
-		// Set qualification type accordingly
+	private static RefQualification parseQualification(String qualType) {
 		switch (qualType.trim().toUpperCase()) {
 		case "NJB":
-			this.qualification = RefQualification.NJB;
-			break;
+			return RefQualification.NJB;
 		case "IJB":
-			this.qualification = RefQualification.IJB;
-			break;
+			return RefQualification.IJB;
+		default:
+			throw new IllegalArgumentException("Unknown qualification: "
+					+ qualType);
 		}
 	}
 	
@@ -257,7 +258,8 @@ public class Referee implements Comparable<Referee> {
 	 * @param qualification
 	 */
 	public void setQualification(RefQualification qualification) {
-		this.qualification = qualification;
+		store.setQualification(row, qualification);
+		changed();
 	}
 
 	/**
@@ -265,15 +267,82 @@ public class Referee implements Comparable<Referee> {
 	 * @param qualification full qualification String eg. IJB1
 	 */
 	public void setQualificationLevel(int qualification) {
-		this.qualificationLevel = qualification;
+		store.setQualificationLevel(row, qualification);
+		changed();
 	}
 	
+	/**
+	 * Sets all details of the referee which can be edited at once, checking
+	 * them all before any is changed
+	 * @param qualification the qualification type (NJB/IJB)
+	 * @param level the qualification level
+	 * @param home the home location
+	 * @param travel the three character travel preferences eg. 'YNY'
+	 * @throws IllegalArgumentException if a detail is not valid (none is
+	 * changed then)
+	 */
+	void edit(RefQualification qualification, int level, Location home,
+			String travel) {
+		int travelBits = parseTravel(travel);
+		if (qualification == null || home == null)
+			throw new IllegalArgumentException("Missing referee details");
+		if (level < 0 || level > RefereeStore.MAX_LEVEL)
+			throw new IllegalArgumentException("Invalid qualification level: "
+					+ level);
+		store.setQualification(row, qualification);
+		store.setQualificationLevel(row, level);
+		store.setHomeLocation(row, home);
+		store.setTravel(row, travelBits);
+		changed();
+	}
+
 	/**
 	 * Sets the home location of a referee to a given location
 	 * @param location
 	 */
 	public void setHomeLocation(Location location) {
-		this.homeLocation = location;
+		store.setHomeLocation(row, location);
+		changed();
+	}
+
+	/**
+	 * Returns the store holding the referee's details
+	 * @return the referee's store
+	 */
+	RefereeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns the referee's row in his/her store
+	 * @return the row
+	 */
+	int getRow() {
+		return row;
+	}
+
+	/**
+	 * Moves the referee's details into another store (e.g. the store of the
+	 * list he/she is added to), freeing the old row
+	 * @param target the store to move to
+	 */
+	void moveTo(RefereeStore target) {
+		if (target == store)
+			return;
+		int newRow = target.copy(store, row);
+		store.remove(row);
+		store = target;
+		row = newRow;
+		store.setView(row, this);
+	}
+
+	/**
+	 * Tells the list of the referee's store (if any) that the referee's
+	 * details changed
+	 */
+	private void changed() {
+		if (store.getList() != null)
+			store.getList().update(this);
 	}
 	
 	/**
@@ -1,14 +1,19 @@
 package javaball.model;
 
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.swing.JOptionPane;
 
 import javaball.enums.Location;
 import javaball.enums.MatchLevel;
@@ -19,6 +24,10 @@ import javaball.enums.MatchLevel;
  * <p>
  * Aggregation class for all available and registered referees
  * <p>
+ * The referees' details are held by a column store, and the list and its
+ * indexes refer to the referees by their rows in the store; Referee objects
+ * are only created as views of rows when handed out.
+ * <p>
  * University of Glasgow
  * MSc/PGDip Information Technology/Software Development
  * Team Project 2014/15
@@ -34,18 +43,106 @@ import javaball.enums.MatchLevel;
 public class RefereeList implements Iterable<Referee> {
 
 	/** The name of the referee input file */
-	private static final String INPUT_FILE = "RefereesIn.txt";
+	public static final String INPUT_FILE = "RefereesIn.txt";
+
+	/** Number of malformed input lines listed when reporting them */
+	private static final int MAX_REPORTED = 10;
 
-	/** Maximum number of listed referees */
+	/** Default maximum number of listed referees */
 	public final static int MAX_REFEREES = 12;
 
-	/** List of all registered referees */
-	private final ArrayList<Referee> listedReferees;
+	/** Travel tiers of a referee relative to a match area */
+	static final int LOCAL = 0, ADJACENT = 1, OTHER = 2, TIERS = 3;
+
+	/** Qualification level not allowed to referee Senior matches */
+	static final int UNSUITABLE_SENIOR_LEVEL = 1;
+
+	/** Compares referees by their total number of allocations */
+	static final Comparator<Referee> BY_ALLOCATIONS = new Comparator<Referee>() {
+		@Override
+		public int compare(Referee ref1, Referee ref2) {
+			return Integer.compare(ref1.getAllocations(),
+					ref2.getAllocations());
+		}
+	};
+
+	/** Referee cap to be used for rosters without a size limit */
+	public final static int UNLIMITED = Integer.MAX_VALUE;
+
+	/** Receives the problems found while loading, and ignores them */
+	private static final LoadListener IGNORE_WARNINGS = new LoadListener() {
+		@Override
+		public void loadWarning(String message) {
+		}
+	};
+
+	/** Maximum number of referees this list accepts */
+	private final int maxReferees;
+
+	/** Column store holding the details of all registered referees */
+	private final RefereeStore store;
+
+	/** The rows of all registered referees, ordered by ID */
+	private final RowOrder order;
+
+	/** Number of changes of the order (to detect iterators left behind) */
+	private int changes;
+
+	/** Lookup indexes: rows by normalised ID and by normalised full name */
+	private final HashMap<String, Integer> idIndex;
+	private final HashMap<String, int[]> nameIndex;
 
-	/** Default constructor */
+	/** Prefix index of IDs and names for type-ahead search */
+	private final PrefixIndex prefixIndex;
+
+	/** Trigram index of full names for finding misspelt names */
+	private final TrigramIndex trigramIndex;
+
+	/** Suitable referees per match area, level and tier by allocations */
+	private final AllocationIndex allocationIndex;
+
+	/** Statistics of the listed referees' allocations */
+	private final AllocationStatistics statistics;
+
+	/** Number of listed referees per pair of initials (for ID creation) */
+	private final HashMap<String, Integer> initialsCount;
+
+	/** Whether restored referees are not yet in the indexes above */
+	private boolean unindexed;
+
+	/**
+	 * Default constructor reading the referee input file, ignoring any
+	 * problems (whatever could be read is listed)
+	 */
 	public RefereeList() {
-		this.listedReferees = new ArrayList<>();
-		initFromFile(listedReferees);
+		this(IGNORE_WARNINGS);
+	}
+
+	/**
+	 * Constructor reading the referee input file
+	 * @param listener receives the problems found
+	 */
+	public RefereeList(LoadListener listener) {
+		this(MAX_REFEREES);
+		initFromFile(listener);
+	}
+
+	/**
+	 * Constructor for an empty referee list with a given capacity
+	 * @param maxReferees the maximum number of referees (or UNLIMITED)
+	 */
+	public RefereeList(int maxReferees) {
+		this.maxReferees = maxReferees;
+		this.store = new RefereeStore(Math.min(maxReferees, MAX_REFEREES));
+		this.order = new RowOrder(store);
+		this.idIndex = new HashMap<>();
+		this.nameIndex = new HashMap<>();
+		this.prefixIndex = new PrefixIndex(this);
+		this.trigramIndex = new TrigramIndex(this);
+		this.initialsCount = new HashMap<>();
+		this.allocationIndex = new AllocationIndex(store);
+		this.statistics = new AllocationStatistics();
+		store.setList(this);
 	}
 
 	/**
@@ -56,19 +153,97 @@ public class RefereeList implements Iterable<Referee> {
 	 */
 	public boolean add(Referee ref) {
 		// Test if another referee may be added
-		if (listedReferees.size() < MAX_REFEREES)
-			return listedReferees.add(ref);
+		if (order.size() < maxReferees)
+			return insert(ref);
 		else
 			return false;
 	}
 
+	/**
+	 * Adds a referee regardless of the capacity, rejecting duplicate IDs
+	 * @param ref the Referee Object to be registered
+	 * @return indication of successful referee registration
+	 */
+	private boolean insert(Referee ref) {
+		if (order.find(ref.getID()) >= 0)
+			return false;
+		indexRestored();
+
+		// Move the referee's details into the list's column store
+		ref.moveTo(store);
+		order.add(ref.getRow());
+		changes++;
+		register(ref.getRow());
+		allocationIndex.add(ref.getRow());
+		return true;
+	}
+
+	/**
+	 * Indexes a listed row of the list's store (except for the allocation
+	 * index) and counts its allocations
+	 * @param row the row of the referee to be registered
+	 */
+	private void register(int row) {
+		index(row);
+		statistics.add(store.getAllocations(row));
+	}
+
 	/**
 	 * Removes a referee from the lost of registered referees
 	 * @param ref the Referee Object to be removed from the list
 	 * @return indication of successful referee removal
 	 */
 	public boolean remove(Referee ref) {
-		return listedReferees.remove(ref);
+		// Only remove the referee if it is the one listed under its ID
+		// (removed referees have stores of their own)
+		if (ref.getStore() != store || order.find(ref.getID()) != ref.getRow())
+			return false;
+		indexRestored();
+
+		int row = ref.getRow();
+		order.remove(row);
+		changes++;
+
+		// Drop the referee's index entries
+		unindex(row);
+		allocationIndex.remove(row);
+		statistics.remove(store.getAllocations(row));
+
+		// The removed referee keeps his/her details in a store of his/her own
+		ref.moveTo(new RefereeStore(1));
+		return true;
+	}
+
+	/**
+	 * Refreshes the indexes of a referee whose allocations, qualification,
+	 * home or travel preferences have changed; called by the referee itself.
+	 * IDs and names cannot be edited, so the lookup indexes stay valid.
+	 * @param ref the changed referee
+	 */
+	void update(Referee ref) {
+		if (ref.getStore() == store)
+			allocationIndex.update(ref.getRow());
+	}
+
+	/**
+	 * Refreshes the allocation statistics and index of a referee allocated
+	 * to one more match; called by the referee itself
+	 * @param ref the allocated referee
+	 */
+	void allocated(Referee ref) {
+		if (ref.getStore() == store) {
+			statistics.allocated(ref.getAllocations());
+			allocationIndex.update(ref.getRow());
+		}
+	}
+
+	/**
+	 * Returns the statistics of the listed referees' allocations, kept up to
+	 * date as referees are added, removed and allocated
+	 * @return a copy of the statistics, which does not change
+	 */
+	public AllocationStatistics getStatistics() {
+		return statistics.copy();
 	}
 
 	/**
@@ -76,15 +251,34 @@ public class RefereeList implements Iterable<Referee> {
 	 * @return the number of listed referees (int)
 	 */
 	public int size() {
-		return listedReferees.size();
+		return order.size();
+	}
+
+	/**
+	 * Returns the maximum number of referees this list accepts
+	 * @return the referee cap (UNLIMITED if there is none)
+	 */
+	public int getMaxReferees() {
+		return maxReferees;
 	}
 
 	/**
-	 * Returns a list of all registered referees
+	 * Returns a list of all registered referees ordered by ID
 	 * @return an array list containing referees
 	 */
 	public ArrayList<Referee> getReferees() {
-		return listedReferees;
+		ArrayList<Referee> refs = new ArrayList<>(order.size());
+		for (Referee ref : this)
+			refs.add(ref);
+		return refs;
+	}
+
+	/**
+	 * Returns the rows of all registered referees in the list's store
+	 * @return a copy of the rows, ordered by ID
+	 */
+	int[] getRows() {
+		return order.toArray();
 	}
 
 	/**
@@ -93,36 +287,130 @@ public class RefereeList implements Iterable<Referee> {
 	 * @return the referee if found (otherwise null)
 	 */
 	public Referee getReferee(String id) {
-		// find referee with desired ID
-		for (Referee ref : listedReferees) {
-			// normalise string (lower case)
-			String refID = ref.getID().toLowerCase();
-			
-			// if ID found, return the referee
-			if (refID.equals(id))
-				return ref;
-		}
-		
-		// if not found return null
-		return null;
+		// find referee with desired ID (normalised to lower case)
+		indexRestored();
+		Integer row = idIndex.get(id.toLowerCase());
+		return row == null ? null : store.getView(row);
 	}
 
 	/**
-	 * Linear search for a referee which has a matching first and last name
+	 * Hash lookup for a referee which has a matching first and last name
 	 * @param fname the first name of the desired referee
 	 * @param lname the last name of the desired referee
 	 * @return the desired referee if existent
 	 */
 	public Referee getReferee(String fname, String lname) {
-		for (Referee ref : listedReferees) {
-			// return found referee if both first and last name match
-			if (ref.getFirstName().toLowerCase().equals(fname)
-					&& ref.getLastName().toLowerCase().equals(lname))
-				return ref;
+		// return the first listed referee if both first and last name match
+		indexRestored();
+		int[] namesakes = nameIndex.get(nameKey(fname, lname));
+		return namesakes == null ? null : store.getView(namesakes[0]);
+	}
+
+	/**
+	 * Returns the referees whose ID, first name or last name starts with a
+	 * given prefix (ignoring case), or whose first and last name start with
+	 * the two words of the prefix
+	 * @param prefix the beginning of an ID or name, e.g. "dg", "gr" or "d g"
+	 * @param max the maximum number of referees to be returned
+	 * @return the referees found, ID matches first, then first and last name
+	 * matches, each in alphabetical order
+	 */
+	public ArrayList<Referee> findReferees(String prefix, int max) {
+		indexRestored();
+		return prefixIndex.find(prefix, max);
+	}
+
+	/**
+	 * Returns the referees whose full names are most similar to a query,
+	 * e.g. a misspelt name such as "dave grey" for Dave Gray
+	 * @param query the name searched for (first and last name in any order)
+	 * @param limit the maximum number of referees to be returned
+	 * @return the referees whose names share enough of the query's three
+	 * letter sequences, the most similar first
+	 */
+	public ArrayList<Referee> search(String query, int limit) {
+		indexRestored();
+		return trigramIndex.search(query, limit);
+	}
+
+	/**
+	 * Adds a listed row to the ID and name indexes
+	 * @param row the row of the referee to be indexed
+	 */
+	private void index(int row) {
+		String id = store.getID(row);
+		idIndex.put(id.toLowerCase(), row);
+		prefixIndex.add(row);
+		trigramIndex.add(row);
+
+		// Several referees may share a full name, so names map to rows
+		String name = nameKey(store.getFirstName(row), store.getLastName(row));
+		int[] namesakes = nameIndex.get(name);
+		if (namesakes == null)
+			nameIndex.put(name, new int[] {row});
+		else if (indexOf(namesakes, row) < 0) {
+			namesakes = Arrays.copyOf(namesakes, namesakes.length + 1);
+			namesakes[namesakes.length - 1] = row;
+			nameIndex.put(name, namesakes);
+		}
+
+		String initials = id.substring(0, 2);
+		Integer count = initialsCount.get(initials);
+		initialsCount.put(initials, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Removes a listed row from the ID and name indexes
+	 * @param row the row of the referee to be removed from the indexes
+	 */
+	private void unindex(int row) {
+		String id = store.getID(row).toLowerCase();
+		Integer indexed = idIndex.get(id);
+		if (indexed != null && indexed == row) {
+			idIndex.remove(id);
+			prefixIndex.remove(row);
+			trigramIndex.remove(row);
+		}
+
+		String name = nameKey(store.getFirstName(row), store.getLastName(row));
+		int[] namesakes = nameIndex.get(name);
+		int i = namesakes == null ? -1 : indexOf(namesakes, row);
+		if (i >= 0 && namesakes.length == 1)
+			nameIndex.remove(name);
+		else if (i >= 0) {
+			int[] others = new int[namesakes.length - 1];
+			System.arraycopy(namesakes, 0, others, 0, i);
+			System.arraycopy(namesakes, i + 1, others, i, others.length - i);
+			nameIndex.put(name, others);
 		}
-		
-		// if not found return null
-		return null;
+
+		String initials = store.getID(row).substring(0, 2);
+		Integer count = initialsCount.get(initials);
+		if (count != null && count > 1)
+			initialsCount.put(initials, count - 1);
+		else
+			initialsCount.remove(initials);
+	}
+
+	/**
+	 * Returns the position of a row among others
+	 * @return the position (-1 if not found)
+	 */
+	private static int indexOf(int[] rows, int row) {
+		for (int i = 0; i < rows.length; i++)
+			if (rows[i] == row)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Normalises a full name to be used as a name index key
+	 * @param fname the first name
+	 * @param lname the last name
+	 * @return the lower case full name
+	 */
+	private static String nameKey(String fname, String lname) {
+		return fname.toLowerCase() + " " + lname.toLowerCase();
 	}
 
 	/**
@@ -132,148 +420,199 @@ public class RefereeList implements Iterable<Referee> {
 	 * @return ArrayList with matching referees
 	 */
 	public ArrayList<Referee> getReferees(Location location, boolean home) {
-		// List to hold referees after filtering
-		ArrayList<Referee> filteredReferees = new ArrayList<Referee>();
+		// Test the home or travel flag of the location
+		return filter(home ? RefereeStore.homeBit(location)
+				: 1 << location.ordinal());
+	}
 
-		// Check whether provided is asking for home or travel locations
-		if (home) {
-			// Add all referees with the home location
-			for (Referee ref : listedReferees) {
-				if (ref.getHomeLocation().equals(location))
-					filteredReferees.add(ref);
-			}
-		} else {
-			// Add all referees with the desired travel preference
-			for (Referee ref : listedReferees) {
-				if (ref.getTravelLocation(location))
-					filteredReferees.add(ref);
-			}
-		}
+	/**
+	 * Returns all referees eligible for matches of a given area and level
+	 * (travelling there and, for Senior matches, not of level 1), testing
+	 * the eligibility flags of each referee with a single mask
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @return the eligible referees ordered by ID
+	 */
+	public ArrayList<Referee> getEligibleReferees(Location area,
+			MatchLevel level) {
+		return filter(RefereeStore.eligibilityMask(area, level));
+	}
 
-		// Return ArrayList with referees having the desired properties
+	/**
+	 * Returns the referees having all of the given eligibility flags, with a
+	 * single AND and compare per row of the store's flags column (views are
+	 * only created for the matching rows)
+	 * @param mask the required flags
+	 * @return the matching referees ordered by ID
+	 */
+	private ArrayList<Referee> filter(int mask) {
+		ArrayList<Referee> filteredReferees = new ArrayList<Referee>();
+		for (int b = 0; b < order.blocks(); b++) {
+			int[] rows = order.block(b);
+			for (int i = 0; i < order.blockSize(b); i++)
+				if ((store.getFlags(rows[i]) & mask) == mask)
+					filteredReferees.add(store.getView(rows[i]));
+		}
 		return filteredReferees;
 	}
 
 	/**
-	 * Returns an array of the two most suitable referees for any given match
+	 * Returns the k most suitable referees for a given match (ordered by
+	 * tier, then allocations) from the allocation index
+	 * @param match the match which requires referees
+	 * @param k the number of referees wanted
+	 * @return up to k referees, the most suitable first
+	 */
+	public ArrayList<Referee> getSuitableReferees(Match match, int k) {
+		indexRestored();
+		return allocationIndex.getSuitableReferees(match.getArea(),
+				match.getLevel(), k);
+	}
+
+	/**
+	 * Returns the allocation index of the listed referees
+	 * @return the allocation index
+	 */
+	AllocationIndex getAllocationIndex() {
+		indexRestored();
+		return allocationIndex;
+	}
+
+	/**
+	 * Returns all referees suitable for a given match ordered by suitability
+	 * (local, adjacent, then remaining referees, each ascending by
+	 * allocations); referees already allocated to the match lead the list, so
+	 * the ranking reads as it did when the match was allocated
 	 * @param match the match which requires two referees
-	 * @return an array of the two most suitable referees
+	 * @return the list of suitable referees, the most suitable first
 	 */
 	public ArrayList<Referee> getSuitableReferees(Match match) {
-		// Get all referees which travel to the match area
-		ArrayList<Referee> availableReferees = getReferees(match.getArea(),
-				false);
-
-		// Remove non-senior referees if the match requires senior qualification
-		if (match.getLevel().equals(MatchLevel.SENIOR))
-			seniorRefereesOnly(availableReferees);
-
-		// Create temporary list of local referees
-		ArrayList<Referee> localReferees = new ArrayList<Referee>();
-		// Linear search over all remaining referees
-		for (int i = 0; i < availableReferees.size();) {
-			// Retrieve referee at position i
-			Referee ref = availableReferees.get(i);
-			// Check if he/she is local to the match
-			if (ref.getHomeLocation().equals(match.getArea())) {
-				// If he/she is local:
-				availableReferees.remove(i); // Remove from available list
-				localReferees.add(ref); // Add to local list
-			} else
-				// If referee is not local increment counter (only increment if
-				// referee is not local as if a referee is local he/she is
-				// removed from the list of available referees and the next
-				// referee is now at the position the removed referee was in)
-				i++;
-		}
-
-		// Create temporary list of adjacent referees
-		ArrayList<Referee> adjacentReferees = new ArrayList<Referee>();
-		// Linear search over all remaining referees
-		for (int i = 0; i < availableReferees.size();) {
-			// Retrieve referee at position i
-			Referee ref = availableReferees.get(i);
-			// Check if he/she is adjacent to the match (i.e. if the match is
-			// held in CENTRAL, then all referees not living in CENTRAL are
-			// adjacent; if the match is not held in CENTRAL then all referees
-			// from CENTRAL are adjacent)
-			if ((match.getArea().equals(Location.CENTRAL) && !ref
-					.getHomeLocation().equals(Location.CENTRAL))
-					|| (!match.getArea().equals(Location.CENTRAL) && ref
-							.getHomeLocation().equals(Location.CENTRAL))) {
-				// If he/she is adjacent:
-				availableReferees.remove(i); // Remove from available list
-				adjacentReferees.add(ref); // Add to adjacent list
-			} else {
-				// If referee is not adjacent increment counter (see above)
-				i++;
+		// Referees already allocated to the match
+		ArrayList<Referee> allocatedReferees = new ArrayList<Referee>(2);
+		int[] allocatedRows = new int[2];
+		int allocated = 0;
+		for (Referee ref : match.getReferees())
+			if (ref != null) {
+				allocatedReferees.add(ref);
+				if (ref.getStore() == store)
+					allocatedRows[allocated++] = ref.getRow();
 			}
-		}
-
-		// Create new comparator to be able to compare referees by their total
-		// number of allocations
-		Comparator<Referee> byAllocations = new Comparator<Referee>() {
-			@Override
-			public int compare(Referee ref1, Referee ref2) {
-				int allocRef1 = ref1.getAllocations();
-				int allocRef2 = ref2.getAllocations();
-
-				if (allocRef1 < allocRef2)
-					return -1;
-				else if (allocRef1 == allocRef2)
-					return 0;
-				else
-					return 1;
+		allocatedRows = Arrays.copyOf(allocatedRows, allocated);
+
+		// Flags for eligibility and for the local and adjacent tiers
+		Location area = match.getArea();
+		int mask = RefereeStore.eligibilityMask(area, match.getLevel());
+		int local = RefereeStore.homeBit(area);
+		int adjacent = area == Location.CENTRAL ? RefereeStore.HOME_MASK
+				: RefereeStore.homeBit(Location.CENTRAL);
+
+		// Sort all other suitable referees into their tiers in one pass over
+		// the store's flags, creating views for the suitable rows only
+		ArrayList<ArrayList<Referee>> tiers = new ArrayList<>(TIERS);
+		for (int i = 0; i < TIERS; i++)
+			tiers.add(new ArrayList<Referee>());
+		for (int b = 0; b < order.blocks(); b++) {
+			int[] rows = order.block(b);
+			for (int i = 0; i < order.blockSize(b); i++) {
+				int row = rows[i];
+				int flags = store.getFlags(row);
+				if ((flags & mask) != mask
+						|| indexOf(allocatedRows, row) >= 0)
+					continue;
+				int tier = (flags & local) != 0 ? LOCAL
+						: (flags & adjacent) != 0 ? ADJACENT : OTHER;
+				tiers.get(tier).add(store.getView(row));
 			}
-		};
-
-		// Sort the local, adjacent, and remaining referees ascending by allocs.
-		Collections.sort(localReferees, byAllocations);
-		Collections.sort(adjacentReferees, byAllocations);
-		Collections.sort(availableReferees, byAllocations);
+		}
 
-		// Concatenate the local, adjacent, and remaining referees into a new
-		// list which is now sorted by suitability for a given match
-		ArrayList<Referee> suitableReferees = new ArrayList<Referee>();
-		suitableReferees.addAll(localReferees);
-		suitableReferees.addAll(adjacentReferees);
-		suitableReferees.addAll(availableReferees);
+		// Concatenate the allocated, local, adjacent, and remaining referees,
+		// each tier sorted ascending by allocations (stable, so ties stay in
+		// ID order)
+		ArrayList<Referee> suitableReferees = allocatedReferees;
+		for (ArrayList<Referee> tier : tiers) {
+			Collections.sort(tier, BY_ALLOCATIONS);
+			suitableReferees.addAll(tier);
+		}
 
 		// Return the sorted list
 		return suitableReferees;
 	}
 
 	/**
-	 * Removes all non-Senior-qualified referees from a list of referees
-	 * @param referees the ArrayList to be filtered for Senior-qual. referees
+	 * Checks whether a referee may referee a given match: he/she has to travel
+	 * to the match area, and Senior matches exclude level 1 referees
+	 * @param ref the referee in question
+	 * @param match the match in question
+	 * @return whether or not the referee is suitable for the match
 	 */
-	private void seniorRefereesOnly(ArrayList<Referee> referees) {
-		// Define unsuitable qualification level
-		int unsuitableQualLevel = 1;
+	static boolean isSuitable(Referee ref, Match match) {
+		return isSuitable(ref, match.getArea(), match.getLevel());
+	}
 
-		// Remove unqualified referees
-		for (int i = 0; i < referees.size();) {
-			// Retrieve next referee
-			Referee ref = referees.get(i);
+	/**
+	 * Checks whether a referee may referee matches of a given area and level
+	 * @param ref the referee in question
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @return whether or not the referee is suitable for such matches
+	 */
+	static boolean isSuitable(Referee ref, Location area, MatchLevel level) {
+		return isSuitable(ref.getFlags(), area, level);
+	}
 
-			// Check the referee's qualification level for suitability
-			if (ref.getQualificationLevel() == unsuitableQualLevel) {
-				referees.remove(i);
-			} else
-				// Progress counter only if the current referee has not been
-				// removed, otherwise referees will be skipped as the
-				// ArrayList of suitable referees has been shortened
-				i++;
-		}
+	/**
+	 * Checks whether a referee of given eligibility flags may referee
+	 * matches of a given area and level
+	 * @param flags the referee's flags as kept by the referee store
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @return whether or not the referee is suitable for such matches
+	 */
+	static boolean isSuitable(int flags, Location area, MatchLevel level) {
+		int mask = RefereeStore.eligibilityMask(area, level);
+		return (flags & mask) == mask;
+	}
+
+	/**
+	 * Returns the travel tier of a referee for a match area: LOCAL if the
+	 * referee lives there, ADJACENT if the match is held in CENTRAL and the
+	 * referee does not live there or the referee lives in CENTRAL and the
+	 * match is not held there, otherwise OTHER
+	 * @param ref the referee in question
+	 * @param area the area the match is held in
+	 * @return the tier (lower is more suitable)
+	 */
+	static int getTier(Referee ref, Location area) {
+		return getTier(ref.getFlags(), area);
+	}
+
+	/**
+	 * Returns the travel tier of a referee of given eligibility flags for a
+	 * match area (see getTier(Referee, Location))
+	 * @param flags the referee's flags as kept by the referee store
+	 * @param area the area the match is held in
+	 * @return the tier (lower is more suitable)
+	 */
+	static int getTier(int flags, Location area) {
+		if ((flags & RefereeStore.homeBit(area)) != 0)
+			return LOCAL;
+		else if (area == Location.CENTRAL
+				|| (flags & RefereeStore.homeBit(Location.CENTRAL)) != 0)
+			return ADJACENT;
+		else
+			return OTHER;
 	}
 
 	/**
-	 * Returns the element at the specified position in this list.
+	 * Returns the element at the specified position in this list (ordered by
+	 * ID). Walks the list's blocks, so prefer iteration or an ID lookup.
 	 * @param index index of the element to return
 	 * @return the element at the specified position
 	 */
 	public Referee get(int index) {
-		return listedReferees.get(index);
+		if (index < 0 || index >= order.size())
+			throw new IndexOutOfBoundsException("Index: " + index);
+		return store.getView(order.get(index));
 	}
 
 	/**
@@ -289,62 +628,237 @@ public class RefereeList implements Iterable<Referee> {
 		String refID = String.format("%c%c", id1, id2);
 
 		// Add number to ID according to previous occurrences of same initials
-		int idNumber = 1;
-		for (Referee ref : listedReferees) {
-			if (ref.getID().substring(0, 2).equals(refID)) {
-				idNumber++;
-			}
-		}
+		indexRestored();
+		Integer occurrences = initialsCount.get(refID);
+		int idNumber = occurrences == null ? 1 : occurrences + 1;
 
-		// Combine initials with number for referee ID
+		// Skip numbers still taken after earlier removals
 		String refereeID = String.format("%s%d", refID, idNumber);
+		while (order.find(refereeID) >= 0)
+			refereeID = String.format("%s%d", refID, ++idNumber);
 		return refereeID;
 	}
 
 	/**
 	 * Reads in provided file and populates RefereeList
-	 * @param refList the RefereeList to be populated
-	 */
-	private void initFromFile(ArrayList<Referee> refList) {
-		// Initialise FileReader with input file and initialise scanner
-		try (FileReader refereeFile = new FileReader(INPUT_FILE)) {
-			try (Scanner refScanner = new Scanner(refereeFile)) {
-
-				// Read every line of input file and create referees
-				while (refScanner.hasNextLine()) {
-					String newReferee = refScanner.nextLine();
-					Referee referee = new Referee(newReferee);
-					refList.add(referee);
-				}
-			}
+	 * @param listener receives the problems found
+	 */
+	private void initFromFile(LoadListener listener) {
+		String warning = null;
+		try {
+			ArrayList<String> errors = load(INPUT_FILE);
+
+			// Tell the user about the lines which were skipped
+			if (!errors.isEmpty())
+				warning = INPUT_FILE + " contains malformed lines which were "
+						+ "skipped:\n" + summary(errors);
 		} catch (IOException e) {
-			JOptionPane.showMessageDialog(null,
-					INPUT_FILE + " could not be read.", "Error",
-					JOptionPane.ERROR_MESSAGE);
+			warning = INPUT_FILE + " could not be read.";
+		}
+
+		if (warning != null)
+			listener.loadWarning(warning);
+	}
+
+	/**
+	 * Reads a referee file (one referee per line, e.g. "DG1 Dave Gray NJB2 3
+	 * Central NYY") and adds its referees regardless of the capacity.
+	 * Malformed lines and duplicate IDs are skipped.
+	 * @param fileName the name of the file to be read
+	 * @return a description of each skipped line, with its line number
+	 * @throws IOException if the file cannot be read
+	 */
+	public ArrayList<String> load(String fileName) throws IOException {
+		return load(fileName, null);
+	}
+
+	/**
+	 * Reads a referee file like load(String), parsing chunks of the file in
+	 * parallel. The referees are added in file order, so of several referees
+	 * with the same ID the first one is kept, as when reading sequentially.
+	 * @param fileName the name of the file to be read
+	 * @param pool the pool to parse on (null to read on the calling thread)
+	 * @return a description of each skipped line, with its line number
+	 * @throws IOException if the file cannot be read
+	 */
+	public ArrayList<String> load(String fileName, ForkJoinPool pool)
+			throws IOException {
+		ArrayList<RefereeParser> chunks = RefereeParser.parse(
+				Paths.get(fileName), pool);
+		indexRestored();
+
+		// Merge the chunks in file order
+		TreeMap<Integer, String> errors = new TreeMap<>();
+		int first = store.rows();
+		int linesBefore = 0;
+		for (RefereeParser chunk : chunks) {
+			RefereeStore rows = chunk.getStore();
+			for (int row : append(rows))
+				errors.put(linesBefore + chunk.getLine(row),
+						"duplicate ID '" + rows.getID(row) + "'");
+			for (Map.Entry<Integer, String> error : chunk.getErrors()
+					.entrySet())
+				errors.put(linesBefore + error.getKey(), error.getValue());
+			linesBefore += chunk.getLineCount();
+		}
+
+		// Make the new referees available for allocation in one go (the
+		// chunks were appended to the store, skipped rows are free)
+		ArrayList<Integer> added = new ArrayList<>(store.rows() - first);
+		for (int row = first; row < store.rows(); row++)
+			if (store.getID(row) != null)
+				added.add(row);
+		allocationIndex.addAll(added, pool);
+
+		ArrayList<String> report = new ArrayList<>(errors.size());
+		for (Map.Entry<Integer, String> error : errors.entrySet())
+			report.add("Line " + error.getKey() + ": " + error.getValue());
+		return report;
+	}
+
+	/**
+	 * Lists all referees of a store at once (as restored from a snapshot)
+	 * regardless of the capacity. The rows have to be in ascending ID order,
+	 * as a snapshot keeps them; the lookup and allocation indexes are only
+	 * built once they are first needed.
+	 * @param rows the referees' details, one per row in ascending ID order
+	 * @return the row of the first referee in the list's store, the others
+	 * following in order (-1 if the list was not empty, or the IDs are not
+	 * ascending or missing)
+	 */
+	int restore(RefereeStore rows) {
+		if (order.size() > 0)
+			return -1;
+		for (int row = 0; row < rows.rows(); row++)
+			if (rows.getID(row) == null || row > 0
+					&& rows.getID(row - 1).compareTo(rows.getID(row)) >= 0)
+				return -1;
+
+		int base = store.append(rows);
+		int[] restored = new int[rows.rows()];
+		for (int row = 0; row < rows.rows(); row++) {
+			restored[row] = base + row;
+			statistics.add(store.getAllocations(base + row));
+		}
+		order.fill(restored, restored.length);
+		changes++;
+		unindexed = true;
+		return base;
+	}
+
+	/**
+	 * Returns the column store holding the listed referees' details; rows
+	 * without an ID are free
+	 * @return the list's store
+	 */
+	RefereeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Adds referees listed by restore() to the lookup and allocation indexes.
+	 * Changes made to them before are picked up, as their current details
+	 * are indexed.
+	 */
+	void indexRestored() {
+		if (!unindexed)
+			return;
+		unindexed = false;
+		prefixIndex.invalidate();
+		trigramIndex.invalidate();
+		ArrayList<Integer> rows = new ArrayList<>(order.size());
+		for (int row : order.toArray()) {
+			index(row);
+			rows.add(row);
+		}
+		allocationIndex.addAll(rows, null);
+	}
+
+	/**
+	 * Appends the rows of another store to the list's store and lists them,
+	 * skipping rows whose ID is already listed (or appears in an earlier
+	 * row). The referees still have to be added to the allocation index.
+	 * @param rows the referees' details, one per row
+	 * @return the rows (of the other store) skipped as duplicates
+	 */
+	private ArrayList<Integer> append(RefereeStore rows) {
+		int base = store.append(rows);
+
+		// The search indexes are built again when next searched
+		prefixIndex.invalidate();
+		trigramIndex.invalidate();
+
+		// The new rows in ID order, equal IDs in row order
+		ArrayList<Integer> added = new ArrayList<>(rows.rows());
+		for (int row = base; row < base + rows.rows(); row++)
+			if (store.getID(row) != null)
+				added.add(row);
+		Collections.sort(added, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer row1, Integer row2) {
+				return store.getID(row1).compareTo(store.getID(row2));
+			}
+		});
+
+		// Merge them into the listed rows, keeping the first row of an ID
+		ArrayList<Integer> duplicates = new ArrayList<>();
+		int[] listed = order.toArray();
+		int[] merged = new int[listed.length + added.size()];
+		int count = 0, i = 0;
+		for (int row : added) {
+			String id = store.getID(row);
+			while (i < listed.length
+					&& store.getID(listed[i]).compareTo(id) < 0)
+				merged[count++] = listed[i++];
+			if (i < listed.length && store.getID(listed[i]).equals(id)
+					|| count > 0 && store.getID(merged[count - 1]).equals(id))
+				duplicates.add(row - base);
+			else
+				merged[count++] = row;
 		}
+		while (i < listed.length)
+			merged[count++] = listed[i++];
+		order.fill(merged, count);
+		changes++;
+
+		// Free the duplicates' rows, then index the others in row order
+		for (int row : duplicates)
+			store.remove(base + row);
+		for (int row = base; row < base + rows.rows(); row++)
+			if (store.getID(row) != null)
+				register(row);
+		return duplicates;
+	}
+
+	/**
+	 * Joins the first few error descriptions into one message
+	 * @param errors the error descriptions
+	 * @return one line per error (and the number of any further errors)
+	 */
+	private static String summary(ArrayList<String> errors) {
+		StringBuilder summary = new StringBuilder();
+		for (int i = 0; i < Math.min(errors.size(), MAX_REPORTED); i++)
+			summary.append(errors.get(i)).append('\n');
+		if (errors.size() > MAX_REPORTED)
+			summary.append("... and ").append(errors.size() - MAX_REPORTED)
+					.append(" more");
+		return summary.toString();
 	}
 
 	/**
-	 * Sorts the referee list in ascending order by the referee's ID
+	 * Sorts the referee list in ascending order by the referee's ID; the list
+	 * is kept in ID order, so there is nothing left to do
 	 */
 	public void sort() {
-		Collections.sort(listedReferees);
 	}
 
 	/**
-	 * Returns the maximum number of allocations for a registered referee.
+	 * Returns the maximum number of allocations for a registered referee,
+	 * as kept by the allocation statistics
 	 * @return decimal value of max allocations
 	 */
 	public int getMaxAllocation() {
-		// Temporary storage of the current maximum allocations of all referees
-		int max = 0;
-		
-		// Iterate through all referees to find the maximum allocations
-		for (Referee ref : listedReferees)
-			max = ref.getAllocations() > max ? ref.getAllocations() : max;
-			
-		// Return the maximum allocations found
-		return max;
+		return statistics.getMax();
 	}
 
 	/**
@@ -354,6 +868,34 @@ public class RefereeList implements Iterable<Referee> {
 	 */
 	@Override
 	public Iterator<Referee> iterator() {
-		return listedReferees.iterator();
+		// Read-only, so that removals always go through remove()
+		return new Iterator<Referee>() {
+			private final int expected = changes;
+			private int block, next;
+
+			@Override
+			public boolean hasNext() {
+				while (block < order.blocks()
+						&& next == order.blockSize(block)) {
+					block++;
+					next = 0;
+				}
+				return block < order.blocks();
+			}
+
+			@Override
+			public Referee next() {
+				if (changes != expected)
+					throw new ConcurrentModificationException();
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return store.getView(order.block(block)[next++]);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package javaball.model;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Observer of the referees of a ConcurrentModel, told about each referee
+ * which has been added, changed (edited or allocated to a match) or removed.
+ * It is called by the thread which made the change, after the change, in
+ * the order the changes were made by that thread.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public interface RefereeListener {
+
+	/**
+	 * Called after a referee has been added
+	 * @param ref the added referee
+	 */
+	void refereeAdded(Referee ref);
+
+	/**
+	 * Called after a referee's details or allocations have changed
+	 * @param ref the changed referee
+	 */
+	void refereeChanged(Referee ref);
+
+	/**
+	 * Called after a referee has been removed
+	 * @param ref the removed referee
+	 */
+	void refereeRemoved(Referee ref);
+}
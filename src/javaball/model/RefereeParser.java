@@ -0,0 +1,442 @@
+package javaball.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javaball.enums.Location;
+import javaball.enums.RefQualification;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Streaming parser for referee files (one referee per line, e.g. "DG1 Dave
+ * Gray NJB2 3 Central NYY"). The file is split into chunks on line
+ * boundaries, which may be parsed in parallel; each chunk is memory mapped
+ * and tokenised in place into a referee store of its own. Only IDs and names
+ * become Strings (repeated names are shared), everything else is decoded
+ * straight from the bytes. Malformed lines are skipped and reported with
+ * their line numbers.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class RefereeParser {
+
+	/** Largest part of the file mapped at once */
+	private static final int WINDOW = 1 << 30;
+
+	/** Smallest chunk worth parsing on its own thread */
+	private static final int MIN_CHUNK = 1 << 20;
+
+	/** Number of fields per referee line */
+	private static final int FIELDS = 7;
+
+	/** Number of entries of the name cache (a power of two) */
+	private static final int NAME_CACHE = 1 << 14;
+
+	/** Bytes of the home location names, by Location ordinal */
+	private static final byte[][] HOMES = new byte[Location.values().length][];
+	static {
+		for (Location location : Location.values())
+			HOMES[location.ordinal()] = location.toString()
+					.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/** Recently seen names, so that repeated names share one String */
+	private final String[] names = new String[NAME_CACHE];
+
+	/** Field boundaries of the current line */
+	private final int[] starts = new int[FIELDS];
+	private final int[] ends = new int[FIELDS];
+
+	/** The referees parsed from the chunk, in file order */
+	private final RefereeStore store = new RefereeStore(1024);
+
+	/** Line number (within the chunk) of every parsed referee */
+	private int[] lines = new int[1024];
+
+	/** Problems of the malformed lines by line number (within the chunk) */
+	private final TreeMap<Integer, String> errors = new TreeMap<>();
+
+	/** Number of lines parsed */
+	private int lineCount;
+
+	/** Constructor for a parser of one chunk */
+	private RefereeParser() {
+	}
+
+	/**
+	 * Parses a referee file in chunks split on line boundaries; each chunk is
+	 * memory mapped and parsed into a referee store of its own
+	 * @param file the file to be read
+	 * @param pool the pool to parse the chunks on in parallel (or null to
+	 * parse them one after another on the calling thread)
+	 * @return one parser per chunk, in file order
+	 * @throws IOException if the file cannot be read
+	 */
+	static ArrayList<RefereeParser> parse(Path file, ForkJoinPool pool)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			// Aim for one chunk per thread, none larger than a mapped window
+			int threads = pool == null ? 1 : pool.getParallelism();
+			long chunkSize = Math.min(WINDOW,
+					Math.max(MIN_CHUNK, size / threads + 1));
+
+			// Split the file after the first line end following each
+			// chunk size
+			ArrayList<ChunkTask> tasks = new ArrayList<>();
+			long start = 0;
+			while (start < size) {
+				long end = lineEnd(channel, Math.min(size, start + chunkSize));
+				if (end - start > WINDOW)
+					throw new IOException("Line too long near byte " + start);
+				tasks.add(new ChunkTask(channel, start, end));
+				start = end;
+			}
+
+			// Parse the chunks (the channel has to stay open meanwhile)
+			if (pool != null)
+				for (ChunkTask task : tasks)
+					pool.execute(task);
+			ArrayList<RefereeParser> chunks = new ArrayList<>(tasks.size());
+			try {
+				for (ChunkTask task : tasks)
+					chunks.add(pool != null ? task.join() : task.invoke());
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return chunks;
+		}
+	}
+
+	/**
+	 * Returns the position after the first line feed at or after a given
+	 * position minus one (i.e. the position itself if a line ends just
+	 * before it), or the file size if there is none
+	 */
+	private static long lineEnd(FileChannel channel, long position)
+			throws IOException {
+		long size = channel.size();
+		if (position >= size)
+			return size;
+
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long offset = position - 1;
+		while (offset < size) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read < 0)
+				break;
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return offset + i + 1;
+			offset += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the referees parsed from the chunk
+	 * @return a store with one row per referee, in file order
+	 */
+	RefereeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns the line number of a parsed referee within the chunk
+	 * @param row the referee's row in the chunk's store
+	 * @return the line number (starting at 1)
+	 */
+	int getLine(int row) {
+		return lines[row];
+	}
+
+	/**
+	 * Returns the problems of the chunk's malformed lines
+	 * @return the problems by line number within the chunk
+	 */
+	TreeMap<Integer, String> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the number of lines of the chunk
+	 * @return the number of lines
+	 */
+	int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Parses the lines of a buffer up to a given position
+	 * @param buffer the bytes to be parsed
+	 * @param end the position to stop at
+	 */
+	private void parse(ByteBuffer buffer, int end) {
+		int start = 0;
+		while (start < end) {
+			// Find the end of the line (without CR LF)
+			int lineEnd = start;
+			while (lineEnd < end && buffer.get(lineEnd) != '\n')
+				lineEnd++;
+			int next = lineEnd + 1;
+			if (lineEnd > start && buffer.get(lineEnd - 1) == '\r')
+				lineEnd--;
+
+			parseLine(buffer, start, lineEnd, ++lineCount);
+			start = next;
+		}
+	}
+
+	/**
+	 * Parses one line into the chunk's store, or records why it is malformed
+	 */
+	private void parseLine(ByteBuffer buffer, int start, int end, int line) {
+		// Split the line at runs of spaces and tabs
+		int fields = 0;
+		int i = start;
+		while (true) {
+			while (i < end && isSpace(buffer.get(i)))
+				i++;
+			if (i == end)
+				break;
+			if (fields == FIELDS) {
+				error(line, "more than " + FIELDS + " fields");
+				return;
+			}
+			starts[fields] = i;
+			while (i < end && !isSpace(buffer.get(i)))
+				i++;
+			ends[fields++] = i;
+		}
+
+		// Blank lines are skipped
+		if (fields == 0)
+			return;
+		if (fields < FIELDS) {
+			error(line, "expected " + FIELDS + " fields, found " + fields);
+			return;
+		}
+
+		// ID: the initials (used for ID creation) and a number
+		if (ends[0] - starts[0] < 2) {
+			error(line, "invalid ID '" + text(buffer, 0) + "'");
+			return;
+		}
+
+		// Qualification: NJB or IJB, optionally followed by the level
+		RefQualification qualification = qualification(buffer);
+		int level = qualification == null ? -1
+				: number(buffer, starts[3] + 3, ends[3], 0);
+		if (level < 0 || level > RefereeStore.MAX_LEVEL) {
+			error(line, "invalid qualification '" + text(buffer, 3) + "'");
+			return;
+		}
+
+		// Number of allocations
+		int allocations = number(buffer, starts[4], ends[4], -1);
+		if (allocations < 0) {
+			error(line, "invalid allocations '" + text(buffer, 4) + "'");
+			return;
+		}
+
+		// Home location
+		Location home = home(buffer);
+		if (home == null) {
+			error(line, "unknown home location '" + text(buffer, 5) + "'");
+			return;
+		}
+
+		// Travel preferences: Y or N for North, Central and South
+		int travel = travel(buffer);
+		if (travel < 0) {
+			error(line, "invalid travel preferences '" + text(buffer, 6)
+					+ "'");
+			return;
+		}
+
+		int row = store.add(text(buffer, 0), name(buffer, 1),
+				name(buffer, 2), qualification, level, allocations, home,
+				travel);
+		if (row == lines.length)
+			lines = Arrays.copyOf(lines, row * 2);
+		lines[row] = line;
+	}
+
+	/**
+	 * Records a malformed line
+	 */
+	private void error(int line, String problem) {
+		errors.put(line, problem);
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/**
+	 * Returns the qualification type at the start of the qualification field
+	 * (case insensitive), or null if there is none
+	 */
+	private RefQualification qualification(ByteBuffer buffer) {
+		int start = starts[3];
+		if (ends[3] - start < 3 || (buffer.get(start + 1) | 0x20) != 'j'
+				|| (buffer.get(start + 2) | 0x20) != 'b')
+			return null;
+		switch (buffer.get(start) | 0x20) {
+		case 'n':
+			return RefQualification.NJB;
+		case 'i':
+			return RefQualification.IJB;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a non-negative decimal number
+	 * @param empty the value of an empty number
+	 * @return the number, or -1 if it is not a valid int
+	 */
+	private static int number(ByteBuffer buffer, int start, int end,
+			int empty) {
+		if (start == end)
+			return empty;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+			if (value > Integer.MAX_VALUE)
+				return -1;
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Returns the home location named by the home field, or null if unknown
+	 */
+	private Location home(ByteBuffer buffer) {
+		int length = ends[5] - starts[5];
+		for (Location location : Location.values()) {
+			byte[] name = HOMES[location.ordinal()];
+			if (name.length != length)
+				continue;
+			int i = 0;
+			while (i < length && buffer.get(starts[5] + i) == name[i])
+				i++;
+			if (i == length)
+				return location;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the travel bits of the travel field, or -1 if it is invalid
+	 */
+	private int travel(ByteBuffer buffer) {
+		if (ends[6] - starts[6] != Location.values().length)
+			return -1;
+		int travel = 0;
+		for (int i = 0; i < Location.values().length; i++) {
+			byte b = buffer.get(starts[6] + i);
+			if (b == 'Y')
+				travel |= 1 << i;
+			else if (b != 'N')
+				return -1;
+		}
+		return travel;
+	}
+
+	/**
+	 * Returns a field as a new String
+	 */
+	private String text(ByteBuffer buffer, int field) {
+		byte[] bytes = new byte[ends[field] - starts[field]];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(starts[field] + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a name field, reusing the String of an earlier equal name
+	 */
+	private String name(ByteBuffer buffer, int field) {
+		int start = starts[field];
+		int length = ends[field] - start;
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + buffer.get(start + i);
+		int slot = (hash ^ hash >>> 16) & NAME_CACHE - 1;
+
+		// Compare the cached name with the bytes (ASCII names only)
+		String cached = names[slot];
+		if (cached != null && cached.length() == length) {
+			int i = 0;
+			while (i < length && cached.charAt(i) == buffer.get(start + i))
+				i++;
+			if (i == length)
+				return cached;
+		}
+
+		String name = text(buffer, field);
+		names[slot] = name;
+		return name;
+	}
+
+	/**
+	 * Maps and parses one chunk of the file
+	 */
+	private static class ChunkTask extends RecursiveTask<RefereeParser> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+
+		private ChunkTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected RefereeParser compute() {
+			RefereeParser parser = new RefereeParser();
+			try {
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, start, end - start);
+				parser.parse(buffer, (int) (end - start));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return parser;
+		}
+	}
+}
@@ -0,0 +1,500 @@
+package javaball.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.enums.RefQualification;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Column store for referee details: every referee occupies one row, and each
+ * detail is kept in a primitive column instead of a separate object. Names
+ * are dictionary encoded; travel preferences, home location and Senior
+ * eligibility are packed into one byte of flags, qualification type and
+ * level into another. Referee objects
+ * are views onto a row of a store.
+ * <p>
+ * Views are created when asked for and only weakly referenced by the store,
+ * so that a row costs no object unless its referee is in use; while in use,
+ * a row has one view only, so that every holder sees the same referee.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class RefereeStore {
+
+	/** Flag byte: travel bits (1 << ordinal), one home bit (8 << ordinal)
+	 * and whether the referee may referee Senior matches */
+	static final int TRAVEL_MASK = 0x07;
+	private static final int HOME_SHIFT = 3;
+	static final int HOME_MASK = TRAVEL_MASK << HOME_SHIFT;
+	static final int SENIOR = 0x40;
+
+	/** Qualification byte: level bits and the type ordinal above */
+	private static final int LEVEL_MASK = 0x0F;
+	static final int MAX_LEVEL = LEVEL_MASK;
+	private static final int TYPE_SHIFT = 4;
+
+	/** Enum constants by ordinal (values() copies them on every call) */
+	private static final Location[] LOCATIONS = Location.values();
+	private static final RefQualification[] QUALIFICATIONS =
+			RefQualification.values();
+
+	/** Referee IDs per row */
+	private String[] ids;
+
+	/** First and last name codes per row */
+	private int[] firstNames;
+	private int[] lastNames;
+
+	/** Eligibility flags (travel, home location, Senior) per row */
+	private byte[] flags;
+
+	/** Packed qualification type and level per row */
+	private byte[] qualifications;
+
+	/** Total number of allocations per row */
+	private int[] allocations;
+
+	/** The view of each row while in use (null if there is none) */
+	private View[] views;
+
+	/** Queue of the views no longer in use */
+	private final ReferenceQueue<Referee> unused = new ReferenceQueue<>();
+
+	/** The list of the referees held by the store (null if none) */
+	private RefereeList list;
+
+	/** Number of rows in use or freed; rows above are untouched */
+	private int rows;
+
+	/** Freed rows to be reused */
+	private int[] freeRows;
+	private int freeCount;
+
+	/**
+	 * Name dictionary: names by code and codes by name (the latter built
+	 * when first needed by copied or restored stores, null until then)
+	 */
+	private final ArrayList<String> names;
+	private HashMap<String, Integer> nameCodes;
+
+	/**
+	 * Constructor for an empty store
+	 * @param capacity the number of rows to reserve
+	 */
+	RefereeStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		ids = new String[capacity];
+		firstNames = new int[capacity];
+		lastNames = new int[capacity];
+		flags = new byte[capacity];
+		qualifications = new byte[capacity];
+		allocations = new int[capacity];
+		views = new View[capacity];
+		freeRows = new int[0];
+		names = new ArrayList<>();
+		nameCodes = new HashMap<>();
+	}
+
+	/**
+	 * Constructor for a store holding given columns (e.g. read from a
+	 * snapshot); the arrays are taken over, not copied
+	 * @param ids the referee IDs per row
+	 * @param names the name dictionary (names by code)
+	 * @param firstNames the first name codes per row
+	 * @param lastNames the last name codes per row
+	 * @param flags the packed eligibility flags per row
+	 * @param qualifications the packed qualifications per row
+	 * @param allocations the allocations per row
+	 */
+	RefereeStore(String[] ids, String[] names, int[] firstNames,
+			int[] lastNames, byte[] flags, byte[] qualifications,
+			int[] allocations) {
+		this.ids = ids;
+		this.firstNames = firstNames;
+		this.lastNames = lastNames;
+		this.flags = flags;
+		this.qualifications = qualifications;
+		this.allocations = allocations;
+		this.views = new View[ids.length];
+		this.rows = ids.length;
+		this.freeRows = new int[0];
+		this.names = new ArrayList<>(Arrays.asList(names));
+	}
+
+	/**
+	 * Constructor for a copy of another store's rows (without their views),
+	 * e.g. a consistent copy to be written out on another thread while the
+	 * other store keeps changing. The columns are copied in bulk.
+	 * @param other the store to copy
+	 */
+	RefereeStore(RefereeStore other) {
+		int capacity = Math.max(other.rows, 1);
+		ids = Arrays.copyOf(other.ids, capacity);
+		firstNames = Arrays.copyOf(other.firstNames, capacity);
+		lastNames = Arrays.copyOf(other.lastNames, capacity);
+		flags = Arrays.copyOf(other.flags, capacity);
+		qualifications = Arrays.copyOf(other.qualifications, capacity);
+		allocations = Arrays.copyOf(other.allocations, capacity);
+		views = new View[capacity];
+		rows = other.rows;
+		freeRows = Arrays.copyOf(other.freeRows, other.freeCount);
+		freeCount = other.freeCount;
+		names = new ArrayList<>(other.names);
+	}
+
+	/**
+	 * Adds a row with the given details
+	 * @return the new row
+	 */
+	int add(String id, String firstName, String lastName,
+			RefQualification qualification, int level, int allocs,
+			Location home, int travel) {
+		int row = newRow();
+		ids[row] = id;
+		firstNames[row] = encode(firstName);
+		lastNames[row] = encode(lastName);
+		qualifications[row] = (byte) (level & LEVEL_MASK
+				| qualification.ordinal() << TYPE_SHIFT);
+		flags[row] = (byte) (travel & TRAVEL_MASK | homeBit(home)
+				| seniorBit(level));
+		allocations[row] = allocs;
+		return row;
+	}
+
+	/**
+	 * Copies a row of another store into this store
+	 * @param other the store to copy from
+	 * @param row the row to copy
+	 * @return the new row in this store
+	 */
+	int copy(RefereeStore other, int row) {
+		int copy = newRow();
+		ids[copy] = other.ids[row];
+		firstNames[copy] = encode(other.getFirstName(row));
+		lastNames[copy] = encode(other.getLastName(row));
+		flags[copy] = other.flags[row];
+		qualifications[copy] = other.qualifications[row];
+		allocations[copy] = other.allocations[row];
+		return copy;
+	}
+
+	/**
+	 * Appends all rows of another store (e.g. a parsed file chunk) at once:
+	 * the columns are copied in bulk and only the names are translated into
+	 * this store's dictionary, once per distinct name
+	 * @param other the store to append
+	 * @return the row of the other store's first row in this store; the
+	 * other rows follow in order
+	 */
+	int append(RefereeStore other) {
+		int base = rows;
+		ensureCapacity(rows + other.rows);
+
+		// Translate the other store's name codes
+		int[] codes = new int[other.names.size()];
+		for (int code = 0; code < codes.length; code++)
+			codes[code] = encode(other.names.get(code));
+		for (int row = 0; row < other.rows; row++) {
+			firstNames[base + row] = codes[other.firstNames[row]];
+			lastNames[base + row] = codes[other.lastNames[row]];
+		}
+
+		System.arraycopy(other.ids, 0, ids, base, other.rows);
+		System.arraycopy(other.flags, 0, flags, base, other.rows);
+		System.arraycopy(other.qualifications, 0, qualifications, base,
+				other.rows);
+		System.arraycopy(other.allocations, 0, allocations, base, other.rows);
+		rows += other.rows;
+
+		// The other store's free rows stay free
+		for (int i = 0; i < other.freeCount; i++)
+			remove(base + other.freeRows[i]);
+		return base;
+	}
+
+	/**
+	 * Frees a row for reuse
+	 * @param row the row to be freed
+	 */
+	void remove(int row) {
+		ids[row] = null;
+		synchronized (this) {
+			views[row] = null;
+		}
+		if (freeCount == freeRows.length)
+			freeRows = Arrays.copyOf(freeRows, Math.max(4, freeCount * 2));
+		freeRows[freeCount++] = row;
+	}
+
+	/**
+	 * Returns the number of rows to scan (including freed rows)
+	 * @return the upper bound of used rows
+	 */
+	int rows() {
+		return rows;
+	}
+
+	/**
+	 * Returns the view of a row, creating it if the row has none in use
+	 * @param row the row
+	 * @return the referee viewing the row
+	 */
+	synchronized Referee getView(int row) {
+		expunge();
+		Referee ref = views[row] == null ? null : views[row].get();
+		if (ref == null) {
+			ref = new Referee(this, row);
+			views[row] = new View(ref, row, unused);
+		}
+		return ref;
+	}
+
+	/**
+	 * Makes a referee the view of a row (e.g. after moving it to the row)
+	 * @param row the row
+	 * @param ref the referee viewing the row
+	 */
+	synchronized void setView(int row, Referee ref) {
+		expunge();
+		views[row] = new View(ref, row, unused);
+	}
+
+	/**
+	 * Clears the rows of the views no longer in use
+	 */
+	private void expunge() {
+		View view;
+		while ((view = (View) unused.poll()) != null)
+			if (views[view.row] == view)
+				views[view.row] = null;
+	}
+
+	/**
+	 * Returns the list of the referees held by the store
+	 * @return the list (null if the store is not a list's)
+	 */
+	RefereeList getList() {
+		return list;
+	}
+
+	/**
+	 * Makes the store the store of a list's referees
+	 * @param list the list
+	 */
+	void setList(RefereeList list) {
+		this.list = list;
+	}
+
+	String getID(int row) {
+		return ids[row];
+	}
+
+	String getFirstName(int row) {
+		return names.get(firstNames[row]);
+	}
+
+	String getLastName(int row) {
+		return names.get(lastNames[row]);
+	}
+
+	int getFirstNameCode(int row) {
+		return firstNames[row];
+	}
+
+	int getLastNameCode(int row) {
+		return lastNames[row];
+	}
+
+	/**
+	 * Returns the name dictionary (names by code), not to be modified
+	 * @return the names
+	 */
+	List<String> getNames() {
+		return names;
+	}
+
+	RefQualification getQualification(int row) {
+		return QUALIFICATIONS[qualifications[row] >> TYPE_SHIFT];
+	}
+
+	void setQualification(int row, RefQualification qualification) {
+		qualifications[row] = (byte) (qualifications[row] & LEVEL_MASK
+				| qualification.ordinal() << TYPE_SHIFT);
+	}
+
+	int getQualificationLevel(int row) {
+		return qualifications[row] & LEVEL_MASK;
+	}
+
+	void setQualificationLevel(int row, int level) {
+		if (level < 0 || level > MAX_LEVEL)
+			throw new IllegalArgumentException("Invalid qualification level: "
+					+ level);
+		qualifications[row] = (byte) (qualifications[row] & ~LEVEL_MASK
+				| level & LEVEL_MASK);
+		flags[row] = (byte) (flags[row] & ~SENIOR | seniorBit(level));
+	}
+
+	Location getHomeLocation(int row) {
+		return LOCATIONS[Integer.numberOfTrailingZeros(
+				flags[row] >> HOME_SHIFT)];
+	}
+
+	void setHomeLocation(int row, Location home) {
+		flags[row] = (byte) (flags[row] & ~HOME_MASK | homeBit(home));
+	}
+
+	/**
+	 * Returns the travel preferences of a row as bits (1 << Location ordinal)
+	 */
+	int getTravel(int row) {
+		return flags[row] & TRAVEL_MASK;
+	}
+
+	void setTravel(int row, int travel) {
+		flags[row] = (byte) (flags[row] & ~TRAVEL_MASK | travel & TRAVEL_MASK);
+	}
+
+	/**
+	 * Returns the eligibility flags of a row (travel, home and Senior bits)
+	 */
+	int getFlags(int row) {
+		return flags[row];
+	}
+
+	/**
+	 * Returns the flag of a home location
+	 */
+	static int homeBit(Location home) {
+		return 1 << HOME_SHIFT + home.ordinal();
+	}
+
+	/**
+	 * Returns the Senior flag for a qualification level
+	 */
+	private static int seniorBit(int level) {
+		return level == RefereeList.UNSUITABLE_SENIOR_LEVEL ? 0 : SENIOR;
+	}
+
+	/**
+	 * Checks packed flags and qualification bits (e.g. read from a file) for
+	 * exactly one home location and a known qualification type
+	 */
+	static boolean isValid(byte flags, byte qualification) {
+		return Integer.bitCount(flags & HOME_MASK) == 1
+				&& (qualification & 0xFF) >> TYPE_SHIFT
+						< QUALIFICATIONS.length;
+	}
+
+	/**
+	 * Returns the flags a referee needs to be eligible for a match: travel to
+	 * the match area and, for Senior matches, the Senior flag
+	 * @param area the area the match is held in
+	 * @param level the level of the match
+	 * @return the required flags
+	 */
+	static int eligibilityMask(Location area, MatchLevel level) {
+		return 1 << area.ordinal() | (level == MatchLevel.SENIOR ? SENIOR : 0);
+	}
+
+	/**
+	 * Returns the packed qualification type and level of a row
+	 */
+	byte getQualificationBits(int row) {
+		return qualifications[row];
+	}
+
+	int getAllocations(int row) {
+		return allocations[row];
+	}
+
+	/**
+	 * Counts one more allocation of a row, unless it already has the most
+	 * an int can count
+	 * @return whether the allocation was counted
+	 */
+	boolean addAllocation(int row) {
+		if (allocations[row] == Integer.MAX_VALUE)
+			return false;
+		allocations[row]++;
+		return true;
+	}
+
+	/**
+	 * Returns a free row, growing the columns if necessary
+	 */
+	private int newRow() {
+		if (freeCount > 0)
+			return freeRows[--freeCount];
+
+		ensureCapacity(rows + 1);
+		return rows++;
+	}
+
+	/**
+	 * Grows the columns to hold at least a given number of rows
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > ids.length) {
+			capacity = Math.max(capacity, ids.length * 2);
+			ids = Arrays.copyOf(ids, capacity);
+			firstNames = Arrays.copyOf(firstNames, capacity);
+			lastNames = Arrays.copyOf(lastNames, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			qualifications = Arrays.copyOf(qualifications, capacity);
+			allocations = Arrays.copyOf(allocations, capacity);
+			synchronized (this) {
+				views = Arrays.copyOf(views, capacity);
+			}
+		}
+	}
+
+	/**
+	 * Returns the dictionary code of a name, adding the name if it is new
+	 */
+	private int encode(String name) {
+		if (nameCodes == null) {
+			nameCodes = new HashMap<>(names.size() * 2);
+			for (int code = 0; code < names.size(); code++)
+				nameCodes.put(names.get(code), code);
+		}
+		Integer code = nameCodes.get(name);
+		if (code == null) {
+			code = names.size();
+			names.add(name);
+			nameCodes.put(name, code);
+		}
+		return code;
+	}
+
+	/**
+	 * A weak reference to the view of a row
+	 */
+	private static final class View extends WeakReference<Referee> {
+		private final int row;
+
+		private View(Referee ref, int row, ReferenceQueue<Referee> queue) {
+			super(ref, queue);
+			this.row = row;
+		}
+	}
+}
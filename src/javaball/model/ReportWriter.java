@@ -0,0 +1,283 @@
+package javaball.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import javaball.enums.Location;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Writer for the referee and match output files, producing the same bytes as
+ * writing Referee.toString() and Match.toString() through a FileWriter. Rows
+ * are formatted straight into a reusable character buffer, which is encoded
+ * into a reusable byte buffer and written to a file channel whenever it is
+ * full, so that writing a row allocates nothing.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+public class ReportWriter implements Closeable {
+
+	/** Names of the referee and match output files */
+	public static final String REFEREE_FILE = "RefereesOut.txt";
+	public static final String MATCH_FILE = "MatchAllocs.txt";
+
+	/** Size of the character and byte buffers */
+	private static final int BUFFER = 1 << 16;
+
+	/** Column widths of the match output file */
+	private static final int WEEK = 5, LEVEL = 7, AREA = 8, REFEREE = 17;
+
+	/** Locations in travel preference order (North, Central, South) */
+	private static final Location[] LOCATIONS = Location.values();
+
+	/** The file written to */
+	private final FileChannel channel;
+
+	/** Encoder of the platform's default charset, as used by FileWriter */
+	private final CharsetEncoder encoder;
+
+	/** Formatted characters not yet encoded */
+	private final char[] chars = new char[BUFFER];
+	private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+	private int length;
+
+	/** Encoded bytes not yet written */
+	private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER);
+
+	/** Digits of a number being formatted, from the lowest */
+	private final char[] digits = new char[10];
+
+	/** Line separator and zero digit, as used by String.format */
+	private final String lineSeparator = System.lineSeparator();
+	private final char zero;
+
+	/**
+	 * Constructor creating (or truncating) an output file
+	 * @param file the file to be written
+	 * @throws IOException if the file cannot be opened
+	 */
+	public ReportWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		encoder = Charset.defaultCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		zero = DecimalFormatSymbols.getInstance(
+				Locale.getDefault(Locale.Category.FORMAT)).getZeroDigit();
+	}
+
+	/**
+	 * Writes a referee as Referee.toString() does, e.g. "DG1 Dave Gray NJB2 3
+	 * Central NYY" and a line separator
+	 * @param ref the referee to be written
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeReferee(Referee ref) throws IOException {
+		append(ref.getID());
+		append(' ');
+		append(ref.getFirstName());
+		append(' ');
+		append(ref.getLastName());
+		append(' ');
+		append(ref.getQualification().toString());
+		append(ref.getQualificationLevel(), 0);
+		append(' ');
+		append(ref.getAllocations(), 0);
+		append(' ');
+		append(ref.getHomeLocation().toString());
+		append(' ');
+		for (Location location : LOCATIONS)
+			append(ref.getTravelLocation(location) ? 'Y' : 'N');
+		append(lineSeparator);
+	}
+
+	/**
+	 * Writes the head row of the match file and a line of dashes as long as
+	 * the head row (including its line separator)
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeMatchHeader() throws IOException {
+		append("Week", WEEK);
+		append(' ');
+		append("Level", LEVEL);
+		append(' ');
+		append("Area", AREA);
+		append(' ');
+		append("Referee 1", REFEREE);
+		append(' ');
+		append("Referee 2", REFEREE);
+		append(lineSeparator);
+
+		// All headings fit their columns
+		int headLength = WEEK + LEVEL + AREA + 2 * REFEREE + 4
+				+ lineSeparator.length();
+		for (int i = 0; i < headLength; i++)
+			append('-');
+		append(lineSeparator);
+	}
+
+	/**
+	 * Writes a match as Match.toString() does, e.g. "2 Junior North Dave
+	 * Gray Tim Toms" in columns and a line separator
+	 * @param match the match to be written
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeMatch(Match match) throws IOException {
+		Referee[] referees = match.getReferees();
+		append(match.getWeek(), WEEK);
+		append(' ');
+		append(match.getLevel().toString(), LEVEL);
+		append(' ');
+		append(match.getArea().toString(), AREA);
+		append(' ');
+		appendName(referees[0]);
+		append(' ');
+		appendName(referees[1]);
+		append(lineSeparator);
+	}
+
+	/**
+	 * Writes the remaining rows and closes the file
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			encode(true);
+			while (encoder.flush(bytes).isOverflow())
+				drain();
+			drain();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Appends a referee's full name, left justified in a referee column
+	 */
+	private void appendName(Referee ref) throws IOException {
+		String firstName = ref.getFirstName();
+		String lastName = ref.getLastName();
+		append(firstName);
+		append(' ');
+		append(lastName);
+		pad(firstName.length() + 1 + lastName.length(), REFEREE);
+	}
+
+	/**
+	 * Appends a String, left justified in a column of a given width (0 for
+	 * no column)
+	 */
+	private void append(String string, int width) throws IOException {
+		append(string);
+		pad(string.length(), width);
+	}
+
+	/**
+	 * Appends a String
+	 */
+	private void append(String string) throws IOException {
+		// Most Strings fit into the rest of the buffer
+		int size = string.length();
+		if (size <= chars.length - length) {
+			string.getChars(0, size, chars, length);
+			length += size;
+			return;
+		}
+
+		int offset = 0;
+		while (offset < string.length()) {
+			if (length == chars.length)
+				encode(false);
+			int count = Math.min(string.length() - offset,
+					chars.length - length);
+			string.getChars(offset, offset + count, chars, length);
+			length += count;
+			offset += count;
+		}
+	}
+
+	/**
+	 * Appends a character
+	 */
+	private void append(char c) throws IOException {
+		if (length == chars.length)
+			encode(false);
+		chars[length++] = c;
+	}
+
+	/**
+	 * Appends a decimal number as %d does, left justified in a column of a
+	 * given width (0 for no column)
+	 */
+	private void append(int number, int width) throws IOException {
+		// Collect the digits from the lowest, without negating MIN_VALUE
+		int count = 0;
+		int rest = number;
+		do {
+			digits[count++] = (char) (zero + Math.abs(rest % 10));
+			rest /= 10;
+		} while (rest != 0);
+
+		if (number < 0)
+			append('-');
+		for (int i = count - 1; i >= 0; i--)
+			append(digits[i]);
+		pad(count + (number < 0 ? 1 : 0), width);
+	}
+
+	/**
+	 * Pads a column holding a given number of characters with spaces
+	 */
+	private void pad(int written, int width) throws IOException {
+		for (int i = written; i < width; i++)
+			append(' ');
+	}
+
+	/**
+	 * Encodes the formatted characters, writing the bytes whenever the byte
+	 * buffer is full; a character pair split at the end of the buffer is
+	 * kept for the next call
+	 * @param endOfInput whether no further characters follow
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		charBuffer.limit(length).position(0);
+		while (encoder.encode(charBuffer, bytes, endOfInput).isOverflow())
+			drain();
+
+		length = charBuffer.remaining();
+		System.arraycopy(chars, charBuffer.position(), chars, 0, length);
+	}
+
+	/**
+	 * Writes the encoded bytes to the file
+	 */
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+		bytes.clear();
+	}
+}
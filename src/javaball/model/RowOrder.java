@@ -0,0 +1,264 @@
+package javaball.model;
+
+import java.util.Arrays;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * The rows of a store's listed referees in ID order, held in blocks of at
+ * most BLOCK rows. A row is found by binary search over the blocks' first
+ * IDs and then within its block, and inserted into or removed from its block
+ * only: a full block is split in two, and a block left small is merged with
+ * the next one, so that a change moves at most one block's rows instead of
+ * all rows. Reading never changes the blocks, so any number of threads may
+ * read at the same time as long as nobody changes them.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class RowOrder {
+
+	/** Most rows per block; blocks filled at once are filled by half */
+	private static final int BLOCK = 512;
+
+	/** The store holding the rows */
+	private final RefereeStore store;
+
+	/** The blocks of rows in ID order, and the number of blocks in use */
+	private int[][] blocks;
+	private int count;
+
+	/** Number of rows per block */
+	private int[] sizes;
+
+	/** Number of rows in all blocks */
+	private int size;
+
+	/**
+	 * Constructor for an empty order
+	 * @param store the store holding the rows
+	 */
+	RowOrder(RefereeStore store) {
+		this.store = store;
+		fill(new int[0], 0);
+	}
+
+	/**
+	 * Returns the number of rows
+	 * @return the number of rows
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the row of an ID
+	 * @param id the referee ID
+	 * @return the row (-1 if there is none)
+	 */
+	int find(String id) {
+		int b = blockOf(id);
+		int i = search(b, id);
+		return i >= 0 ? blocks[b][i] : -1;
+	}
+
+	/**
+	 * Inserts a row by its ID, unless the ID is taken
+	 * @param row the row
+	 * @return whether the row was inserted
+	 */
+	boolean add(int row) {
+		String id = store.getID(row);
+		int b = blockOf(id);
+		int i = search(b, id);
+		if (i >= 0)
+			return false;
+		i = -i - 1;
+
+		// Split a full block, inserting into the half the row belongs to
+		if (sizes[b] == BLOCK) {
+			split(b);
+			if (i > sizes[b]) {
+				i -= sizes[b];
+				b++;
+			}
+		}
+		System.arraycopy(blocks[b], i, blocks[b], i + 1, sizes[b] - i);
+		blocks[b][i] = row;
+		sizes[b]++;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes a row (while it still holds its ID)
+	 * @param row the row
+	 * @return whether the row was held
+	 */
+	boolean remove(int row) {
+		int b = blockOf(store.getID(row));
+		int i = search(b, store.getID(row));
+		if (i < 0 || blocks[b][i] != row)
+			return false;
+		System.arraycopy(blocks[b], i + 1, blocks[b], i, sizes[b] - i - 1);
+		sizes[b]--;
+		size--;
+
+		// Merge a block left small or empty with a neighbour (so that only
+		// a single block may be empty)
+		if (b + 1 == count && b > 0)
+			b--;
+		if (b + 1 < count && (Math.min(sizes[b], sizes[b + 1]) == 0
+				|| sizes[b] + sizes[b + 1] <= BLOCK / 2))
+			merge(b);
+		return true;
+	}
+
+	/**
+	 * Returns the row at a position
+	 * @param index the position in ID order
+	 * @return the row
+	 */
+	int get(int index) {
+		int b = 0;
+		while (index >= sizes[b])
+			index -= sizes[b++];
+		return blocks[b][index];
+	}
+
+	/**
+	 * Returns the number of blocks
+	 * @return the number of blocks
+	 */
+	int blocks() {
+		return count;
+	}
+
+	/**
+	 * Returns a block's rows, not to be modified
+	 * @param b the block
+	 * @return the rows, of which the first blockSize(b) are in use
+	 */
+	int[] block(int b) {
+		return blocks[b];
+	}
+
+	/**
+	 * Returns the number of rows of a block
+	 * @param b the block
+	 * @return the number of rows in use
+	 */
+	int blockSize(int b) {
+		return sizes[b];
+	}
+
+	/**
+	 * Returns all rows
+	 * @return a copy of the rows in ID order
+	 */
+	int[] toArray() {
+		int[] rows = new int[size];
+		int n = 0;
+		for (int b = 0; b < count; b++) {
+			System.arraycopy(blocks[b], 0, rows, n, sizes[b]);
+			n += sizes[b];
+		}
+		return rows;
+	}
+
+	/**
+	 * Replaces all rows by given ones
+	 * @param rows the rows in ID order (IDs unique)
+	 * @param n the number of rows
+	 */
+	void fill(int[] rows, int n) {
+		count = Math.max(1, (n + BLOCK / 2 - 1) / (BLOCK / 2));
+		blocks = new int[count][];
+		sizes = new int[count];
+		for (int b = 0; b < count; b++) {
+			int from = b * (BLOCK / 2);
+			sizes[b] = Math.min(BLOCK / 2, n - from);
+			blocks[b] = new int[BLOCK];
+			System.arraycopy(rows, from, blocks[b], 0, sizes[b]);
+		}
+		size = n;
+	}
+
+	/**
+	 * Returns the block an ID belongs to: the last block whose first ID is
+	 * not greater (the first block if there is none)
+	 */
+	private int blockOf(String id) {
+		int low = 1, high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (store.getID(blocks[middle][0]).compareTo(id) <= 0)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+		return high;
+	}
+
+	/**
+	 * Searches a block for an ID
+	 * @return the position of the ID if found, otherwise
+	 * (-(insertion point) - 1) as by Arrays.binarySearch
+	 */
+	private int search(int b, String id) {
+		int[] rows = blocks[b];
+		int low = 0, high = sizes[b] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = store.getID(rows[middle]).compareTo(id);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Splits a full block into two halves
+	 */
+	private void split(int b) {
+		if (count == blocks.length) {
+			blocks = Arrays.copyOf(blocks, count * 2);
+			sizes = Arrays.copyOf(sizes, count * 2);
+		}
+		System.arraycopy(blocks, b + 1, blocks, b + 2, count - b - 1);
+		System.arraycopy(sizes, b + 1, sizes, b + 2, count - b - 1);
+		count++;
+
+		int half = sizes[b] / 2;
+		blocks[b + 1] = new int[BLOCK];
+		System.arraycopy(blocks[b], half, blocks[b + 1], 0, sizes[b] - half);
+		sizes[b + 1] = sizes[b] - half;
+		sizes[b] = half;
+	}
+
+	/**
+	 * Merges a block with the next one
+	 */
+	private void merge(int b) {
+		System.arraycopy(blocks[b + 1], 0, blocks[b], sizes[b], sizes[b + 1]);
+		sizes[b] += sizes[b + 1];
+		System.arraycopy(blocks, b + 2, blocks, b + 1, count - b - 2);
+		System.arraycopy(sizes, b + 2, sizes, b + 1, count - b - 2);
+		count--;
+		blocks[count] = null;
+	}
+}
@@ -1,6 +1,7 @@
 package javaball.model;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -29,10 +30,14 @@ public class Season implements Iterable<Match> {
     
     /** Matches to be played this season */
     public ArrayList<Match> matches;
+
+    /** Matches indexed by their week number */
+    private final HashMap<Integer, Match> matchesByWeek;
     
     /** Default constructor */
 	public Season() {
 		matches = new ArrayList<>();
+		matchesByWeek = new HashMap<>();
 	}
     
     /** 
@@ -49,6 +54,8 @@ public class Season implements Iterable<Match> {
      */
 	public void addMatch(Match match) {
 		matches.add(match);
+		if (!matchesByWeek.containsKey(match.getWeek()))
+			matchesByWeek.put(match.getWeek(), match);
 	}
     
     /** 
@@ -57,14 +64,8 @@ public class Season implements Iterable<Match> {
      * @return match that is played doing that week
      */
 	public Match getMatch(int week) {
-		// find match with desired ID/week number
-		for (Match match : matches) {
-			if (match.getWeek() == week)
-				return match;
-		}
-		
-		// Return null if not found
-		return null;
+		// find match with desired ID/week number (null if not found)
+		return matchesByWeek.get(week);
 	}
 
     /** 
@@ -0,0 +1,304 @@
+package javaball.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Team Foxtrot
+ * JavaBall Referee Allocation System
+ * <p>
+ * Trigram index of the listed referees' full names for finding referees by
+ * a misspelt name. Each word of a name is padded ("  dave ") and cut into
+ * its three letter sequences; the index lists, per trigram, the store rows
+ * of the referees whose name contains it. A search counts for each row how
+ * many of the query's trigrams it shares, and ranks the rows by similarity:
+ * the trigrams shared divided by the trigrams of query and name together
+ * (the number of each name's trigrams is kept per row when indexed). Only
+ * the best rows asked for are kept, in a heap of at most that many rows.
+ * <p>
+ * Letters are folded to lower case and all other characters but digits to
+ * one symbol, so that a trigram is a number below TRIGRAMS and the rows of
+ * each trigram are an array of its own. Referees added or removed are added
+ * to or removed from the arrays at once; their names cannot be edited. Lists
+ * filled in bulk (e.g. on loading) drop the arrays, to be built once on the
+ * first search.
+ * <p>
+ * University of Glasgow
+ * MSc/PGDip Information Technology/Software Development
+ * Team Project 2014/15
+ *
+ * @author Miroslav Pashov (1005139p)
+ * @author Andrew Lowson (0800685l)
+ * @author Marco Cook (2152599c)
+ * @author Raoul Rothfeld (2164502r)
+ *
+ * @version 1.0
+ * @since 14-02-2015
+ */
+class TrigramIndex {
+
+	/** Symbols: padding, letters, digits and any other character */
+	private static final int SPACE = 0, LETTERS = 26, DIGITS = 10,
+			SYMBOLS = 1 + LETTERS + DIGITS + 1;
+
+	/** Number of distinct trigrams */
+	private static final int TRIGRAMS = SYMBOLS * SYMBOLS * SYMBOLS;
+
+	/** Lowest similarity of a referee found */
+	static final double MIN_SIMILARITY = 0.3;
+
+	/** The list indexed */
+	private final RefereeList list;
+
+	/** Store rows per trigram and their number (null until built) */
+	private int[][] rows;
+	private int[] sizes;
+
+	/** Number of trigrams of each indexed row's name */
+	private int[] own = new int[0];
+
+	/** Trigrams shared with the query per row, and the rows counted */
+	private int[] counts = new int[0];
+	private int[] counted = new int[0];
+
+	/**
+	 * Constructor for an index of a list's referees, built when first
+	 * searched
+	 * @param list the list of the referees
+	 */
+	TrigramIndex(RefereeList list) {
+		this.list = list;
+	}
+
+	/**
+	 * Adds a referee listed
+	 * @param row the referee's row in the list's store
+	 */
+	synchronized void add(int row) {
+		if (rows == null)
+			return;
+		RefereeStore store = list.getStore();
+		int[] trigrams = trigrams(store.getFirstName(row) + " "
+				+ store.getLastName(row));
+		if (row >= own.length)
+			own = Arrays.copyOf(own, Math.max(row + 1, own.length * 2));
+		own[row] = trigrams.length;
+		for (int trigram : trigrams) {
+			if (rows[trigram] == null)
+				rows[trigram] = new int[4];
+			else if (sizes[trigram] == rows[trigram].length)
+				rows[trigram] = Arrays.copyOf(rows[trigram],
+						sizes[trigram] * 2);
+			rows[trigram][sizes[trigram]++] = row;
+		}
+	}
+
+	/**
+	 * Removes a referee no longer listed (while still in the list's store)
+	 * @param row the referee's row in the list's store
+	 */
+	synchronized void remove(int row) {
+		if (rows == null)
+			return;
+		RefereeStore store = list.getStore();
+		for (int trigram : trigrams(store.getFirstName(row) + " "
+				+ store.getLastName(row))) {
+			int[] trigramRows = rows[trigram];
+			for (int i = sizes[trigram] - 1; i >= 0; i--)
+				if (trigramRows[i] == row) {
+					trigramRows[i] = trigramRows[--sizes[trigram]];
+					break;
+				}
+		}
+	}
+
+	/**
+	 * Drops the arrays, e.g. after many referees have been listed at once,
+	 * to be built again on the next search
+	 */
+	synchronized void invalidate() {
+		rows = null;
+		sizes = null;
+	}
+
+	/**
+	 * Returns the referees whose full names are most similar to a query,
+	 * e.g. a misspelt name
+	 * @param query the name searched for (words in any order)
+	 * @param limit the maximum number of referees to be returned
+	 * @return the referees at least MIN_SIMILARITY similar, the most similar
+	 * first (then in ID order)
+	 */
+	synchronized ArrayList<Referee> search(String query, int limit) {
+		if (rows == null)
+			build();
+		final RefereeStore store = list.getStore();
+		int[] trigrams = trigrams(query);
+		ArrayList<Referee> found = new ArrayList<>();
+		if (trigrams.length == 0 || limit <= 0)
+			return found;
+
+		// Count the trigrams each row shares with the query
+		if (counts.length < store.rows()) {
+			counts = new int[store.rows()];
+			counted = new int[store.rows()];
+		}
+		int touched = 0;
+		for (int trigram : trigrams)
+			for (int i = 0; i < sizes[trigram]; i++) {
+				int row = rows[trigram][i];
+				if (counts[row]++ == 0)
+					counted[touched++] = row;
+			}
+
+		// Keep the best rows sharing enough trigrams, the worst of them on
+		// top of the heap; a row sharing fewer than MIN_SIMILARITY of the
+		// query's trigrams cannot be similar enough
+		int[] heap = new int[Math.min(limit, touched)];
+		double[] similarity = new double[heap.length];
+		int size = 0;
+		for (int i = 0; i < touched; i++) {
+			int row = counted[i];
+			int shared = counts[row];
+			counts[row] = 0;
+			if (shared < MIN_SIMILARITY * trigrams.length)
+				continue;
+			double rowSimilarity = (double) shared
+					/ (trigrams.length + own[row] - shared);
+			if (rowSimilarity < MIN_SIMILARITY)
+				continue;
+			if (size < heap.length) {
+				heap[size] = row;
+				similarity[size] = rowSimilarity;
+				siftUp(store, heap, similarity, size++);
+			} else if (ranksBefore(store, row, rowSimilarity, heap[0],
+					similarity[0])) {
+				heap[0] = row;
+				similarity[0] = rowSimilarity;
+				siftDown(store, heap, similarity, 0, size);
+			}
+		}
+
+		// Take the rows off the heap, the worst first
+		Referee[] best = new Referee[size];
+		while (size > 0) {
+			best[--size] = store.getView(heap[0]);
+			heap[0] = heap[size];
+			similarity[0] = similarity[size];
+			siftDown(store, heap, similarity, 0, size);
+		}
+		found.addAll(Arrays.asList(best));
+		return found;
+	}
+
+	/**
+	 * Returns whether a row ranks before another: by similarity, then by ID
+	 */
+	private static boolean ranksBefore(RefereeStore store, int row,
+			double similarity, int other, double otherSimilarity) {
+		if (similarity != otherSimilarity)
+			return similarity > otherSimilarity;
+		return store.getID(row).compareTo(store.getID(other)) < 0;
+	}
+
+	/**
+	 * Moves a heap entry up while it ranks after its parent
+	 */
+	private static void siftUp(RefereeStore store, int[] heap,
+			double[] similarity, int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!ranksBefore(store, heap[parent], similarity[parent],
+					heap[i], similarity[i]))
+				return;
+			swap(heap, similarity, i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * Moves a heap entry down while a child ranks after it
+	 */
+	private static void siftDown(RefereeStore store, int[] heap,
+			double[] similarity, int i, int size) {
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && ranksBefore(store, heap[child],
+					similarity[child], heap[child + 1], similarity[child + 1]))
+				child++;
+			if (!ranksBefore(store, heap[i], similarity[i], heap[child],
+					similarity[child]))
+				return;
+			swap(heap, similarity, i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * Swaps two heap entries
+	 */
+	private static void swap(int[] heap, double[] similarity, int i, int j) {
+		int row = heap[i];
+		heap[i] = heap[j];
+		heap[j] = row;
+		double swapped = similarity[i];
+		similarity[i] = similarity[j];
+		similarity[j] = swapped;
+	}
+
+	/**
+	 * Builds the arrays from the list
+	 */
+	private void build() {
+		rows = new int[TRIGRAMS][];
+		sizes = new int[TRIGRAMS];
+		for (int row : list.getRows())
+			add(row);
+	}
+
+	/**
+	 * Returns the distinct trigrams of a name: each word is padded by two
+	 * spaces in front and one behind
+	 * @param name the name
+	 * @return the trigrams, each a number below TRIGRAMS
+	 */
+	static int[] trigrams(String name) {
+		int[] trigrams = new int[name.length() + 1];
+		int count = 0;
+		int first = SPACE, second = SPACE;
+		for (int i = 0; i <= name.length(); i++) {
+			int symbol = i < name.length() ? symbol(name.charAt(i)) : SPACE;
+			if (symbol == SPACE && second == SPACE)
+				continue;
+			trigrams[count++] = (first * SYMBOLS + second) * SYMBOLS + symbol;
+			if (symbol == SPACE)
+				first = second = SPACE;
+			else {
+				first = second;
+				second = symbol;
+			}
+		}
+
+		// Drop repeated trigrams
+		Arrays.sort(trigrams, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++)
+			if (distinct == 0 || trigrams[i] != trigrams[distinct - 1])
+				trigrams[distinct++] = trigrams[i];
+		return Arrays.copyOf(trigrams, distinct);
+	}
+
+	/**
+	 * Returns the symbol of a character (letters in lower case)
+	 */
+	private static int symbol(char c) {
+		if (c == ' ')
+			return SPACE;
+		c = Character.toLowerCase(c);
+		if (c >= 'a' && c <= 'z')
+			return 1 + c - 'a';
+		if (c >= '0' && c <= '9')
+			return 1 + LETTERS + c - '0';
+		return SYMBOLS - 1;
+	}
+}
@@ -0,0 +1,145 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.controller.Autosave;
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.ModelJournal;
+import javaball.model.ModelSnapshot;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Benchmark for the background autosave: a large model keeps being changed
+ * (journaling every change) while checkpoints are taken, and the longest
+ * change, which may have waited for a capture, is reported. Afterwards a
+ * "crash" is simulated, after a last burst of changes not yet checkpointed:
+ * the last snapshot is restored and the rest of the (compacted) journal
+ * replayed, which has to give the same model.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g AutosaveBenchmark
+ */
+public class AutosaveBenchmark {
+
+    private static final int REFEREES = 1000000;
+    private static final int CHANGES = 20000;
+    private static final int BURST = 100;
+    private static final long INTERVAL = 500;
+    private static final long QUIET = 100;
+
+    /** Week of the next allocated match */
+    private static int week = Season.MIN_WEEK;
+
+    public static void main(String[] args) throws Exception {
+	File snapshotFile = File.createTempFile("model", ".snapshot");
+	File journalFile = File.createTempFile("model", ".journal");
+	snapshotFile.deleteOnExit();
+	journalFile.deleteOnExit();
+	journalFile.delete();
+
+	Random random = new Random(14);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	// Listed referees to pick from (get(index) walks the list)
+	ArrayList<Referee> listed = refList.getReferees();
+	Season season = new Season();
+	ModelJournal journal = ModelJournal.open(journalFile.toPath(), 1, 0, 1,
+		refList, season);
+	ConcurrentModel model = new ConcurrentModel(refList, season, journal);
+	Autosave autosave = new Autosave(model, snapshotFile.toPath(),
+		INTERVAL, QUIET);
+
+	// Changes in bursts, with pauses for the quiet time to pass
+	long longestChange = 0;
+	long start = System.nanoTime();
+	for (int i = 0; i < CHANGES; i += BURST) {
+	    for (int j = 0; j < BURST; j++) {
+		long changeStart = System.nanoTime();
+		change(model, listed, random);
+		longestChange = Math.max(longestChange,
+			System.nanoTime() - changeStart);
+	    }
+	    autosave.changed();
+	    if (i % (20 * BURST) == 0)
+		Thread.sleep(2 * QUIET);
+	}
+	double seconds = (System.nanoTime() - start) / 1e9;
+
+	// Wait for a checkpoint of all changes, as a checkpoint still being
+	// written may have been captured before the last of them
+	long position = journal.getPosition();
+	do
+	    Thread.sleep(INTERVAL);
+	while (ModelSnapshot.read(snapshotFile.toPath()).getJournalPosition()
+		!= position);
+	autosave.close();
+
+	// Crash right after a burst: the last checkpoint and the journal are
+	// all that is left
+	for (int j = 0; j < BURST; j++)
+	    change(model, listed, random);
+	String expected = describe(refList, season);
+	ModelSnapshot snapshot = ModelSnapshot.read(snapshotFile.toPath());
+	Season restoredSeason = new Season();
+	RefereeList restored = snapshot.restore(restoredSeason);
+	ModelJournal replayed = ModelJournal.open(journalFile.toPath(),
+		snapshot.getJournalId(), snapshot.getJournalPosition(), 1,
+		restored, restoredSeason);
+	replayed.close();
+	if (replayed.getReplayed() != BURST
+		|| !expected.equals(describe(restored, restoredSeason)))
+	    throw new AssertionError("Restored model differs");
+
+	System.out.printf("%d changes in %.1f s, %d checkpoints, longest "
+		+ "change %.1f ms, %d changes replayed, journal %d bytes%n",
+		CHANGES, seconds, autosave.getCheckpoints(),
+		longestChange / 1e6, replayed.getReplayed(),
+		journalFile.length());
+	journal.close();
+	snapshotFile.delete();
+	journalFile.delete();
+    }
+
+    /**
+     * Makes a random change (which the model journals)
+     */
+    private static void change(ConcurrentModel model,
+	    ArrayList<Referee> listed, Random random) {
+	int change = random.nextInt(4);
+	int index = random.nextInt(listed.size());
+	Referee ref = listed.get(index);
+	if (change == 0) {
+	    listed.add(RefereeListBenchmark.addRandomReferee(model, random));
+	} else if (change == 1) {
+	    model.editReferee(ref, ref.getQualification(),
+		    ref.getQualificationLevel(),
+		    Location.values()[random.nextInt(3)],
+		    random.nextBoolean() ? "YYN" : "NYY");
+	} else if (change == 2) {
+	    model.removeReferee(ref);
+	    listed.set(index, listed.get(listed.size() - 1));
+	    listed.remove(listed.size() - 1);
+	} else {
+	    model.allocateReferees(week++,
+		    MatchLevel.values()[random.nextInt(2)],
+		    Location.values()[random.nextInt(3)]);
+	}
+    }
+
+    /**
+     * Describes all referees and matches
+     */
+    private static String describe(RefereeList refList, Season season) {
+	StringBuilder model = new StringBuilder();
+	for (Referee ref : refList)
+	    model.append(ref);
+	for (Match match : season)
+	    model.append(match);
+	return model.toString();
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.model.BatchAllocator;
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Benchmark for whole-season batch allocation: times BatchAllocator on large
+ * fixture lists and compares travel and balance with allocating the same
+ * fixtures one match at a time.
+ * <p>
+ * Run with e.g. java -Xmx2g BatchAllocationBenchmark
+ */
+public class BatchAllocationBenchmark {
+
+    private static final int[][] RUNS = {
+	{500, 2000}, {2000, 5000}, {10000, 1000}, {20000, 2000},
+	{50000, 5000}};
+
+    public static void main(String[] args) {
+	System.out.printf("%-9s %-8s %10s %10s %12s %12s %10s %10s%n",
+		"Referees", "Matches", "batch ms", "greedy ms", "batch sq",
+		"greedy sq", "batch away", "greedy away");
+
+	for (int[] run : RUNS) {
+	    int refCount = run[0];
+	    int matchCount = run[1];
+
+	    // Same roster and fixtures for both strategies
+	    RefereeList batchList = roster(refCount);
+	    RefereeList greedyList = roster(refCount);
+	    ArrayList<Match> batchFixtures = fixtures(matchCount);
+	    ArrayList<Match> greedyFixtures = fixtures(matchCount);
+
+	    long start = System.nanoTime();
+	    ArrayList<Match> allocated = new BatchAllocator(batchList)
+		    .allocate(batchFixtures);
+	    double batchMs = (System.nanoTime() - start) / 1e6;
+
+	    start = System.nanoTime();
+	    for (Match match : greedyFixtures) {
+		ArrayList<Referee> best = greedyList.getSuitableReferees(match, 2);
+		if (best.size() > 1) {
+		    match.setReferees(best.toArray(new Referee[2]));
+		    for (Referee ref : best)
+			ref.addMatch(match);
+		}
+	    }
+	    double greedyMs = (System.nanoTime() - start) / 1e6;
+
+	    System.out.printf("%-9d %-8d %10.1f %10.1f %12d %12d %10d %10d%n",
+		    refCount, allocated.size(), batchMs, greedyMs,
+		    imbalance(batchList), imbalance(greedyList),
+		    away(batchFixtures), away(greedyFixtures));
+	}
+    }
+
+    /**
+     * Creates the same random roster for a given size every time
+     */
+    private static RefereeList roster(int size) {
+	Random random = new Random(size);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < size; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	return refList;
+    }
+
+    /**
+     * Creates the same random fixtures for a given size every time; most
+     * matches are held in the North so that local referees run short there
+     */
+    private static ArrayList<Match> fixtures(int size) {
+	Random random = new Random(-size);
+	ArrayList<Match> fixtures = new ArrayList<>(size);
+	for (int i = 0; i < size; i++) {
+	    Match match = RefereeListBenchmark.randomMatch(random);
+	    Location area = random.nextInt(10) < 6 ? Location.NORTH
+		    : match.getArea();
+	    fixtures.add(new Match(i + 1, match.getLevel(), area));
+	}
+	return fixtures;
+    }
+
+    /**
+     * Sum of squared allocations (imbalance) after the run
+     */
+    private static long imbalance(RefereeList refList) {
+	long imbalance = 0;
+	for (Referee ref : refList)
+	    imbalance += (long) ref.getAllocations() * ref.getAllocations();
+	return imbalance;
+    }
+
+    /**
+     * Number of referee places filled by referees not local to the match
+     */
+    private static int away(ArrayList<Match> fixtures) {
+	int away = 0;
+	for (Match match : fixtures)
+	    for (Referee ref : match.getReferees())
+		if (ref != null && ref.getHomeLocation() != match.getArea())
+		    away++;
+	return away;
+    }
+}
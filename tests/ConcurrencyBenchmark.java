@@ -0,0 +1,160 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.ModelJournal;
+import javaball.model.ModelSnapshot;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Stress test for ConcurrentModel: growing numbers of threads run a mix of
+ * lookups, suitability queries, edits, additions, removals and allocations
+ * (competing for the same weeks) against one shared, journaled model, and
+ * the throughput is reported. Afterwards every match must be in its own week
+ * with two different referees, and replaying the journal onto a snapshot
+ * taken before the run must give the same model.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g ConcurrencyBenchmark
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int REFEREES = 100000;
+    private static final int OPERATIONS = 400000;
+    private static final int WEEKS = 20000;
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+	System.out.printf("%-8s %12s %10s %10s%n", "Threads", "ops/s",
+		"matches", "referees");
+	for (int threads : THREADS)
+	    run(threads);
+    }
+
+    /**
+     * Runs the operations on a new model with a number of threads
+     */
+    private static void run(int threads) throws Exception {
+	File snapshotFile = File.createTempFile("model", ".snapshot");
+	File journalFile = File.createTempFile("model", ".journal");
+	snapshotFile.deleteOnExit();
+	journalFile.deleteOnExit();
+	journalFile.delete();
+
+	Random random = new Random(15);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	final String[] ids = new String[REFEREES];
+	for (int i = 0; i < REFEREES; i++) {
+	    Referee ref = RefereeListBenchmark.randomReferee(refList, random);
+	    refList.add(ref);
+	    ids[i] = ref.getID();
+	}
+	Season season = new Season();
+	ModelJournal journal = ModelJournal.open(journalFile.toPath(), 1, 0, 0,
+		refList, season);
+	final ConcurrentModel model = new ConcurrentModel(refList, season,
+		journal);
+	model.capture().write(snapshotFile.toPath());
+
+	// Each thread runs its share of the operations
+	final AtomicInteger allocated = new AtomicInteger();
+	final int operations = OPERATIONS / threads;
+	Thread[] workers = new Thread[threads];
+	for (int t = 0; t < threads; t++) {
+	    final long seed = t;
+	    workers[t] = new Thread() {
+		@Override
+		public void run() {
+		    Random random = new Random(seed);
+		    for (int i = 0; i < operations; i++)
+			if (operate(model, ids, random))
+			    allocated.incrementAndGet();
+		}
+	    };
+	}
+	long start = System.nanoTime();
+	for (Thread worker : workers)
+	    worker.start();
+	for (Thread worker : workers)
+	    worker.join();
+	double seconds = (System.nanoTime() - start) / 1e9;
+	journal.close();
+
+	// Every match in its own week, with two different referees
+	HashSet<Integer> weeks = new HashSet<Integer>();
+	for (Match match : model.getMatches()) {
+	    Referee[] referees = match.getReferees();
+	    if (!weeks.add(match.getWeek()) || referees.length != 2
+		    || referees[0] == null || referees[0] == referees[1])
+		throw new AssertionError("Inconsistent match " + match);
+	}
+	if (weeks.size() != allocated.get())
+	    throw new AssertionError("Allocations lost");
+
+	// The journal holds every change in the order it was made
+	Season restoredSeason = new Season();
+	RefereeList restored = ModelSnapshot.read(snapshotFile.toPath())
+		.restore(restoredSeason);
+	ModelJournal.open(journalFile.toPath(), 1, 0, 0, restored,
+		restoredSeason).close();
+	if (!describe(refList, season).equals(
+		describe(restored, restoredSeason)))
+	    throw new AssertionError("Journal differs from the model");
+
+	System.out.printf("%-8d %12.0f %10d %10d%n", threads,
+		operations * threads / seconds, weeks.size(), model.size());
+	snapshotFile.delete();
+	journalFile.delete();
+    }
+
+    /**
+     * Runs a random operation
+     * @return whether a match has been allocated
+     */
+    private static boolean operate(ConcurrentModel model, String[] ids,
+	    Random random) {
+	int operation = random.nextInt(100);
+	Referee ref = model.getReferee(ids[random.nextInt(ids.length)]);
+	if (operation < 60 || ref == null) {
+	    // Lookup only
+	} else if (operation < 75) {
+	    model.getSuitableReferees(RefereeListBenchmark.randomMatch(random),
+		    2);
+	} else if (operation < 85) {
+	    model.editReferee(ref, ref.getQualification(),
+		    ref.getQualificationLevel(),
+		    Location.values()[random.nextInt(3)],
+		    random.nextBoolean() ? "YYN" : "NYY");
+	} else if (operation < 90) {
+	    RefereeListBenchmark.addRandomReferee(model, random);
+	} else if (operation < 95) {
+	    model.removeReferee(ref);
+	} else {
+	    ArrayList<Referee> referees = model.allocateReferees(
+		    1 + random.nextInt(WEEKS),
+		    MatchLevel.values()[random.nextInt(2)],
+		    Location.values()[random.nextInt(3)]);
+	    return referees != null && referees.size() == 2;
+	}
+	return false;
+    }
+
+    /**
+     * Describes all referees and matches
+     */
+    private static String describe(RefereeList refList, Season season) {
+	StringBuilder model = new StringBuilder();
+	for (Referee ref : refList)
+	    model.append(ref);
+	for (Match match : season)
+	    model.append(match);
+	return model.toString();
+    }
+}
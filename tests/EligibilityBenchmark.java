@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Benchmark for eligibility filtering: compares testing every referee through
+ * its getters and enum comparisons with the bitmask filter path of
+ * RefereeList, for every area and level, at 100k referees. The same is done
+ * for the full suitability ranking, which also sorts referees into tiers.
+ * <p>
+ * Warms both paths up before measuring, e.g. java -Xmx1g EligibilityBenchmark
+ */
+public class EligibilityBenchmark {
+
+    private static final int REFEREES = 100000;
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+	Random random = new Random(8);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+
+	// Both paths must agree before timing them
+	for (Location area : Location.values())
+	    for (MatchLevel level : MatchLevel.values())
+		if (!getterPath(refList, area, level).equals(
+			refList.getEligibleReferees(area, level)))
+		    throw new AssertionError("Paths disagree for " + area + " "
+			    + level);
+	for (Match match : matches())
+	    if (!getterRanking(refList, match).equals(
+		    refList.getSuitableReferees(match)))
+		throw new AssertionError("Rankings disagree for " + match);
+
+	System.out.printf("%-9s %12s %12s %12s %12s%n", "Referees",
+		"getters ms", "bitmask ms", "g. rank ms", "b. rank ms");
+	for (int i = 0; i < WARMUP; i++) {
+	    getters(refList);
+	    bitmask(refList);
+	    getterRanking(refList);
+	    bitmaskRanking(refList);
+	}
+	double gettersMs = 0, bitmaskMs = 0, getterRankMs = 0,
+		bitmaskRankMs = 0;
+	for (int i = 0; i < ROUNDS; i++) {
+	    gettersMs += getters(refList);
+	    bitmaskMs += bitmask(refList);
+	    getterRankMs += getterRanking(refList);
+	    bitmaskRankMs += bitmaskRanking(refList);
+	}
+	System.out.printf("%-9d %12.3f %12.3f %12.3f %12.3f%n", REFEREES,
+		gettersMs / ROUNDS, bitmaskMs / ROUNDS, getterRankMs / ROUNDS,
+		bitmaskRankMs / ROUNDS);
+    }
+
+    /**
+     * One unallocated match per area and level
+     */
+    private static ArrayList<Match> matches() {
+	ArrayList<Match> matches = new ArrayList<>();
+	for (Location area : Location.values())
+	    for (MatchLevel level : MatchLevel.values())
+		matches.add(new Match(matches.size() + 1, level, area));
+	return matches;
+    }
+
+    /**
+     * Times ranking the referees for all areas and levels through the getters
+     */
+    private static double getterRanking(RefereeList refList) {
+	long start = System.nanoTime();
+	int found = 0;
+	for (Match match : matches())
+	    found += getterRanking(refList, match).size();
+	return check(found, start);
+    }
+
+    /**
+     * Times ranking the referees for all areas and levels through the
+     * bitmask path
+     */
+    private static double bitmaskRanking(RefereeList refList) {
+	long start = System.nanoTime();
+	int found = 0;
+	for (Match match : matches())
+	    found += refList.getSuitableReferees(match).size();
+	return check(found, start);
+    }
+
+    /**
+     * Suitability ranking through the getters: eligible referees sorted into
+     * local, adjacent and other tiers by home location, each tier stable
+     * sorted by allocations
+     */
+    private static ArrayList<Referee> getterRanking(RefereeList refList,
+	    Match match) {
+	ArrayList<ArrayList<Referee>> tiers = new ArrayList<>();
+	for (int i = 0; i < 3; i++)
+	    tiers.add(new ArrayList<Referee>());
+	Location area = match.getArea();
+	for (Referee ref : getterPath(refList, area, match.getLevel())) {
+	    Location home = ref.getHomeLocation();
+	    if (home.equals(area))
+		tiers.get(0).add(ref);
+	    else if (area.equals(Location.CENTRAL)
+		    || home.equals(Location.CENTRAL))
+		tiers.get(1).add(ref);
+	    else
+		tiers.get(2).add(ref);
+	}
+
+	ArrayList<Referee> ranking = new ArrayList<>();
+	for (ArrayList<Referee> tier : tiers) {
+	    Collections.sort(tier, new Comparator<Referee>() {
+		@Override
+		public int compare(Referee ref1, Referee ref2) {
+		    return Integer.compare(ref1.getAllocations(),
+			    ref2.getAllocations());
+		}
+	    });
+	    ranking.addAll(tier);
+	}
+	return ranking;
+    }
+
+    /**
+     * Times filtering all areas and levels through the referee getters
+     */
+    private static double getters(RefereeList refList) {
+	long start = System.nanoTime();
+	int found = 0;
+	for (Location area : Location.values())
+	    for (MatchLevel level : MatchLevel.values())
+		found += getterPath(refList, area, level).size();
+	return check(found, start);
+    }
+
+    /**
+     * Times filtering all areas and levels through the bitmask path
+     */
+    private static double bitmask(RefereeList refList) {
+	long start = System.nanoTime();
+	int found = 0;
+	for (Location area : Location.values())
+	    for (MatchLevel level : MatchLevel.values())
+		found += refList.getEligibleReferees(area, level).size();
+	return check(found, start);
+    }
+
+    /**
+     * Eligible referees tested one by one through the getters: travel
+     * preference for the area, then the qualification level for Senior
+     * matches
+     */
+    private static ArrayList<Referee> getterPath(RefereeList refList,
+	    Location area, MatchLevel level) {
+	ArrayList<Referee> eligible = new ArrayList<>();
+	for (Referee ref : refList)
+	    if (ref.getTravelLocation(area) && (level != MatchLevel.SENIOR
+		    || ref.getQualificationLevel() != 1))
+		eligible.add(ref);
+	return eligible;
+    }
+
+    /**
+     * Returns the elapsed milliseconds, using the result so that the work
+     * cannot be optimised away
+     */
+    private static double check(int found, long start) {
+	double ms = (System.nanoTime() - start) / 1e6;
+	if (found < 0)
+	    System.out.println(found);
+	return ms;
+    }
+}
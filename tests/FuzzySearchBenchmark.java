@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Benchmark for finding referees by misspelt names: full names of listed
+ * referees with one letter replaced, dropped or doubled are searched through
+ * the trigram index of RefereeList at a million referees. Reports the time
+ * per search and how often the misspelt referee is found first and among the
+ * top 10, once after building the index and once after referees have been
+ * added and removed.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g FuzzySearchBenchmark
+ */
+public class FuzzySearchBenchmark {
+
+    private static final int REFEREES = 1000000;
+    private static final int LIMIT = 10;
+    private static final int QUERIES = 2000;
+    private static final int CHANGES = 10000;
+
+    public static void main(String[] args) {
+	Random random = new Random(22);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+
+	long start = System.nanoTime();
+	refList.search("dave gray", LIMIT);
+	System.out.printf("Index built in %.1f ms%n",
+		(System.nanoTime() - start) / 1e6);
+
+	System.out.printf("%-28s %10s %10s %10s%n", "", "ms/search", "first %",
+		"top 10 %");
+	run("Built index", refList, random);
+
+	// Add and remove referees since the index was built
+	ArrayList<Referee> refs = refList.getReferees();
+	for (int i = 0; i < CHANGES; i++) {
+	    refList.remove(refs.get(random.nextInt(refs.size())));
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	}
+	run("After " + CHANGES + " adds/removes", refList, random);
+    }
+
+    /**
+     * Searches misspelt names of random referees
+     */
+    private static void run(String label, RefereeList refList,
+	    Random random) {
+	ArrayList<Referee> refs = refList.getReferees();
+	Referee[] targets = new Referee[QUERIES];
+	String[] queries = new String[QUERIES];
+	for (int i = 0; i < QUERIES; i++) {
+	    targets[i] = refs.get(random.nextInt(refs.size()));
+	    queries[i] = misspell(targets[i].getFirstName() + " "
+		    + targets[i].getLastName(), random);
+	}
+
+	int first = 0, top = 0;
+	long start = System.nanoTime();
+	for (int i = 0; i < QUERIES; i++) {
+	    ArrayList<Referee> found = refList.search(queries[i], LIMIT);
+	    if (!found.isEmpty() && found.get(0) == targets[i])
+		first++;
+	    if (found.contains(targets[i]))
+		top++;
+	}
+	long time = System.nanoTime() - start;
+	System.out.printf("%-28s %10.2f %10.1f %10.1f%n", label,
+		time / 1e6 / QUERIES, 100.0 * first / QUERIES,
+		100.0 * top / QUERIES);
+    }
+
+    /**
+     * Replaces, drops or doubles one letter of a name
+     */
+    private static String misspell(String name, Random random) {
+	int i;
+	do
+	    i = random.nextInt(name.length());
+	while (name.charAt(i) == ' ');
+	switch (random.nextInt(3)) {
+	case 0:
+	    return name.substring(0, i) + (char) ('a' + random.nextInt(26))
+		    + name.substring(i + 1);
+	case 1:
+	    return name.substring(0, i) + name.substring(i + 1);
+	default:
+	    return name.substring(0, i + 1) + name.substring(i);
+	}
+    }
+}
@@ -0,0 +1,180 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.enums.RefQualification;
+import javaball.model.Match;
+import javaball.model.ModelJournal;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Benchmark for the model journal: first checks that a journal left behind
+ * by a "crash" (not closed, with a cut off last record) replays to the same
+ * model, then times committing edits from several threads for different
+ * numbers of records written between forcing them to disk.
+ * <p>
+ * e.g. java JournalBenchmark
+ */
+public class JournalBenchmark {
+
+    private static final int REFEREES = 1000;
+    private static final int CHANGES = 2000;
+    private static final int[] SYNC_EVERY = {1, 16, 0};
+    private static final int[] THREADS = {1, 4, 16};
+    private static final int COMMITS = 4000;
+
+    public static void main(String[] args) throws Exception {
+	File file = File.createTempFile("model", ".journal");
+	file.deleteOnExit();
+	checkReplay(file);
+
+	System.out.printf("%-10s %8s %12s %12s%n", "syncEvery", "threads",
+		"commits/s", "us/commit");
+	for (int syncEvery : SYNC_EVERY)
+	    for (int threads : THREADS) {
+		double seconds = commit(file, syncEvery, threads);
+		System.out.printf("%-10d %8d %12.0f %12.1f%n", syncEvery,
+			threads, COMMITS / seconds, seconds * 1e6 / COMMITS);
+	    }
+	file.delete();
+    }
+
+    /**
+     * Makes random changes while journaling them, then replays the journal
+     * onto the same base and compares the models
+     */
+    private static void checkReplay(File file) throws IOException {
+	file.delete();
+	Random random = new Random(12);
+	RefereeList refList = base();
+	Season season = new Season();
+	ModelJournal journal = ModelJournal.open(file.toPath(), 1, 0, 1,
+		refList, season);
+
+	for (int i = 0; i < CHANGES; i++) {
+	    int change = random.nextInt(4);
+	    Referee ref = refList.get(random.nextInt(refList.size()));
+	    if (change == 0) {
+		Referee added = RefereeListBenchmark.randomReferee(refList,
+			random);
+		refList.add(added);
+		journal.refereeAdded(added);
+	    } else if (change == 1) {
+		ref.setQualification(RefQualification.values()[random
+			.nextInt(2)]);
+		ref.setQualificationLevel(1 + random.nextInt(4));
+		ref.setHomeLocation(Location.values()[random.nextInt(3)]);
+		ref.setTravelLocation(random.nextBoolean() ? "YYN" : "NYY");
+		journal.refereeEdited(ref);
+	    } else if (change == 2) {
+		refList.remove(ref);
+		journal.refereeRemoved(ref);
+	    } else {
+		Match match = RefereeListBenchmark.randomMatch(random);
+		ArrayList<Referee> referees = refList.getSuitableReferees(match,
+			2);
+		match.setReferees(referees.toArray(new Referee[2]));
+		for (Referee allocated : referees)
+		    allocated.addMatch(match);
+		season.addMatch(match);
+		journal.matchesAllocated(Collections.singletonList(match));
+	    }
+	}
+
+	// Crash: the journal is not closed, and the last record is cut off
+	String expected = describe(refList, season);
+	Referee last = RefereeListBenchmark.randomReferee(refList, random);
+	refList.add(last);
+	journal.refereeAdded(last);
+	try (RandomAccessFile cut = new RandomAccessFile(file, "rw")) {
+	    cut.setLength(cut.length() - 3);
+	}
+	RefereeList replayedList = base();
+	Season replayedSeason = new Season();
+	ModelJournal replayed = ModelJournal.open(file.toPath(), 1, 0,
+		1, replayedList, replayedSeason);
+	if (replayed.getReplayed() != CHANGES)
+	    throw new AssertionError("Replayed " + replayed.getReplayed());
+	replayed.close();
+	if (!expected.equals(describe(replayedList, replayedSeason)))
+	    throw new AssertionError("Replayed model differs");
+	System.out.println("Replayed " + replayed.getReplayed()
+		+ " changes after a crash");
+
+	// A journal of another base is not replayed
+	ModelJournal other = ModelJournal.open(file.toPath(), 2, 0, 1,
+		base(), new Season());
+	if (other.getReplayed() != 0)
+	    throw new AssertionError("Journal of another base replayed");
+	other.close();
+    }
+
+    /**
+     * Times committing edits from a number of threads
+     * @return the elapsed seconds
+     */
+    private static double commit(File file, int syncEvery, int threads)
+	    throws Exception {
+	file.delete();
+	final RefereeList refList = base();
+	final ModelJournal journal = ModelJournal.open(file.toPath(), 1, 0,
+		syncEvery, refList, new Season());
+	final int perThread = COMMITS / threads;
+
+	Thread[] workers = new Thread[threads];
+	final IOException[] failure = new IOException[1];
+	long start = System.nanoTime();
+	for (int t = 0; t < threads; t++) {
+	    final int offset = t;
+	    workers[t] = new Thread() {
+		@Override
+		public void run() {
+		    try {
+			for (int i = 0; i < perThread; i++)
+			    journal.refereeEdited(refList.get(
+				    (offset + i) % REFEREES));
+		    } catch (IOException e) {
+			failure[0] = e;
+		    }
+		}
+	    };
+	    workers[t].start();
+	}
+	for (Thread worker : workers)
+	    worker.join();
+	journal.close();
+	double seconds = (System.nanoTime() - start) / 1e9;
+	if (failure[0] != null)
+	    throw failure[0];
+	return seconds;
+    }
+
+    /**
+     * Describes all referees and matches
+     */
+    private static String describe(RefereeList refList, Season season) {
+	StringBuilder model = new StringBuilder();
+	for (Referee ref : refList)
+	    model.append(ref);
+	for (Match match : season)
+	    model.append(match);
+	return model.toString();
+    }
+
+    /**
+     * The same random referees each time, as read from a base
+     */
+    private static RefereeList base() {
+	Random random = new Random(REFEREES);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	return refList;
+    }
+}
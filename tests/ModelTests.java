@@ -2,6 +2,19 @@ import static org.junit.Assert.*;
 import javaball.enums.*;
 import javaball.model.*;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,6 +55,509 @@ public class ModelTests {
 	}
     }
     
+    @Test
+    public void testRefereeLookup() {
+	referees = new RefereeList();
+	Referee ref = referees.getReferee("dg1");
+	assertNotNull(ref);
+	assertSame(ref, referees.getReferee("dave", "gray"));
+	referees.remove(ref);
+	assertNull(referees.getReferee("dg1"));
+	assertNull(referees.getReferee("dave", "gray"));
+    }
+
+    @Test
+    public void testLoadReportsMalformedLines() throws IOException {
+	File file = File.createTempFile("referees", ".txt");
+	file.deleteOnExit();
+	try (FileWriter out = new FileWriter(file)) {
+	    out.write("DG1 Dave   Gray NJB2 3 Central NYY\r\n"
+		    + "DM1 Denis Montague IJB1 3 Nowhere YYY\r\n"
+		    + "\r\n"
+		    + "JL1 Jack Low IJB2 2 South NY\r\n"
+		    + "DG1 Dan Gold NJB1 0 North YNN\r\n"
+		    + "JS1 Jane Smith ijb3 12 North YYN");
+	}
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	ArrayList<String> errors = referees.load(file.getPath());
+	assertEquals(2, referees.size());
+	assertEquals(3, errors.size());
+	assertTrue(errors.get(0).startsWith("Line 2:"));
+	assertTrue(errors.get(1).startsWith("Line 4:"));
+	assertTrue(errors.get(2).startsWith("Line 5:"));
+	Referee ref = referees.getReferee("js1");
+	assertEquals(RefQualification.IJB, ref.getQualification());
+	assertEquals(3, ref.getQualificationLevel());
+	assertEquals(12, ref.getAllocations());
+	assertEquals("YYN", ref.getTravelLocations());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	Referee jack = new Referee("JL1 Jack Low IJB2 2 South NNY");
+	referees.add(dave);
+	referees.add(jack);
+	Match first = season.getMatches().get(0);
+	first.setReferees(new Referee[] {dave, jack});
+	referees.remove(jack);
+
+	File file = File.createTempFile("model", ".snapshot");
+	file.deleteOnExit();
+	ModelSnapshot.capture(referees, season, null).write(file.toPath());
+	Season restoredSeason = new Season();
+	RefereeList restored = ModelSnapshot.read(file.toPath())
+		.restore(restoredSeason);
+
+	assertEquals(1, restored.size());
+	Referee ref = restored.getReferee("dg1");
+	assertEquals(dave.toString(), ref.toString());
+	assertEquals("DG2", restored.createID("Dan", "Gold"));
+	assertEquals(season.getNumMatches(), restoredSeason.getNumMatches());
+	Referee[] restoredReferees = restoredSeason.getMatches().get(0)
+		.getReferees();
+	assertSame(ref, restoredReferees[0]);
+	assertEquals(jack.toString(), restoredReferees[1].toString());
+	assertNull(restored.getReferee("jl1"));
+    }
+
+    @Test
+    public void testJournalReplay() throws IOException {
+	File file = File.createTempFile("model", ".journal");
+	file.deleteOnExit();
+	file.delete();
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	referees.add(new Referee("DG1 Dave Gray NJB2 3 Central NYY"));
+	ModelJournal journal = ModelJournal.open(file.toPath(), 1, 0, 1,
+		referees, new Season());
+
+	Referee jack = new Referee("JL1 Jack Low IJB2 2 South NNY");
+	referees.add(jack);
+	journal.refereeAdded(jack);
+	Referee dave = referees.getReferee("dg1");
+	dave.setTravelLocation("YYY");
+	journal.refereeEdited(dave);
+	Match first = season.getMatches().get(0);
+	first.setReferees(new Referee[] {dave, jack});
+	dave.addMatch(first);
+	jack.addMatch(first);
+	journal.matchesAllocated(Collections.singletonList(first));
+	referees.remove(jack);
+	journal.refereeRemoved(jack);
+
+	// Replay onto the same base without closing the journal
+	RefereeList replayed = new RefereeList(RefereeList.UNLIMITED);
+	replayed.add(new Referee("DG1 Dave Gray NJB2 3 Central NYY"));
+	Season replayedSeason = new Season();
+	ModelJournal.open(file.toPath(), 1, 0, 1, replayed, replayedSeason)
+		.close();
+	assertEquals(1, replayed.size());
+	assertEquals(dave.toString(), replayed.getReferee("dg1").toString());
+	assertEquals(1, replayedSeason.getNumMatches());
+	assertEquals(jack.toString(), replayedSeason.getMatches().get(0)
+		.getReferees()[1].toString());
+    }
+
+    @Test
+    public void testUnreplayableJournalMovedAside() throws IOException {
+	File file = File.createTempFile("model", ".journal");
+	file.deleteOnExit();
+	file.delete();
+	ModelJournal.open(file.toPath(), 1, 100, 1,
+		new RefereeList(RefereeList.UNLIMITED), new Season()).close();
+	long size = file.length();
+
+	// A base older than the journal cannot be brought up to date
+	try {
+	    ModelJournal.open(file.toPath(), 1, 0, 1,
+		    new RefereeList(RefereeList.UNLIMITED), new Season());
+	    fail("Journal replayed onto an older base");
+	} catch (IOException e) {
+	}
+
+	// The changes are kept, but no longer where the journal is opened
+	Path aside = ModelJournal.moveAside(file.toPath());
+	aside.toFile().deleteOnExit();
+	assertFalse(file.exists());
+	assertEquals(size, Files.size(aside));
+    }
+
+    @Test
+    public void testCheckpointCompactsJournal() throws IOException {
+	File journalFile = File.createTempFile("model",
+		".journal");
+	File snapshotFile = File.createTempFile("model",
+		".snapshot");
+	journalFile.deleteOnExit();
+	snapshotFile.deleteOnExit();
+	journalFile.delete();
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	ModelJournal journal = ModelJournal.open(journalFile.toPath(), 7, 0, 1,
+		referees, new Season());
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	referees.add(dave);
+	journal.refereeAdded(dave);
+
+	// Checkpoint, with a change made while it is being written
+	ModelSnapshot snapshot = ModelSnapshot.capture(referees, new Season(),
+		journal);
+	Referee jack = new Referee("JL1 Jack Low IJB2 2 South NNY");
+	referees.add(jack);
+	journal.refereeAdded(jack);
+	snapshot.write(snapshotFile.toPath());
+	journal.compact(snapshot.getJournalPosition());
+
+	// Only the change after the checkpoint is replayed
+	ModelSnapshot restored = ModelSnapshot.read(snapshotFile.toPath());
+	assertEquals(7, restored.getJournalId());
+	Season restoredSeason = new Season();
+	RefereeList restoredList = restored.restore(restoredSeason);
+	assertEquals(1, restoredList.size());
+	ModelJournal replayed = ModelJournal.open(journalFile.toPath(),
+		restored.getJournalId(), restored.getJournalPosition(), 1,
+		restoredList, restoredSeason);
+	replayed.close();
+	journal.close();
+	assertEquals(1, replayed.getReplayed());
+	assertEquals(jack.toString(),
+		restoredList.getReferee("jl1").toString());
+    }
+
+    @Test
+    public void testConcurrentAllocationsOfOneWeek()
+	    throws InterruptedException {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	referees.add(new Referee("DG1 Dave Gray NJB2 3 Central NYY"));
+	referees.add(new Referee("JL1 Jack Low IJB2 2 Central NYY"));
+	referees.add(new Referee("AB1 Anna Bell IJB3 1 Central NYY"));
+	final ConcurrentModel model = new ConcurrentModel(referees,
+		new Season(), null);
+
+	// Threads competing for the same week: only one may allocate it
+	final AtomicInteger allocated =
+		new AtomicInteger();
+	Thread[] threads = new Thread[8];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread() {
+		@Override
+		public void run() {
+		    if (model.allocateReferees(3, MatchLevel.JUNIOR,
+			    Location.CENTRAL) != null)
+			allocated.incrementAndGet();
+		}
+	    };
+	    threads[i].start();
+	}
+	for (Thread thread : threads)
+	    thread.join();
+	assertEquals(1, allocated.get());
+	assertEquals(1, model.getMatches().size());
+	assertEquals(2, model.getMatch(3).getReferees().length);
+    }
+
+    @Test
+    public void testSuitableRefereesAllocatedFirst() {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	referees.add(new Referee("DG1 Dave Gray NJB2 0 Central NYY"));
+	referees.add(new Referee("JL1 Jack Low IJB2 0 Central NYY"));
+	referees.add(new Referee("AB1 Anna Bell IJB3 1 Central YYY"));
+	referees.add(new Referee("TT1 Tim Toms NJB1 0 North YYN"));
+	ConcurrentModel model = new ConcurrentModel(referees, new Season(),
+		null);
+	model.allocateReferees(3, MatchLevel.JUNIOR, Location.CENTRAL);
+
+	// The ranking reads as it did when the match was allocated
+	ArrayList<String> ids = new ArrayList<String>();
+	for (Referee ref : model.getSuitableReferees(3))
+	    ids.add(ref.getID());
+	assertEquals(Arrays.asList("DG1", "JL1", "AB1", "TT1"), ids);
+    }
+
+    @Test
+    public void testRefereeListenerEvents() {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	referees.add(new Referee("DG1 Dave Gray NJB2 3 Central NYY"));
+	referees.add(new Referee("JL1 Jack Low IJB2 2 Central NYY"));
+	ConcurrentModel model = new ConcurrentModel(referees, new Season(),
+		null);
+	StringBuilder events = recordEvents(model);
+
+	// Only the referees actually changed are reported
+	Referee anna = model.addReferee("Anna", "Bell", RefQualification.IJB, 3,
+		0, Location.SOUTH, "NNY");
+	model.allocateReferees(3, MatchLevel.JUNIOR, Location.CENTRAL);
+	model.removeReferee(anna);
+	assertEquals("+AB1~JL1~DG1-AB1", events.toString());
+    }
+
+    @Test
+    public void testInvalidEditChangesNothing() throws IOException {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	referees.add(dave);
+	referees.add(new Referee("JL1 Jack Low IJB2 2 Central NYY"));
+	File journalFile = File.createTempFile("model",
+		".journal");
+	journalFile.deleteOnExit();
+	journalFile.delete();
+	ModelJournal journal = ModelJournal.open(journalFile.toPath(), 1, 0,
+		ModelJournal.SYNC_EVERY, referees, new Season());
+	ConcurrentModel model = new ConcurrentModel(referees, new Season(),
+		journal);
+	StringBuilder events = recordEvents(model);
+
+	// A bad travel string or level leaves all details as they were
+	long position = journal.getPosition();
+	for (Object[] edit : new Object[][] {{2, "YN"}, {16, "YYY"}, {-1, "YYY"}})
+	    try {
+		model.editReferee(dave, RefQualification.IJB, (Integer) edit[0],
+			Location.SOUTH, (String) edit[1]);
+		fail("Invalid edit accepted");
+	    } catch (IllegalArgumentException e) {
+	    }
+	assertEquals("DG1 Dave Gray NJB2 3 Central NYY", dave.toString().trim());
+	assertEquals(position, journal.getPosition());
+	assertEquals("", events.toString());
+
+	assertTrue(model.editReferee(dave, RefQualification.IJB, 4,
+		Location.SOUTH, "YYN"));
+	assertEquals("DG1 Dave Gray IJB4 3 South YYN", dave.toString().trim());
+	assertEquals("~DG1", events.toString());
+	journal.close();
+    }
+
+    @Test
+    public void testReportsWrittenFromCopies() throws IOException {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	referees.add(dave);
+	referees.add(new Referee("JL1 Jack Low IJB2 2 Central NYY"));
+	referees.add(new Referee("AB1 Anna Bell IJB3 0 South NNY"));
+	ConcurrentModel model = new ConcurrentModel(referees, new Season(),
+		null);
+	model.allocateReferees(3, MatchLevel.JUNIOR, Location.CENTRAL);
+	model.removeReferee(dave);
+
+	File matchFile = File.createTempFile("matches", ".txt");
+	File refereeFile = File.createTempFile("referees",
+		".txt");
+	matchFile.deleteOnExit();
+	refereeFile.deleteOnExit();
+	model.writeReports(matchFile.toPath(), refereeFile.toPath());
+
+	// Removed referees still name their matches
+	List<String> matchLines = Files.readAllLines(
+		matchFile.toPath());
+	assertEquals(3, matchLines.size());
+	assertTrue(matchLines.get(2).matches(
+		"3\\s+Junior\\s+Central\\s+Jack Low\\s+Dave Gray\\s*"));
+	assertEquals(Arrays.asList(
+		"AB1 Anna Bell IJB3 0 South NNY",
+		"JL1 Jack Low IJB2 3 Central NYY"),
+		Files.readAllLines(refereeFile.toPath()));
+    }
+
+    @Test
+    public void testPrefixSearch() {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	Referee dan = new Referee("DG2 Dan Gold NJB1 0 North YNN");
+	Referee jack = new Referee("JL1 Jack Dawson IJB2 2 South NNY");
+	referees.add(dave);
+	referees.add(dan);
+	referees.add(jack);
+
+	// IDs first, then first and last names, each referee once
+	assertEquals(Arrays.asList(dave, dan, jack),
+		referees.findReferees("D", 10));
+	assertEquals(Arrays.asList(dan, dave, jack),
+		referees.findReferees("da", 10));
+	assertEquals(Arrays.asList(dave),
+		referees.findReferees("dave g", 10));
+	assertEquals(1, referees.findReferees("d", 1).size());
+	assertTrue(referees.findReferees("x", 10).isEmpty());
+
+	// Changes after the index was built are found as well
+	Referee anna = new Referee("AD1 Anna Dale IJB3 1 Central NYY");
+	referees.add(anna);
+	referees.remove(dave);
+	assertEquals(Arrays.asList(dan, anna, jack),
+		referees.findReferees("d", 10));
+	referees.add(dave);
+	assertEquals(Arrays.asList(dave, dan),
+		referees.findReferees("dg", 10));
+    }
+
+    @Test
+    public void testFuzzyNameSearch() {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	Referee dan = new Referee("DG2 Dan Gold NJB1 0 North YNN");
+	Referee jack = new Referee("JL1 Jack Low IJB2 2 South NNY");
+	referees.add(dave);
+	referees.add(dan);
+	referees.add(jack);
+
+	// Misspelt names and names in another order find the referee
+	assertSame(dave, referees.search("dave grey", 3).get(0));
+	assertSame(dave, referees.search("Gray Davd", 3).get(0));
+	assertSame(jack, referees.search("jak lowe", 3).get(0));
+	assertTrue(referees.search("zoe quinn", 3).isEmpty());
+
+	// Referees added and removed later are found or no longer found
+	Referee anna = new Referee("AB1 Anna Bell IJB3 1 Central NYY");
+	referees.add(anna);
+	referees.remove(dave);
+	assertSame(anna, referees.search("ana bel", 3).get(0));
+	for (Referee ref : referees.search("dave grey", 3))
+	    assertNotSame(dave, ref);
+    }
+
+    @Test
+    public void testAllocationStatistics() throws IOException {
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	Referee dave = new Referee("DG1 Dave Gray NJB2 3 Central NYY");
+	Referee dan = new Referee("DG2 Dan Gold NJB1 0 North YNN");
+	Referee jack = new Referee("JL1 Jack Low IJB2 2 South NNY");
+	referees.add(dave);
+	referees.add(dan);
+	referees.add(jack);
+	assertStatistics(referees);
+	assertEquals(0, referees.getStatistics().getMin());
+	assertEquals(3, referees.getMaxAllocation());
+
+	// Allocations, edits and removals keep the statistics up to date
+	Match first = season.getMatches().get(0);
+	dan.addMatch(first);
+	assertStatistics(referees);
+	assertEquals(1, referees.getStatistics().getMin());
+	dave.addMatch(first);
+	dave.setHomeLocation(Location.SOUTH);
+	assertStatistics(referees);
+	assertEquals(4, referees.getMaxAllocation());
+	AllocationStatistics before = referees.getStatistics();
+	referees.remove(dave);
+	assertStatistics(referees);
+	assertEquals(2, referees.getMaxAllocation());
+	assertEquals(4, before.getMax());
+
+	// A removed referee no longer counts
+	dave.addMatch(first);
+	assertStatistics(referees);
+
+	// Restored referees are counted as well
+	File file = File.createTempFile("model", ".snapshot");
+	file.deleteOnExit();
+	ModelSnapshot.capture(referees, season, null).write(file.toPath());
+	RefereeList restored = ModelSnapshot.read(file.toPath())
+		.restore(new Season());
+	assertStatistics(restored);
+	restored.getReferee("jl1").addMatch(first);
+	assertStatistics(restored);
+    }
+
+    @Test
+    public void testStatisticsOfLargeAllocations() throws IOException {
+	File file = File.createTempFile("referees", ".txt");
+	file.deleteOnExit();
+	try (FileWriter out = new FileWriter(file)) {
+	    out.write("DG1 Dave Gray NJB2 2147483647 Central NYY\r\n"
+		    + "DG2 Dan Gold NJB1 200000000 North YNN\r\n"
+		    + "JL1 Jack Low IJB2 2 South NNY\r\n"
+		    + "JS1 Jane Smith IJB3 1023 North YYN");
+	}
+	referees = new RefereeList(RefereeList.UNLIMITED);
+	assertTrue(referees.load(file.getPath()).isEmpty());
+	assertStatistics(referees);
+	assertEquals(Integer.MAX_VALUE, referees.getMaxAllocation());
+	assertEquals(4, referees.getStatistics().getHistogram().size());
+
+	// The most an int can count is not allocated past
+	Match first = season.getMatches().get(0);
+	Referee dave = referees.getReferee("dg1");
+	dave.addMatch(first);
+	assertEquals(Integer.MAX_VALUE, dave.getAllocations());
+	assertStatistics(referees);
+
+	// Numbers of allocations move between the array and the outliers
+	referees.getReferee("js1").addMatch(first);
+	assertStatistics(referees);
+	referees.remove(dave);
+	assertStatistics(referees);
+	assertEquals(200000000, referees.getMaxAllocation());
+	referees.remove(referees.getReferee("dg2"));
+	assertStatistics(referees);
+	assertEquals(1024, referees.getMaxAllocation());
+	assertEquals(2, referees.getStatistics().getMin());
+    }
+
+    /**
+     * Records the referee events of a model as "+", "~" or "-" and the ID
+     */
+    private static StringBuilder recordEvents(ConcurrentModel model) {
+	final StringBuilder events = new StringBuilder();
+	model.addRefereeListener(new RefereeListener() {
+	    @Override
+	    public void refereeAdded(Referee ref) {
+		events.append("+" + ref.getID());
+	    }
+
+	    @Override
+	    public void refereeChanged(Referee ref) {
+		events.append("~" + ref.getID());
+	    }
+
+	    @Override
+	    public void refereeRemoved(Referee ref) {
+		events.append("-" + ref.getID());
+	    }
+	});
+	return events;
+    }
+
+    /**
+     * Checks the statistics of a list against its referees
+     */
+    private static void assertStatistics(RefereeList list) {
+	AllocationStatistics statistics = list.getStatistics();
+	int min = Integer.MAX_VALUE, max = 0;
+	double sum = 0;
+	TreeMap<Integer, Integer> histogram =
+		new TreeMap<Integer, Integer>();
+	for (Referee ref : list) {
+	    int allocations = ref.getAllocations();
+	    min = Math.min(min, allocations);
+	    max = Math.max(max, allocations);
+	    sum += allocations;
+	    Integer count = histogram.get(allocations);
+	    histogram.put(allocations, count == null ? 1 : count + 1);
+	}
+	double mean = sum / list.size();
+	double variance = 0;
+	for (Referee ref : list)
+	    variance += (ref.getAllocations() - mean)
+		    * (ref.getAllocations() - mean) / list.size();
+
+	assertEquals(list.size(), statistics.getReferees());
+	assertEquals(min, statistics.getMin());
+	assertEquals(max, statistics.getMax());
+	assertEquals(mean, statistics.getMean(), 1e-9);
+	assertEquals(variance, statistics.getVariance(),
+		1e-9 * Math.max(1, variance));
+	assertEquals(histogram, statistics.getHistogram());
+	for (int allocations = 0; allocations <= Math.min(max, 2048);
+		allocations++) {
+	    Integer count = histogram.get(allocations);
+	    assertEquals(count == null ? 0 : count.intValue(),
+		    statistics.getReferees(allocations));
+	}
+	for (Map.Entry<Integer, Integer> count
+		: histogram.entrySet())
+	    assertEquals(count.getValue().intValue(),
+		    statistics.getReferees(count.getKey()));
+    }
+
     @Test
     public void testAssertTrue() {
       org.junit.Assert.assertTrue("failure - should be true", true);
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.model.Match;
+import javaball.model.ParallelAllocator;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Checks that ParallelAllocator gives exactly the same allocations as
+ * allocating the same fixtures one by one, and compares their run times:
+ * always planning in parallel against allocate(), which only plans in
+ * parallel where the groups and the pool's threads make up for the cost of
+ * planning (and otherwise takes as long as allocating one by one).
+ * <p>
+ * Usage: java ParallelAllocationCheck [seed]
+ */
+public class ParallelAllocationCheck {
+
+    private static final int REFEREES = 200000;
+    private static final int MATCHES = 20000;
+
+    public static void main(String[] args) {
+	long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+
+	// Referees travelling anywhere tie all areas into one group, referees
+	// staying at home leave the areas independent
+	for (boolean homeOnly : new boolean[] {false, true}) {
+	    RefereeList sequentialList = roster(seed, homeOnly);
+	    RefereeList parallelList = roster(seed, homeOnly);
+	    RefereeList chosenList = roster(seed, homeOnly);
+	    ArrayList<Match> sequentialFixtures = fixtures(seed);
+	    ArrayList<Match> parallelFixtures = fixtures(seed);
+	    ArrayList<Match> chosenFixtures = fixtures(seed);
+
+	    long start = System.nanoTime();
+	    for (Match match : sequentialFixtures) {
+		ArrayList<Referee> best = sequentialList.getSuitableReferees(
+			match, 2);
+		if (best.size() > 1) {
+		    match.setReferees(best.toArray(new Referee[2]));
+		    for (Referee ref : best)
+			ref.addMatch(match);
+		}
+	    }
+	    double sequentialMs = (System.nanoTime() - start) / 1e6;
+
+	    start = System.nanoTime();
+	    new ParallelAllocator(parallelList).allocateInParallel(
+		    parallelFixtures);
+	    double parallelMs = (System.nanoTime() - start) / 1e6;
+
+	    start = System.nanoTime();
+	    new ParallelAllocator(chosenList).allocate(chosenFixtures);
+	    double chosenMs = (System.nanoTime() - start) / 1e6;
+
+	    // Compare the allocated referees match by match
+	    int mismatches = 0;
+	    for (int i = 0; i < MATCHES; i++) {
+		Referee[] expected = sequentialFixtures.get(i).getReferees();
+		Referee[] actual = parallelFixtures.get(i).getReferees();
+		Referee[] chosen = chosenFixtures.get(i).getReferees();
+		for (int j = 0; j < 2; j++) {
+		    if (!String.valueOf(id(expected[j])).equals(
+			    String.valueOf(id(actual[j]))))
+			mismatches++;
+		    if (!String.valueOf(id(expected[j])).equals(
+			    String.valueOf(id(chosen[j]))))
+			mismatches++;
+		}
+	    }
+
+	    System.out.printf("%-10s sequential %8.1f ms  parallel %8.1f ms  "
+		    + "allocate %8.1f ms  %s%n", homeOnly ? "home only" : "mixed",
+		    sequentialMs, parallelMs, chosenMs, mismatches == 0
+			    ? "identical" : mismatches + " MISMATCHES");
+	}
+    }
+
+    private static String id(Referee ref) {
+	return ref == null ? null : ref.getID();
+    }
+
+    private static RefereeList roster(long seed, boolean homeOnly) {
+	Random random = new Random(seed);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++) {
+	    Referee ref = RefereeListBenchmark.randomReferee(refList, random);
+	    if (homeOnly)
+		ref.setTravelLocation(ref.getHomeLocation() == Location.NORTH
+			? "YNN" : ref.getHomeLocation() == Location.CENTRAL
+				? "NYN" : "NNY");
+	    refList.add(ref);
+	}
+	return refList;
+    }
+
+    private static ArrayList<Match> fixtures(long seed) {
+	Random random = new Random(~seed);
+	ArrayList<Match> fixtures = new ArrayList<>(MATCHES);
+	for (int i = 0; i < MATCHES; i++)
+	    fixtures.add(RefereeListBenchmark.randomMatch(random));
+	return fixtures;
+    }
+}
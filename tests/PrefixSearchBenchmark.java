@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Benchmark for type-ahead search: compares scanning every referee for IDs
+ * and names starting with a prefix with the prefix index of RefereeList, for
+ * random prefixes of one to three letters and the top 20 matches, at a million
+ * referees. The search is timed again after referees have been added and
+ * removed since the index was built.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g PrefixSearchBenchmark
+ */
+public class PrefixSearchBenchmark {
+
+    private static final int REFEREES = 1000000;
+    private static final int MATCHES = 20;
+    private static final int QUERIES = 100000;
+    private static final int SCANS = 20;
+    private static final int CHANGES = 1000;
+
+    public static void main(String[] args) {
+	Random random = new Random(21);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+
+	long start = System.nanoTime();
+	refList.findReferees("a", MATCHES);
+	System.out.printf("Index built in %.1f ms%n",
+		(System.nanoTime() - start) / 1e6);
+
+	// Both must find the same referees before timing them
+	String[] prefixes = prefixes(random, QUERIES);
+	check(refList, prefixes);
+
+	System.out.printf("%-26s %12s %12s%n", "", "scan us", "index us");
+	System.out.printf("%-26s %12.1f %12.2f%n", "Built index", scan(refList,
+		prefixes), search(refList, prefixes));
+
+	// Add and remove referees since the index was built
+	ArrayList<Referee> refs = refList.getReferees();
+	for (int i = 0; i < CHANGES; i++) {
+	    refList.remove(refs.get(random.nextInt(refs.size())));
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	}
+	check(refList, prefixes);
+	System.out.printf("%-26s %12.1f %12.2f%n", "After " + CHANGES
+		+ " adds/removes", scan(refList, prefixes), search(refList,
+			prefixes));
+    }
+
+    /**
+     * Random prefixes of one to three letters, some upper case
+     */
+    private static String[] prefixes(Random random, int count) {
+	String[] prefixes = new String[count];
+	for (int i = 0; i < count; i++) {
+	    char[] prefix = new char[1 + random.nextInt(3)];
+	    for (int j = 0; j < prefix.length; j++)
+		prefix[j] = (char) ((random.nextBoolean() ? 'a' : 'A')
+			+ random.nextInt(26));
+	    prefixes[i] = new String(prefix);
+	}
+	return prefixes;
+    }
+
+    /**
+     * Checks that the index finds the same referees as a scan
+     */
+    private static void check(RefereeList refList, String[] prefixes) {
+	for (int i = 0; i < 100; i++) {
+	    String prefix = prefixes[i];
+	    Set<Referee> found = Collections.newSetFromMap(
+		    new IdentityHashMap<Referee, Boolean>());
+	    ArrayList<Referee> indexed = refList.findReferees(prefix,
+		    Integer.MAX_VALUE);
+	    found.addAll(indexed);
+	    ArrayList<Referee> scanned = scan(refList, prefix,
+		    Integer.MAX_VALUE);
+	    if (found.size() != indexed.size()
+		    || !found.containsAll(scanned)
+		    || scanned.size() != indexed.size())
+		throw new AssertionError("Index and scan disagree for "
+			+ prefix);
+	}
+    }
+
+    /**
+     * Times searching through the index, in microseconds per search
+     */
+    private static double search(RefereeList refList, String[] prefixes) {
+	int found = 0;
+	long start = System.nanoTime();
+	for (String prefix : prefixes)
+	    found += refList.findReferees(prefix, MATCHES).size();
+	long time = System.nanoTime() - start;
+	if (found == 0)
+	    throw new AssertionError("Nothing found");
+	return time / 1e3 / prefixes.length;
+    }
+
+    /**
+     * Times searching by scanning, in microseconds per search
+     */
+    private static double scan(RefereeList refList, String[] prefixes) {
+	long start = System.nanoTime();
+	for (int i = 0; i < SCANS; i++)
+	    scan(refList, prefixes[i], MATCHES);
+	return (System.nanoTime() - start) / 1e3 / SCANS;
+    }
+
+    /**
+     * Scans the referees for IDs and names starting with a prefix
+     */
+    private static ArrayList<Referee> scan(RefereeList refList,
+	    String prefix, int max) {
+	prefix = prefix.toLowerCase();
+	ArrayList<Referee> matches = new ArrayList<>();
+	for (Referee ref : refList) {
+	    if (ref.getID().toLowerCase().startsWith(prefix)
+		    || ref.getFirstName().toLowerCase().startsWith(prefix)
+		    || ref.getLastName().toLowerCase().startsWith(prefix))
+		matches.add(ref);
+	}
+	return new ArrayList<>(matches.subList(0, Math.min(max,
+		matches.size())));
+    }
+}
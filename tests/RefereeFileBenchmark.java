@@ -0,0 +1,89 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Benchmark for reading large referee files: writes random roster exports and
+ * times RefereeList.load, sequentially and in parallel chunks on the common
+ * ForkJoinPool, against reading them line by line with a Scanner and the
+ * Referee line constructor.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g RefereeFileBenchmark
+ */
+public class RefereeFileBenchmark {
+
+    private static final int[] SIZES = {100000, 1000000, 2000000};
+
+    private static final String[] HOMES = {"North", "Central", "South"};
+
+    public static void main(String[] args) throws IOException {
+	System.out.println("Parallelism: "
+		+ ForkJoinPool.commonPool().getParallelism());
+	System.out.printf("%-9s %10s %10s %12s %10s%n", "Lines", "MB",
+		"load ms", "parallel ms", "scanner ms");
+
+	for (int size : SIZES) {
+	    File file = File.createTempFile("referees", ".txt");
+	    file.deleteOnExit();
+	    write(file, size);
+
+	    long start = System.nanoTime();
+	    RefereeList loaded = new RefereeList(RefereeList.UNLIMITED);
+	    ArrayList<String> errors = loaded.load(file.getPath());
+	    double loadMs = (System.nanoTime() - start) / 1e6;
+	    loaded = null;
+
+	    start = System.nanoTime();
+	    RefereeList parallel = new RefereeList(RefereeList.UNLIMITED);
+	    ArrayList<String> parallelErrors = parallel.load(file.getPath(),
+		    ForkJoinPool.commonPool());
+	    double parallelMs = (System.nanoTime() - start) / 1e6;
+	    parallel = null;
+
+	    start = System.nanoTime();
+	    RefereeList scanned = new RefereeList(RefereeList.UNLIMITED);
+	    try (Scanner lines = new Scanner(new FileReader(file))) {
+		while (lines.hasNextLine())
+		    scanned.add(new Referee(lines.nextLine()));
+	    }
+	    double scannerMs = (System.nanoTime() - start) / 1e6;
+
+	    if (!errors.isEmpty() || !parallelErrors.isEmpty()
+		    || scanned.size() != size)
+		throw new AssertionError("Unexpected errors " + errors);
+	    System.out.printf("%-9d %10.1f %10.1f %12.1f %10.1f%n", size,
+		    file.length() / 1e6, loadMs, parallelMs, scannerMs);
+	    file.delete();
+	}
+    }
+
+    /**
+     * Writes a random roster with unique IDs and CR LF line ends
+     */
+    private static void write(File file, int size) throws IOException {
+	Random random = new Random(size);
+	try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+	    for (int i = 0; i < size; i++) {
+		char first = (char) ('A' + random.nextInt(26));
+		char last = (char) ('A' + random.nextInt(26));
+		out.write(first + "" + last + i + " " + first + "name"
+			+ random.nextInt(500) + " " + last + "surname"
+			+ random.nextInt(2000) + " "
+			+ (random.nextBoolean() ? "NJB" : "IJB")
+			+ (1 + random.nextInt(4)) + " " + random.nextInt(20)
+			+ " " + HOMES[random.nextInt(3)] + " "
+			+ (random.nextBoolean() ? "Y" : "N")
+			+ (random.nextBoolean() ? "Y" : "N") + "Y\r\n");
+	    }
+	}
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.enums.RefQualification;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+
+/**
+ * Scaling benchmark for RefereeList: times add, remove, lookup and
+ * suitability queries for growing roster sizes.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g RefereeListBenchmark
+ */
+public class RefereeListBenchmark {
+
+    private static final int[] SIZES = {1000, 10000, 100000, 1000000};
+    private static final int LOOKUPS = 100000;
+    private static final int UPDATES = 10000;
+    private static final int QUERIES = 20;
+
+    public static void main(String[] args) {
+	System.out.printf("%-9s %10s %10s %10s %10s %10s %10s%n", "Referees",
+		"fill ms", "id us", "name us", "add/rm us", "top-2 ms",
+		"ranked ms");
+
+	for (int size : SIZES) {
+	    Random random = new Random(42);
+	    RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	    ArrayList<Referee> added = new ArrayList<>(size);
+
+	    // Fill the list with random referees
+	    long start = System.nanoTime();
+	    for (int i = 0; i < size; i++) {
+		Referee ref = randomReferee(refList, random);
+		refList.add(ref);
+		added.add(ref);
+	    }
+	    double fillMs = (System.nanoTime() - start) / 1e6;
+
+	    // Lookups by ID
+	    start = System.nanoTime();
+	    int found = 0;
+	    for (int i = 0; i < LOOKUPS; i++) {
+		Referee ref = added.get(random.nextInt(size));
+		if (refList.getReferee(ref.getID().toLowerCase()) != null)
+		    found++;
+	    }
+	    double idUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+
+	    // Lookups by full name
+	    start = System.nanoTime();
+	    for (int i = 0; i < LOOKUPS; i++) {
+		Referee ref = added.get(random.nextInt(size));
+		if (refList.getReferee(ref.getFirstName().toLowerCase(),
+			ref.getLastName().toLowerCase()) != null)
+		    found++;
+	    }
+	    double nameUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+
+	    // Remove and re-add referees
+	    start = System.nanoTime();
+	    for (int i = 0; i < UPDATES; i++) {
+		Referee ref = added.get(random.nextInt(size));
+		refList.remove(ref);
+		refList.add(ref);
+	    }
+	    double updateUs = (System.nanoTime() - start) / 1e3 / UPDATES;
+
+	    // Top-2 suitability queries for random matches
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		Match match = randomMatch(random);
+		found += refList.getSuitableReferees(match, 2).size();
+	    }
+	    double topMs = (System.nanoTime() - start) / 1e6 / QUERIES;
+
+	    // Fully ranked suitability lists (as shown in the table)
+	    start = System.nanoTime();
+	    for (int i = 0; i < QUERIES; i++) {
+		Match match = randomMatch(random);
+		found += refList.getSuitableReferees(match).size();
+	    }
+	    double rankedMs = (System.nanoTime() - start) / 1e6 / QUERIES;
+
+	    System.out.printf("%-9d %10.1f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+		    size, fillMs, idUs, nameUs, updateUs, topMs, rankedMs);
+	    if (found == 0)
+		System.out.println("(no referees found)");
+	}
+    }
+
+    /**
+     * Creates a random referee with an ID unique within the given list
+     */
+    static Referee randomReferee(RefereeList refList, Random random) {
+	String firstName = randomName(random);
+	String lastName = randomName(random);
+	String qual = (random.nextBoolean() ? "NJB" : "IJB")
+		+ (1 + random.nextInt(4));
+	Location home = Location.values()[random.nextInt(3)];
+
+	// The home location is always travelled to
+	char[] travel = new char[3];
+	for (int i = 0; i < 3; i++)
+	    travel[i] = i == home.ordinal() || random.nextBoolean() ? 'Y' : 'N';
+
+	return new Referee(refList.createID(firstName, lastName), firstName,
+		lastName, qual, random.nextInt(20), home.toString(),
+		new String(travel));
+    }
+
+    /**
+     * Adds a random referee to a shared model under a new ID
+     */
+    static Referee addRandomReferee(ConcurrentModel model, Random random) {
+	Location home = Location.values()[random.nextInt(3)];
+	char[] travel = new char[3];
+	for (int i = 0; i < 3; i++)
+	    travel[i] = i == home.ordinal() || random.nextBoolean() ? 'Y' : 'N';
+	return model.addReferee(randomName(random), randomName(random),
+		RefQualification.values()[random.nextInt(2)],
+		1 + random.nextInt(4), random.nextInt(20), home,
+		new String(travel));
+    }
+
+    /**
+     * Creates a match in a random week, level and area
+     */
+    static Match randomMatch(Random random) {
+	return new Match(1 + random.nextInt(52),
+		MatchLevel.values()[random.nextInt(2)],
+		Location.values()[random.nextInt(3)]);
+    }
+
+    private static String randomName(Random random) {
+	char[] name = new char[4 + random.nextInt(5)];
+	name[0] = (char) ('A' + random.nextInt(26));
+	for (int i = 1; i < name.length; i++)
+	    name[i] = (char) ('a' + random.nextInt(26));
+	return new String(name);
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.ReportWriter;
+
+/**
+ * Benchmark for writing the referee and match output files: compares
+ * writing Referee.toString() and Match.toString() through a FileWriter (as
+ * the controller did) with the ReportWriter, checking that both produce the
+ * same bytes. Referees with non-ASCII names and negative allocations are
+ * included. Also reports the bytes allocated per row by the writing thread.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g ReportWriterBenchmark
+ */
+public class ReportWriterBenchmark {
+
+    private static final int REFEREES = 1000000;
+    private static final int MATCHES = 10000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+	Random random = new Random(13);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	refList.add(new Referee("ZÉ1 Zoë Éclair IJB4 -2 North YNY"));
+	refList.add(new Referee("ZZ1 Z😀 Zed NJB1 2147483647 South YYY"));
+	for (int i = refList.size(); i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	ArrayList<Match> matches = new ArrayList<>();
+	for (int i = 0; i < MATCHES; i++) {
+	    Match match = RefereeListBenchmark.randomMatch(random);
+	    match.setReferees(new Referee[] {refList.get(i % 2),
+		    refList.get(2 + random.nextInt(1000))});
+	    matches.add(match);
+	}
+
+	File old = File.createTempFile("referees", ".txt");
+	File written = File.createTempFile("referees", ".txt");
+	old.deleteOnExit();
+	written.deleteOnExit();
+	System.out.printf("%-8s %12s %12s %14s%n", "Rows", "toString ms",
+		"writer ms", "writer B/row");
+	for (int round = 0; round < ROUNDS; round++) {
+	    long start = System.nanoTime();
+	    writeWithToString(old, refList, matches);
+	    double toStringMs = (System.nanoTime() - start) / 1e6;
+
+	    long allocated = allocatedBytes();
+	    start = System.nanoTime();
+	    writeWithWriter(written, refList, matches);
+	    double writerMs = (System.nanoTime() - start) / 1e6;
+	    allocated = allocatedBytes() - allocated;
+
+	    if (!Arrays.equals(Files.readAllBytes(old.toPath()),
+		    Files.readAllBytes(written.toPath())))
+		throw new AssertionError("Output differs");
+	    System.out.printf("%-8d %12.1f %12.1f %14.2f%n", REFEREES + MATCHES,
+		    toStringMs, writerMs,
+		    (double) allocated / (REFEREES + MATCHES));
+	}
+	old.delete();
+	written.delete();
+    }
+
+    /**
+     * Writes both files into one, as the controller's writeOutputFile did
+     */
+    private static void writeWithToString(File file, RefereeList refList,
+	    ArrayList<Match> matches) throws IOException {
+	try (FileWriter out = new FileWriter(file)) {
+	    String headRow = String.format("%-5s %-7s %-8s %-17s %-17s%n",
+		    "Week", "Level", "Area", "Referee 1", "Referee 2");
+	    out.write(headRow);
+	    for (int i = 0; i < headRow.length(); i++)
+		out.write("-");
+	    out.write(String.format("%n"));
+	    for (Match match : matches)
+		out.write(match.toString());
+	    for (Referee ref : refList)
+		out.write(ref.toString());
+	}
+    }
+
+    /**
+     * Writes both files into one with a ReportWriter
+     */
+    private static void writeWithWriter(File file, RefereeList refList,
+	    ArrayList<Match> matches) throws IOException {
+	try (ReportWriter out = new ReportWriter(file.toPath())) {
+	    out.writeMatchHeader();
+	    for (Match match : matches)
+		out.writeMatch(match);
+	    for (Referee ref : refList)
+		out.writeReferee(ref);
+	}
+    }
+
+    /**
+     * Bytes allocated by the current thread so far
+     */
+    private static long allocatedBytes() {
+	return ((com.sun.management.ThreadMXBean) ManagementFactory
+		.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread()
+		.getId());
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javaball.controller.AllocationServer;
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.ConcurrentModel;
+import javaball.model.ModelJournal;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Load test client for the HTTP service: client threads send allocation
+ * requests (for random weeks, so most find the week taken once the season is
+ * full), referee lookups and match lookups over keep-alive connections, and
+ * the requests per second are reported by kind and number of clients.
+ * <p>
+ * Without arguments a server of a large journaled model is started in this
+ * process; given a URL (e.g. http://localhost:8080 of a server started with
+ * java javaball.main.JavaBall --server) that server is loaded instead.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g ServerBenchmark [url]
+ */
+public class ServerBenchmark {
+
+    private static final int REFEREES = 100000;
+    private static final int[] CLIENTS = {1, 4, 16, 64};
+    private static final long SECONDS = 5;
+
+    /** Kinds of requests */
+    private static final int ALLOCATE = 0, REFEREE = 1, MATCH = 2;
+    private static final String[] KINDS = {"allocate", "referee", "match"};
+
+    public static void main(String[] args) throws Exception {
+	AllocationServer server = null;
+	ModelJournal journal = null;
+	String url;
+	if (args.length > 0)
+	    url = args[0];
+	else {
+	    File journalFile = File.createTempFile("model", ".journal");
+	    journalFile.deleteOnExit();
+	    journalFile.delete();
+	    System.setProperty("sun.net.httpserver.nodelay", "true");
+	    Random random = new Random(16);
+	    RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	    for (int i = 0; i < REFEREES; i++)
+		refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	    Season season = new Season();
+	    journal = ModelJournal.open(journalFile.toPath(), 1, 0,
+		    ModelJournal.SYNC_EVERY, refList, season);
+	    server = new AllocationServer(new ConcurrentModel(refList, season,
+		    journal), null, new InetSocketAddress("localhost", 0));
+	    server.start();
+	    url = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	// The IDs to look up, from the chart data
+	ArrayList<String> ids = new ArrayList<String>();
+	Matcher id = Pattern.compile("\"id\":\"([^\"]*)\"").matcher(
+		request(url + "/chart", "GET", null)[1]);
+	while (id.find())
+	    ids.add(id.group(1));
+
+	System.out.printf("%-8s %10s %10s %10s %10s %8s%n", "Clients",
+		"total/s", "allocate/s", "referee/s", "match/s", "errors");
+	for (int clients : CLIENTS)
+	    run(url, ids, clients);
+
+	if (server != null) {
+	    server.stop(0);
+	    journal.close();
+	}
+    }
+
+    /**
+     * Loads the server with a number of clients for a while
+     */
+    private static void run(final String url, final ArrayList<String> ids,
+	    int clients) throws InterruptedException {
+	final AtomicLongArray counts = new AtomicLongArray(KINDS.length + 1);
+	final long end = System.nanoTime() + SECONDS * 1000000000L;
+	Thread[] threads = new Thread[clients];
+	for (int t = 0; t < clients; t++) {
+	    final long seed = t;
+	    threads[t] = new Thread() {
+		@Override
+		public void run() {
+		    Random random = new Random(seed);
+		    while (System.nanoTime() < end) {
+			int kind = random.nextInt(10) < 5 ? ALLOCATE
+				: random.nextInt(5) < 4 ? REFEREE : MATCH;
+			try {
+			    int status = request(url, ids, kind, random);
+			    counts.incrementAndGet(status < 500 ? kind
+				    : KINDS.length);
+			} catch (IOException e) {
+			    counts.incrementAndGet(KINDS.length);
+			}
+		    }
+		}
+	    };
+	    threads[t].start();
+	}
+	for (Thread thread : threads)
+	    thread.join();
+
+	long total = 0;
+	for (int kind = 0; kind < KINDS.length; kind++)
+	    total += counts.get(kind);
+	System.out.printf("%-8d %10.0f %10.0f %10.0f %10.0f %8d%n", clients,
+		(double) total / SECONDS,
+		(double) counts.get(ALLOCATE) / SECONDS,
+		(double) counts.get(REFEREE) / SECONDS,
+		(double) counts.get(MATCH) / SECONDS, counts.get(KINDS.length));
+    }
+
+    /**
+     * Sends a random request of a kind
+     * @return the response status
+     */
+    private static int request(String url, ArrayList<String> ids, int kind,
+	    Random random) throws IOException {
+	int week = Season.MIN_WEEK + random.nextInt(Season.MAX_WEEK);
+	String[] response;
+	if (kind == ALLOCATE)
+	    response = request(url + "/matches", "POST", "week=" + week
+		    + "&level=" + MatchLevel.values()[random.nextInt(2)]
+		    + "&area=" + Location.values()[random.nextInt(3)]);
+	else if (kind == REFEREE)
+	    response = request(url + "/referees/"
+		    + ids.get(random.nextInt(ids.size())), "GET", null);
+	else
+	    response = request(url + "/matches/" + week, "GET", null);
+	return Integer.parseInt(response[0]);
+    }
+
+    /**
+     * Sends a request, reading the whole response so that the connection is
+     * kept alive
+     * @return the status and the body
+     */
+    private static String[] request(String url, String method, String form)
+	    throws IOException {
+	HttpURLConnection connection = (HttpURLConnection) new URL(url)
+		.openConnection();
+	connection.setRequestMethod(method);
+	if (form != null) {
+	    byte[] body = form.getBytes(StandardCharsets.UTF_8);
+	    connection.setDoOutput(true);
+	    connection.setRequestProperty("Content-Type",
+		    "application/x-www-form-urlencoded");
+	    connection.setFixedLengthStreamingMode(body.length);
+	    OutputStream out = connection.getOutputStream();
+	    out.write(body);
+	    out.close();
+	}
+	int status = connection.getResponseCode();
+	InputStream in = status < 400 ? connection.getInputStream()
+		: connection.getErrorStream();
+	StringBuilder body = new StringBuilder();
+	if (in != null) {
+	    byte[] buffer = new byte[8192];
+	    for (int n; (n = in.read(buffer)) > 0;)
+		body.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+	    in.close();
+	}
+	return new String[] {Integer.toString(status), body.toString()};
+    }
+}
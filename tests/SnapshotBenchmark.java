@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+
+import javaball.model.Match;
+import javaball.model.ModelSnapshot;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Benchmark for the binary model snapshot: builds a model of random referees
+ * and matches (each with its two most suitable referees, some of whom are
+ * then removed from the list), writes a snapshot, and times reading it back.
+ * The restored model is compared with the original before timing. Capturing
+ * (done by the thread changing the model) is timed apart from writing.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g SnapshotBenchmark
+ */
+public class SnapshotBenchmark {
+
+    private static final int[][] SIZES = {{100000, 1000}, {1000000, 10000}};
+    private static final int REMOVED = 100;
+    private static final int ROUNDS = 5;
+    private static final int RANKED = 20;
+
+    public static void main(String[] args) throws IOException {
+	System.out.printf("%-9s %8s %10s %11s %10s %10s%n", "Referees",
+		"Matches", "MB", "capture ms", "write ms", "read ms");
+
+	for (int[] size : SIZES) {
+	    Random random = new Random(size[0]);
+	    RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	    for (int i = 0; i < size[0]; i++)
+		refList.add(RefereeListBenchmark.randomReferee(refList, random));
+
+	    // Allocate the matches, then remove some of the allocated referees
+	    Season season = new Season();
+	    for (int i = 0; i < size[1]; i++) {
+		Match match = RefereeListBenchmark.randomMatch(random);
+		ArrayList<Referee> referees = refList.getSuitableReferees(match,
+			2);
+		match.setReferees(referees.toArray(new Referee[2]));
+		for (Referee ref : referees)
+		    ref.addMatch(match);
+		season.addMatch(match);
+	    }
+	    for (int i = 0; i < REMOVED; i++)
+		for (Referee ref : season.getMatches().get(i).getReferees())
+		    if (ref != null)
+			refList.remove(ref);
+
+	    File file = File.createTempFile("model", ".snapshot");
+	    file.deleteOnExit();
+	    double captureMs = Double.MAX_VALUE;
+	    ModelSnapshot snapshot = null;
+	    for (int i = 0; i < ROUNDS; i++) {
+		long start = System.nanoTime();
+		snapshot = ModelSnapshot.capture(refList, season, null);
+		captureMs = Math.min(captureMs, (System.nanoTime() - start) / 1e6);
+	    }
+	    long start = System.nanoTime();
+	    snapshot.write(file.toPath());
+	    double writeMs = (System.nanoTime() - start) / 1e6;
+
+	    Season restoredSeason = new Season();
+	    check(refList, season, ModelSnapshot.read(file.toPath())
+		    .restore(restoredSeason), restoredSeason);
+
+	    double readMs = Double.MAX_VALUE;
+	    for (int i = 0; i < ROUNDS; i++) {
+		start = System.nanoTime();
+		RefereeList restored = ModelSnapshot.read(file.toPath())
+			.restore(new Season());
+		readMs = Math.min(readMs, (System.nanoTime() - start) / 1e6);
+		if (restored.size() != refList.size())
+		    throw new AssertionError("Sizes differ");
+	    }
+
+	    System.out.printf("%-9d %8d %10.1f %11.1f %10.1f %10.1f%n",
+		    size[0], size[1], file.length() / 1e6, captureMs, writeMs,
+		    readMs);
+	    file.delete();
+	}
+    }
+
+    /**
+     * Compares a restored model with the original
+     */
+    private static void check(RefereeList refList, Season season,
+	    RefereeList restored, Season restoredSeason) {
+	Iterator<Referee> refs = restored.iterator();
+	for (Referee ref : refList)
+	    if (!refs.hasNext() || !ref.toString().equals(
+		    refs.next().toString()))
+		throw new AssertionError("Referees differ at " + ref.getID());
+	if (refs.hasNext())
+	    throw new AssertionError("Extra referees restored");
+
+	ArrayList<Match> matches = season.getMatches();
+	ArrayList<Match> restoredMatches = restoredSeason.getMatches();
+	if (matches.size() != restoredMatches.size())
+	    throw new AssertionError("Numbers of matches differ");
+	for (int i = 0; i < matches.size(); i++) {
+	    Match match = matches.get(i), restoredMatch = restoredMatches.get(i);
+	    if (!match.toString().equals(restoredMatch.toString()))
+		throw new AssertionError("Matches differ: " + match);
+	    Referee[] referees = match.getReferees();
+	    Referee[] restoredReferees = restoredMatch.getReferees();
+	    for (int j = 0; j < referees.length; j++)
+		if (!String.valueOf(referees[j]).equals(
+			String.valueOf(restoredReferees[j])))
+		    throw new AssertionError("Match referees differ: " + match);
+	}
+
+	// Suitability must be ranked the same, including allocations
+	for (Match match : matches.subList(0, RANKED))
+	    if (!refList.getSuitableReferees(match).toString().equals(
+		    restored.getSuitableReferees(match).toString()))
+		throw new AssertionError("Rankings differ for " + match);
+    }
+}
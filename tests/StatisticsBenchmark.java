@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import javaball.enums.Location;
+import javaball.enums.MatchLevel;
+import javaball.model.AllocationStatistics;
+import javaball.model.ConcurrentModel;
+import javaball.model.Match;
+import javaball.model.Referee;
+import javaball.model.RefereeList;
+import javaball.model.Season;
+
+/**
+ * Benchmark for the allocation statistics: compares computing the least,
+ * highest and mean number of allocations, their variance and histogram by
+ * scanning a million referees with polling the statistics kept by the model,
+ * and times allocating referees with the statistics kept up to date. The
+ * statistics polled are checked against the scan.
+ * <p>
+ * Run with a large heap, e.g. java -Xmx4g StatisticsBenchmark
+ */
+public class StatisticsBenchmark {
+
+    private static final int REFEREES = 1000000;
+    private static final int SCANS = 20;
+    private static final int POLLS = 100000;
+    private static final int ALLOCATIONS = 1000000;
+
+    public static void main(String[] args) {
+	Random random = new Random(25);
+	RefereeList refList = new RefereeList(RefereeList.UNLIMITED);
+	for (int i = 0; i < REFEREES; i++)
+	    refList.add(RefereeListBenchmark.randomReferee(refList, random));
+	ConcurrentModel model = new ConcurrentModel(refList, new Season(),
+		null);
+
+	// Allocate random referees to matches
+	ArrayList<Referee> refs = refList.getReferees();
+	Match match = new Match(1, MatchLevel.JUNIOR, Location.CENTRAL);
+	long start = System.nanoTime();
+	for (int i = 0; i < ALLOCATIONS; i++)
+	    refs.get(random.nextInt(refs.size())).addMatch(match);
+	double allocateUs = (System.nanoTime() - start) / 1e3 / ALLOCATIONS;
+
+	// Scan the referees
+	double[] scanned = null;
+	start = System.nanoTime();
+	for (int i = 0; i < SCANS; i++)
+	    scanned = scan(model.getReferees());
+	double scanUs = (System.nanoTime() - start) / 1e3 / SCANS;
+
+	// Poll the statistics
+	AllocationStatistics statistics = null;
+	start = System.nanoTime();
+	for (int i = 0; i < POLLS; i++)
+	    statistics = model.getStatistics();
+	double pollUs = (System.nanoTime() - start) / 1e3 / POLLS;
+
+	if (scanned[0] != statistics.getMin()
+		|| scanned[1] != statistics.getMax()
+		|| Math.abs(scanned[2] - statistics.getMean()) > 1e-9
+		|| Math.abs(scanned[3] - statistics.getVariance()) > 1e-6)
+	    throw new AssertionError("Scan and statistics disagree");
+
+	System.out.printf("%-24s %12.3f%n", "addMatch us", allocateUs);
+	System.out.printf("%-24s %12.1f%n", "scan us", scanUs);
+	System.out.printf("%-24s %12.3f%n", "getStatistics us", pollUs);
+	System.out.printf("Referees %d, allocations %d to %d, mean %.3f, "
+		+ "variance %.3f%n", statistics.getReferees(),
+		statistics.getMin(), statistics.getMax(), statistics.getMean(),
+		statistics.getVariance());
+    }
+
+    /**
+     * Computes the least, highest and mean number of allocations, their
+     * variance and histogram by scanning the referees
+     */
+    private static double[] scan(ArrayList<Referee> refs) {
+	int min = Integer.MAX_VALUE, max = 0;
+	long sum = 0, sumOfSquares = 0;
+	int[] histogram = new int[16];
+	for (Referee ref : refs) {
+	    int allocations = ref.getAllocations();
+	    min = Math.min(min, allocations);
+	    max = Math.max(max, allocations);
+	    sum += allocations;
+	    sumOfSquares += (long) allocations * allocations;
+	    if (allocations >= histogram.length)
+		histogram = java.util.Arrays.copyOf(histogram, allocations * 2);
+	    histogram[allocations]++;
+	}
+	double mean = (double) sum / refs.size();
+	return new double[] {min, max, mean,
+		(double) sumOfSquares / refs.size() - mean * mean};
+    }
+}